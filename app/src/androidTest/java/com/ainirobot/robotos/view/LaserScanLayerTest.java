@@ -0,0 +1,173 @@
+package com.ainirobot.robotos.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ainirobot.robotos.maputils.LaserScanSource;
+import com.ainirobot.robotos.maputils.MapPalette;
+import com.ainirobot.robotos.maputils.Pose2d;
+import com.ainirobot.robotos.maputils.RoverMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用可控的假数据源驱动激光图层：接入与断开、无效距离、抽稀和按到达时间过期
+ * Drives the laser overlay from a fake {@link LaserScanSource} instead of the
+ * robot. The source stamps frames on a clock unrelated to uptime, so the tests
+ * also pin down that frames are aged by their arrival time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LaserScanLayerTest {
+
+    private static final int MAP_SIZE = 200;
+    private static final int VIEW_SIZE = 400;
+    private static final double RES = 0.05;
+
+    private RoverMap mMap;
+    private Pose2d mPose;
+    private Canvas mCanvas;
+
+    private static class FakeScanSource implements LaserScanSource {
+        volatile Listener listener;
+        volatile boolean stopped;
+
+        @Override
+        public void start(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        void emit(Pose2d pose, float[] ranges) {
+            // 时间戳故意不用 uptime，显示方不应依赖它
+            listener.onScan(42, pose, (float) -Math.PI,
+                    (float) (2 * Math.PI / ranges.length), ranges, ranges.length);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mMap = new RoverMap();
+        mMap.width = MAP_SIZE;
+        mMap.height = MAP_SIZE;
+        mMap.res = RES;
+        mPose = new Pose2d(100 * RES, 100 * RES, 0);
+        mCanvas = new Canvas(Bitmap.createBitmap(VIEW_SIZE, VIEW_SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void mapViewStartsAndStopsSource() {
+        final FakeScanSource source = new FakeScanSource();
+        final MapView[] holder = new MapView[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = InstrumentationRegistry.getInstrumentation()
+                        .getTargetContext();
+                MapView mapView = new MapView(context);
+                mapView.setBitmap(Bitmap.createBitmap(MAP_SIZE, MAP_SIZE,
+                        Bitmap.Config.ARGB_8888), MapPalette.ROBOT, null);
+                mapView.setResolution(RES);
+                mapView.measure(
+                        View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY));
+                mapView.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+                mapView.setLaserScanSource(source, mMap);
+                holder[0] = mapView;
+            }
+        });
+        final MapView mapView = holder[0];
+        assertSame(mapView.getLaserLayer(), source.listener);
+
+        float[] ranges = new float[360];
+        Arrays.fill(ranges, 2f);
+        // 数据源在自己的线程推送
+        source.emit(mPose, ranges);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mapView.draw(mCanvas);
+            }
+        });
+        assertEquals(1, mapView.getLaserLayer().getReceived());
+        assertTrue(mapView.getLaserLayer().getDrawnPoints() > 0);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mapView.setLaserScanSource(null, null);
+            }
+        });
+        assertTrue(source.stopped);
+    }
+
+    @Test
+    public void invalidRangesAreSkipped() {
+        LaserScanLayer layer = newLayer();
+        FakeScanSource source = new FakeScanSource();
+        source.start(layer);
+        source.emit(mPose, new float[]{0, -1, Float.NaN, Float.POSITIVE_INFINITY, 2f, 0, 0, 0});
+        draw(layer);
+        assertEquals(1, layer.getDrawnPoints());
+    }
+
+    @Test
+    public void densePointsAreThinnedPerScreenCell() {
+        LaserScanLayer layer = newLayer();
+        FakeScanSource source = new FakeScanSource();
+        source.start(layer);
+        float[] ranges = new float[LaserScanLayer.DEFAULT_MAX_POINTS];
+        // 全部落在机器人周围不到一个像素内
+        Arrays.fill(ranges, (float) (RES / 4));
+        source.emit(mPose, ranges);
+        draw(layer);
+        int drawn = layer.getDrawnPoints();
+        assertTrue("drawn=" + drawn, drawn > 0 && drawn <= 4);
+    }
+
+    @Test
+    public void framesExpireByArrivalTime() {
+        LaserScanLayer layer = newLayer();
+        FakeScanSource source = new FakeScanSource();
+        source.start(layer);
+        float[] ranges = new float[90];
+        Arrays.fill(ranges, 2f);
+        source.emit(mPose, ranges);
+        draw(layer);
+        assertTrue(layer.getDrawnPoints() > 0);
+
+        SystemClock.sleep(1100);
+        draw(layer);
+        assertEquals(0, layer.getDrawnPoints());
+        assertFalse(source.stopped);
+    }
+
+    private LaserScanLayer newLayer() {
+        LaserScanLayer layer = new LaserScanLayer();
+        layer.setMap(mMap);
+        return layer;
+    }
+
+    private void draw(LaserScanLayer layer) {
+        layer.draw(mCanvas, new Matrix(), VIEW_SIZE, VIEW_SIZE);
+    }
+}
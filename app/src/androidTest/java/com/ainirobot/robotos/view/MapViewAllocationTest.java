@@ -0,0 +1,186 @@
+package com.ainirobot.robotos.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ainirobot.robotos.maputils.MapPalette;
+import com.ainirobot.robotos.maputils.PlaceStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * MapView 稳定帧的分配计数：拖动、缩放和重绘过程中主线程不应再分配对象
+ * Counts allocations on the UI thread while MapView pans, pinch-zooms and
+ * redraws with a few hundred places. Every gesture sequence runs once to warm
+ * caches (static layer, label layout, scale bar text), then the identical
+ * sequence is replayed under the allocation counter. Events are obtained
+ * before counting starts so only MapView's own work is measured.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class MapViewAllocationTest {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final int MAP_SIZE = 800;
+    private static final int PLACE_COUNT = 250;
+    private static final int STEPS = 30;
+
+    private MapView mMapView;
+    private Canvas mCanvas;
+    private Bitmap mTarget;
+    private final List<MotionEvent> mEvents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = InstrumentationRegistry.getInstrumentation()
+                        .getTargetContext();
+                mMapView = new MapView(context);
+                mMapView.setMode(MapView.MapMode.PREVIEW);
+                mMapView.setBitmap(Bitmap.createBitmap(MAP_SIZE, MAP_SIZE,
+                        Bitmap.Config.ARGB_8888), MapPalette.ROBOT, null);
+                mMapView.setResolution(0.05);
+                mMapView.setPlaces(randomPlaces(PLACE_COUNT));
+                mMapView.measure(
+                        View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+                mMapView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+                mTarget = Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888);
+                mCanvas = new Canvas(mTarget);
+            }
+        });
+        buildGestures();
+    }
+
+    @After
+    public void tearDown() {
+        for (MotionEvent event : mEvents) {
+            event.recycle();
+        }
+        mEvents.clear();
+        if (mTarget != null) {
+            mTarget.recycle();
+        }
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        final int[] counts = new int[mEvents.size()];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // 预热：同一组手势先完整走一遍，再多画几帧让离屏图层稳定下来
+                replay(null);
+                for (int i = 0; i < 3; i++) {
+                    mMapView.draw(mCanvas);
+                }
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                try {
+                    replay(counts);
+                } finally {
+                    Debug.stopAllocCounting();
+                }
+            }
+        });
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals("allocations after event " + i + " of " + counts.length,
+                    0, counts[i]);
+        }
+    }
+
+    /**
+     * 逐个派发事件，每个事件后重绘一帧；counts 不为 null 时记录累计分配数
+     */
+    private void replay(int[] counts) {
+        for (int i = 0; i < mEvents.size(); i++) {
+            mMapView.onTouchEvent(mEvents.get(i));
+            mMapView.draw(mCanvas);
+            if (counts != null) {
+                counts[i] = Debug.getThreadAllocCount();
+            }
+        }
+    }
+
+    /**
+     * 单指拖动一个来回，再双指放大、缩小回原样，手势结束后视图回到初始状态
+     */
+    private void buildGestures() {
+        long down = SystemClock.uptimeMillis();
+        float x = VIEW_WIDTH / 2f;
+        float y = VIEW_HEIGHT / 2f;
+        mEvents.add(single(down, MotionEvent.ACTION_DOWN, x, y));
+        for (int i = 1; i <= STEPS; i++) {
+            mEvents.add(single(down, MotionEvent.ACTION_MOVE, x + i * 10, y + i * 5));
+        }
+        for (int i = STEPS - 1; i >= 0; i--) {
+            mEvents.add(single(down, MotionEvent.ACTION_MOVE, x + i * 10, y + i * 5));
+        }
+
+        // 缩放幅度保持在比例尺跨档之内，避免生成新的比例尺文本
+        float spread = 200;
+        mEvents.add(pair(down, MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), x, y, spread));
+        for (int i = 1; i <= STEPS; i++) {
+            mEvents.add(pair(down, MotionEvent.ACTION_MOVE, x, y, spread + i * 2));
+        }
+        for (int i = STEPS - 1; i >= 0; i--) {
+            mEvents.add(pair(down, MotionEvent.ACTION_MOVE, x, y, spread + i * 2));
+        }
+        mEvents.add(pair(down, MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), x, y, spread));
+        mEvents.add(single(down, MotionEvent.ACTION_UP, x, y));
+    }
+
+    private static MotionEvent single(long down, int action, float x, float y) {
+        return MotionEvent.obtain(down, down, action, x, y, 0);
+    }
+
+    private static MotionEvent pair(long down, int action, float x, float y, float spread) {
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[2];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[2];
+        for (int i = 0; i < 2; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = x + (i == 0 ? -spread : spread) / 2;
+            coords[i].y = y;
+            coords[i].pressure = 1;
+            coords[i].size = 1;
+        }
+        return MotionEvent.obtain(down, down, action, 2, properties, coords, 0, 0, 1, 1, 0, 0,
+                0, 0);
+    }
+
+    private static PlaceStore randomPlaces(int count) {
+        Random random = new Random(1);
+        PlaceStore.Builder builder = new PlaceStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add("place" + i, random.nextFloat() * MAP_SIZE,
+                    random.nextFloat() * MAP_SIZE, random.nextFloat() * Math.PI * 2, 0);
+        }
+        return builder.build();
+    }
+}
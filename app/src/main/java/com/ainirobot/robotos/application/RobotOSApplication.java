@@ -25,6 +25,7 @@ import com.ainirobot.coreservice.client.ApiListener;
 import com.ainirobot.coreservice.client.RobotApi;
 import com.ainirobot.coreservice.client.module.ModuleCallbackApi;
 import com.ainirobot.coreservice.client.speech.SkillApi;
+import com.ainirobot.robotos.maputils.SpecialPlaceUtil;
 
 public class RobotOSApplication extends Application {
 
@@ -45,6 +46,7 @@ public class RobotOSApplication extends Application {
         mApplication = this;
         init();
         initRobotApi();
+        SpecialPlaceUtil.prewarm(this);
     }
 
     private void init() {
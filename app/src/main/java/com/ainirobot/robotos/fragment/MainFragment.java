@@ -43,6 +43,7 @@ import com.ainirobot.coreservice.client.RobotApi;
 import com.ainirobot.coreservice.client.listener.ActionListener;
 
 import com.ainirobot.robotos.R;
+import com.ainirobot.robotos.nav.NavigationHelper;
 
 
 
@@ -196,7 +197,7 @@ public class MainFragment extends BaseFragment {
 
                 Log.i(TAG, "檢查通過，執行指令：前往待機點");
 
-                RobotApi.getInstance().startNavigation(0, "待機點", 1.5, 600 * 1000, mSimpleNavListener);
+                NavigationHelper.startNavigation("待機點", 1.5, 600 * 1000, mSimpleNavListener);
 
             });
 
@@ -212,7 +213,7 @@ public class MainFragment extends BaseFragment {
 
                 Log.i(TAG, "檢查通過，執行指令：前往1號注射點");
 
-                RobotApi.getInstance().startNavigation(0, "風機", 1.5, 600 * 1000, mBuzzer1NavListener);
+                NavigationHelper.startNavigation("風機", 1.5, 600 * 1000, mBuzzer1NavListener);
 
             });
 
@@ -228,7 +229,7 @@ public class MainFragment extends BaseFragment {
 
                 Log.i(TAG, "檢查通過，執行指令：前往2號注射點");
 
-                RobotApi.getInstance().startNavigation(0, "洗手間", 1.5, 600 * 1000, mBuzzer2NavListener);
+                NavigationHelper.startNavigation("洗手間", 1.5, 600 * 1000, mBuzzer2NavListener);
 
             });
 
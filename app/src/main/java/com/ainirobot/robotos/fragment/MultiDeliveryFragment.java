@@ -27,6 +27,7 @@ import com.ainirobot.coreservice.client.listener.ActionListener;
 import com.ainirobot.coreservice.client.listener.CommandListener;
 import com.ainirobot.robotos.R;
 import com.ainirobot.robotos.maputils.GsonUtil;
+import com.ainirobot.robotos.nav.NavigationHelper;
 
 import java.net.InetAddress;
 import com.ghgande.j2mod.modbus.Modbus;
@@ -130,7 +131,7 @@ public class MultiDeliveryFragment extends BaseFragment {
     public void onDestroy() {
         super.onDestroy();
         stopBuzzerLoop();
-        RobotApi.getInstance().stopNavigation(0, true); // 記得這裡是 stopNavigation
+        NavigationHelper.stopNavigation(true); // 記得這裡是 stopNavigation
 
 
         // ★★★ 3. 釋放語音資源 ★★★
@@ -252,7 +253,7 @@ public class MultiDeliveryFragment extends BaseFragment {
         switch (stage) {
             case 1: // 前往第一站
                 if (mDestName1 != null) {
-                    RobotApi.getInstance().startNavigation(0, mDestName1, 1.5, 600 * 1000, new NavListener(1));
+                    NavigationHelper.startNavigation(mDestName1, 1.5, 600 * 1000, new NavListener(1));
                 } else {
                     processStage(3);
                 }
@@ -271,7 +272,7 @@ public class MultiDeliveryFragment extends BaseFragment {
 
             case 3: // 前往第二站
                 if (mDestName2 != null) {
-                    RobotApi.getInstance().startNavigation(0, mDestName2, 1.5, 600 * 1000, new NavListener(2));
+                    NavigationHelper.startNavigation(mDestName2, 1.5, 600 * 1000, new NavListener(2));
                 } else {
                     processStage(5);
                 }
@@ -283,7 +284,7 @@ public class MultiDeliveryFragment extends BaseFragment {
 
             case 5: // 回待機點
                 Toast.makeText(getContext(), "任務完成，返回待機中...", Toast.LENGTH_LONG).show();
-                RobotApi.getInstance().startNavigation(0, "待機點", 1.5, 600 * 1000, new NavListener(3));
+                NavigationHelper.startNavigation("待機點", 1.5, 600 * 1000, new NavListener(3));
                 break;
 
             case 6: // 結束
@@ -1,13 +1,13 @@
 package com.ainirobot.robotos.fragment;
 
 import android.Manifest;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 
 import androidx.fragment.app.Fragment;
 
-import android.os.Environment;
-import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -19,7 +19,6 @@ import android.widget.Toast;
 import com.ainirobot.coreservice.client.Definition;
 import com.ainirobot.coreservice.client.RobotApi;
 import com.ainirobot.coreservice.client.StatusListener;
-import com.ainirobot.coreservice.client.actionbean.PlaceBean;
 import com.ainirobot.coreservice.client.ashmem.ShareMemoryApi;
 import com.ainirobot.coreservice.client.listener.ActionListener;
 import com.ainirobot.coreservice.client.listener.CommandListener;
@@ -29,38 +28,62 @@ import com.ainirobot.robotos.R;
 import com.ainirobot.robotos.maputils.Constant;
 import com.ainirobot.robotos.maputils.DialogConfirm;
 import com.ainirobot.robotos.maputils.DialogUtils;
+import com.ainirobot.robotos.maputils.DistanceField;
 import com.ainirobot.robotos.maputils.GlobalData;
-import com.ainirobot.robotos.maputils.GsonUtil;
+import com.ainirobot.robotos.maputils.MapDiskCache;
+import com.ainirobot.robotos.maputils.MapInfo;
+import com.ainirobot.robotos.maputils.MapRepository;
 import com.ainirobot.robotos.view.BackView;
 import com.ainirobot.robotos.view.MapView;
+import com.ainirobot.robotos.view.PoseAnimator;
 import com.ainirobot.robotos.maputils.MapppUtils;
+import com.ainirobot.robotos.maputils.PathPlanner;
 import com.ainirobot.robotos.maputils.Pose2d;
-import com.ainirobot.robotos.maputils.PoseBean;
+import com.ainirobot.robotos.maputils.PlaceListParser;
+import com.ainirobot.robotos.maputils.PlaceStore;
+import com.ainirobot.robotos.maputils.PoseParser;
 import com.ainirobot.robotos.maputils.RoverMap;
-import com.ainirobot.robotos.maputils.SpecialPlaceUtil;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.ainirobot.robotos.maputils.SyntheticScanSource;
+import com.ainirobot.robotos.maputils.TravelMatrix;
+import com.ainirobot.robotos.maputils.TravelMatrixCache;
+import com.ainirobot.robotos.nav.NavigationHelper;
 
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileDescriptor;
-import java.io.FileInputStream;
-import java.util.ArrayList;
 import java.util.List;
 
 public class NavFragment extends Fragment {
 
     private MapView mMapView;
-    private final static String MAP_DIR = "/robot/map";
-    private final static String ROBOT_MAP_DIR = Environment.getExternalStorageDirectory() + MAP_DIR;
-    private final static String MAP_PGM = "pgm.zip";
+    private PoseAnimator mPoseAnimator;
     public static boolean isCreatingMap = false;
     private static final String TAG = "NavFragment";
+    /**
+     * 送入插值的位姿最小间隔（按样本时间），界面按显示帧插值，不需要更高的输入频率
+     */
+    private static final long POSE_INPUT_INTERVAL = 100;
+    /**
+     * 预览路线估算到达时间用的平均速度，米/秒
+     */
+    private static final double ROUTE_PREVIEW_SPEED = 0.7;
+    /**
+     * 调试用模拟激光：射线数、量程（米）和帧间隔（毫秒）
+     */
+    private static final int SYNTHETIC_SCAN_BEAMS = 360;
+    private static final float SYNTHETIC_SCAN_RANGE = 10f;
+    private static final long SYNTHETIC_SCAN_PERIOD = 100;
+    /**
+     * 距离矩阵串行计算，后一次可以沿用前一次的结果
+     */
+    private static final Object sTravelMatrixLock = new Object();
     private BackView mBackView;
     private boolean mIsEstimate;
     private RoverMap mRoverMap;
     private String placeName1;
+    /**
+     * 调试开关打开时叠加在地图上的模拟激光，没有真实激光数据时检查扫描图层
+     */
+    private SyntheticScanSource mSyntheticScan;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -74,7 +97,21 @@ public class NavFragment extends Fragment {
 
     private void initView(View root) {
         mMapView = root.findViewById(R.id.map_view);
+        mPoseAnimator = new PoseAnimator(mMapView, new PoseAnimator.Target() {
+            @Override
+            public boolean onPoseFrame(Pose2d pose) {
+                return mMapView.updateOrigin(pose);
+            }
+        });
+        mPoseAnimator.setMinInterval(POSE_INPUT_INTERVAL);
         mBackView = root.findViewById(R.id.edit_back);
+        // 调试包长按返回栏空白处，开关模拟激光图层
+        mBackView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                return toggleSyntheticScan();
+            }
+        });
         /*
          * 获得当前地图名
          * Get the current map name
@@ -99,6 +136,12 @@ public class NavFragment extends Fragment {
         });
 
         mMapView.setMode(MapView.MapMode.POINT);
+        mMapView.setOnEditAppliedListener(new MapView.OnEditAppliedListener() {
+            @Override
+            public void onEditApplied(int left, int top, int right, int bottom) {
+                onMapEdited(left, top, right, bottom);
+            }
+        });
         /*
          * 注册MapView地点点击监听
          * registOnPlaceClickListener
@@ -116,30 +159,53 @@ public class NavFragment extends Fragment {
      * */
     private void getMap(final String name) {
         Log.d(TAG, "getMapPgmPFD: mapName=" + name);
-        //获取 map.pgm 文件描述符
-        ParcelFileDescriptor mapPgmPFD = ShareMemoryApi.getInstance().getMapPgmPFD(name);
-        FileDescriptor fd = mapPgmPFD.getFileDescriptor();
-        FileInputStream fileInputStream = new FileInputStream(fd);
-        //从文件描述符读取数据流，解析为 RoverMap（此逻辑和之前一致）
-        mRoverMap = MapppUtils.loadPFD2RoverMap(fileInputStream);
-
-        if (mRoverMap != null) {
-            mMapView.setBitmap(mRoverMap.bitmap);
-            Log.d(TAG, "mRoverMap.res: " + mRoverMap.res);
-            mMapView.setResolution(mRoverMap.res);
-        } else {
-            String mapPath = ROBOT_MAP_DIR + File.separator + name + File.separator + MAP_PGM;
-            mRoverMap = MapppUtils.loadMap(mapPath);
-            if (mRoverMap != null) {
-                mMapView.setBitmap(mRoverMap.bitmap);
-                Log.d(TAG, "mRoverMap.res: " + mRoverMap.res);
-                mMapView.setResolution(mRoverMap.res);
-            } else {
-                Log.d(TAG, "parse map fail");
+        GlobalData.getInstance().setDisplayedMapName(name);
+        //地图与点位优先取自应用级缓存，版本未知时仓库会在后台校验 md5
+        final MapRepository repository = MapRepository.getInstance(getContext());
+        mRoverMap = repository.loadMap(name, getMapVersion(name),
+                new MapRepository.OnMapUpdateListener() {
+                    @Override
+                    public void onMapUpdated(String mapName, final RoverMap map) {
+                        mMapView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mRoverMap = map;
+                                // 像素坐标系可能变化，不在新旧地图之间插值
+                                mPoseAnimator.clear();
+                                showRoverMap();
+                                // 仓库已丢弃按旧地图投影的点位，重新拉取并投影
+                                GlobalData.getInstance().setTravelMatrix(null);
+                                refreshPlaces(name, repository);
+                            }
+                        });
+                    }
+                });
+        //先显示内存或磁盘缓存的点位，再按需向机器人查询最新列表
+        final PlaceStore cachedPlaces = repository.loadPlaces(name);
+        // 当前在 RobotApi 回调线程，换图和点位都交给主线程，避免与绘制同时进行
+        mMapView.post(new Runnable() {
+            @Override
+            public void run() {
+                showRoverMap();
+                if (cachedPlaces != null) {
+                    mMapView.setPlaces(cachedPlaces);
+                    GlobalData.getInstance().setPlaces(cachedPlaces, true);
+                    checkClearance(mRoverMap, cachedPlaces);
+                    buildTravelMatrix(mRoverMap, cachedPlaces);
+                }
             }
+        });
+        if (!repository.shouldRefreshPlaces(name)) {
+            Log.d(TAG, "getPlaceList: validated recently, use cache");
+            return;
         }
-        GlobalData.getInstance().setEditMapData(mMapView, mRoverMap);
+        refreshPlaces(name, repository);
+    }
 
+    /**
+     * 向机器人查询点位列表，与缓存不同时按当前地图重新投影并发布
+     */
+    private void refreshPlaces(final String name, final MapRepository repository) {
         /*
          * getInternationalPlaceList
          * 获取地图位置点
@@ -154,41 +220,19 @@ public class NavFragment extends Fragment {
 
                 if (result == Definition.RESULT_OK &&
                         !TextUtils.isEmpty(message) && !"timeout".equals(message)) {
-                    List<PoseBean> poseBeans = new ArrayList<>();
+                    if (repository.isSamePlaceList(name, message)) {
+                        Log.d(TAG, "getPlaceList: unchanged, use cache");
+                        return;
+                    }
                     try {
-                        Gson gson = new Gson();
-                        List<PlaceBean> placeBeanList = gson.fromJson(message, new TypeToken<List<PlaceBean>>() {
-                        }.getType());
-                        for (PlaceBean placeBean : placeBeanList) {
-                            if (SpecialPlaceUtil.isChargingPoint(placeBean) ||
-                                    (RobotApi.getInstance().isChargePileExits() &&
-                                            SpecialPlaceUtil.isNavigatorPoint(
-                                                    Constant.NavigatorPoint.POINT2,
-                                                    placeBean))) {
-                                continue;
-                            }
-                            String placename = placeBean.getPlaceName();
-                            if (null != placename) {
-                                poseBeans.add(new PoseBean(placename,
-                                        MapppUtils.pose2PixelByRoverMap(mRoverMap
-                                                , new Pose2d(placeBean.getPointX(),
-                                                        placeBean.getPointY(),
-                                                        placeBean.getPointTheta(),
-                                                        placeBean.getPlaceStatus()))));
-                            }
-
-                            /*
-                             * setOrigin
-                             * 设置机器人当前位置
-                             * Set the current position of the robot
-                             * */
-                            mMapView.setOrigin(MapppUtils.pose2PixelByRoverMap(mRoverMap, new Pose2d(placeBean.getPointX(),
-                                    placeBean.getPointY(),
-                                    placeBean.getPointTheta(),
-                                    placeBean.getPlaceStatus())));
-                        }
-                        mMapView.setPoseBeans(poseBeans);
-                        GlobalData.getInstance().setPoseBeanList(poseBeans, true);
+                        //解析、过滤特殊点位和投影一次完成，机器人位置由位姿监听设置
+                        long start = System.currentTimeMillis();
+                        PlaceListParser.Result parsed = PlaceListParser.parse(message, mRoverMap,
+                                RobotApi.getInstance().isChargePileExits());
+                        Log.d(TAG, "getPlaceList: " + parsed.places.size() + " places, cost="
+                                + (System.currentTimeMillis() - start) + "ms");
+                        repository.putPlaces(name, message, parsed.placeBeans, parsed.places);
+                        publishPlaces(parsed.places);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -197,6 +241,175 @@ public class NavFragment extends Fragment {
         });
     }
 
+    /**
+     * 在主线程一次性替换点位列表
+     */
+    private void publishPlaces(final PlaceStore places) {
+        mMapView.post(new Runnable() {
+            @Override
+            public void run() {
+                mMapView.setPlaces(places);
+                GlobalData.getInstance().setPlaces(places, true);
+            }
+        });
+        checkClearance(mRoverMap, places);
+        buildTravelMatrix(mRoverMap, places);
+    }
+
+    /**
+     * 后台检查点位离障碍物的距离，过近的点位按错误点位显示，避免导航时才发现
+     */
+    private void checkClearance(final RoverMap map, final PlaceStore places) {
+        if (map == null || places == null || places.isEmpty()) {
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DistanceField field = map.getDistanceField();
+                if (field == null) {
+                    return;
+                }
+                final int[] indices = field.findLowClearance(map, places,
+                        DistanceField.DEFAULT_MIN_CLEARANCE);
+                for (int index : indices) {
+                    Log.w(TAG, "checkClearance: " + places.getName(index) + " clearance="
+                            + field.getClearanceAtPixel(map, places.getX(index),
+                            places.getY(index)) + "m");
+                }
+                mMapView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mMapView.setLowClearancePlaces(places, indices);
+                    }
+                });
+            }
+        }, "PlaceClearance").start();
+    }
+
+    /**
+     * 后台计算点位两两之间的行走距离，优先用磁盘上同一 md5 的结果，点位没变的点对不再规划
+     */
+    private void buildTravelMatrix(final RoverMap map, final PlaceStore places) {
+        if (map == null || places == null || places.size() < 2
+                || TextUtils.isEmpty(map.pgmMd5)) {
+            return;
+        }
+        final TravelMatrixCache cache = TravelMatrixCache.getInstance(getContext());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // 缓存点位和拉取的点位可能先后触发
+                synchronized (sTravelMatrixLock) {
+                    TravelMatrix previous = GlobalData.getInstance().getTravelMatrix();
+                    if (previous == null || !previous.isFor(map)) {
+                        previous = cache.get(map.pgmMd5);
+                    }
+                    TravelMatrix matrix = TravelMatrix.compute(map, places, previous);
+                    if (matrix == null) {
+                        return;
+                    }
+                    if (matrix != previous) {
+                        cache.put(matrix);
+                    }
+                    GlobalData.getInstance().setTravelMatrix(matrix);
+                    Log.d(TAG, "buildTravelMatrix: " + matrix);
+                }
+            }
+        }, "TravelMatrix").start();
+    }
+
+    /**
+     * 禁行线、橡皮擦画进位图后，后台把同一区域写回栅格，并更新距离场、规划器和距离矩阵，
+     * 再重新检查点位离墙距离
+     */
+    private void onMapEdited(final int left, final int top, final int right, final int bottom) {
+        final RoverMap map = mRoverMap;
+        if (map == null) {
+            return;
+        }
+        Log.d(TAG, "onMapEdited: [" + left + ", " + top + ", " + right + ", " + bottom + ")");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // 距离场和规划器位图在 RoverMap 内随栅格一起更新
+                map.syncGridFromBitmap(left, top, right, bottom);
+                synchronized (sTravelMatrixLock) {
+                    TravelMatrix matrix = GlobalData.getInstance().getTravelMatrix();
+                    if (matrix != null && matrix.isFor(map)) {
+                        // 编辑未保存，md5 不变，不写回磁盘缓存
+                        matrix.update(map, left, top, right, bottom);
+                    }
+                }
+                checkClearance(map, GlobalData.getInstance().getPlaces());
+            }
+        }, "MapEdit").start();
+    }
+
+    /**
+     * 须在主线程调用
+     */
+    private void showRoverMap() {
+        if (mRoverMap != null) {
+            mMapView.setBitmap(mRoverMap.getBitmap(), mRoverMap.palette, mRoverMap.grid);
+            Log.d(TAG, "mRoverMap.res: " + mRoverMap.res);
+            mMapView.setResolution(mRoverMap.res);
+            mMapView.setTrajectory(GlobalData.getInstance().getTrajectory(), mRoverMap);
+            if (mSyntheticScan != null) {
+                // 换图后按新地图重新求交
+                startSyntheticScan();
+            }
+        }
+        GlobalData.getInstance().setEditMapData(mMapView, mRoverMap);
+    }
+
+    /**
+     * 只在可调试的包中生效
+     *
+     * @return 是否处理了长按
+     */
+    private boolean toggleSyntheticScan() {
+        if (getContext() == null || (getContext().getApplicationInfo().flags
+                & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return false;
+        }
+        if (mSyntheticScan != null) {
+            stopSyntheticScan();
+            Toast.makeText(getContext(), "模拟激光已关闭", Toast.LENGTH_SHORT).show();
+        } else if (mRoverMap != null) {
+            startSyntheticScan();
+            Toast.makeText(getContext(), "模拟激光已开启", Toast.LENGTH_SHORT).show();
+        }
+        return true;
+    }
+
+    private void startSyntheticScan() {
+        mSyntheticScan = new SyntheticScanSource(mRoverMap, SYNTHETIC_SCAN_BEAMS,
+                SYNTHETIC_SCAN_RANGE, SYNTHETIC_SCAN_PERIOD);
+        mMapView.setLaserScanSource(mSyntheticScan, mRoverMap);
+        Log.d(TAG, "startSyntheticScan: " + mRoverMap.width + "x" + mRoverMap.height);
+    }
+
+    private void stopSyntheticScan() {
+        mSyntheticScan = null;
+        mMapView.setLaserScanSource(null, null);
+    }
+
+    /**
+     * MapInfo 中的地图版本号，未获取到地图列表时返回 {@link MapDiskCache#VERSION_UNKNOWN}
+     */
+    private int getMapVersion(String name) {
+        List<MapInfo> mapInfoList = GlobalData.getInstance().getMapInfoList();
+        if (mapInfoList != null) {
+            for (MapInfo mapInfo : mapInfoList) {
+                if (TextUtils.equals(name, mapInfo.getMapName()) && mapInfo.getVersion() != null) {
+                    return mapInfo.getVersion();
+                }
+            }
+        }
+        return MapDiskCache.VERSION_UNKNOWN;
+    }
+
     /*
      * OnPlaceClickListener
      * 地图位置点点击监听
@@ -205,29 +418,88 @@ public class NavFragment extends Fragment {
     MapView.OnPlaceClickListener mOnPlaceClickListener = new MapView.OnPlaceClickListener() {
         @Override
         public void onPlaceClick(final String placeName) {
-            DialogUtils.showGoNavigation(getContext(), placeName,
-                    new DialogConfirm.ConfirmCallBack() {
-                        @Override
-                        public void confirmClick() {
-                            placeName1 = placeName;
-                            startNavigation(placeName);
-                        }
-                    }, new DialogConfirm.CancelBtnCallBack() {
-                        @Override
-                        public void cancelClick() {
-                            Toast.makeText(getContext(), "点击成功", Toast.LENGTH_SHORT).show();
-                        }
-                    });
+            previewRoute(placeName);
         }
     };
 
+    /**
+     * 后台在本地栅格上规划当前位置到点位的路线，画出预览，并在确认框中显示长度和预计时间
+     */
+    private void previewRoute(final String placeName) {
+        final RoverMap map = mRoverMap;
+        final PlaceStore places = GlobalData.getInstance().getPlaces();
+        final int index = places != null ? places.indexOf(placeName) : -1;
+        final Pose2d start = new Pose2d(0, 0, 0);
+        if (map == null || index < 0 || !GlobalData.getInstance().getNewestLocation(start)) {
+            showGoNavigation(placeName, null);
+            return;
+        }
+        final int goalX = (int) Math.floor(places.getX(index));
+        final int goalY = (int) Math.floor(places.getY(index));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                MapppUtils.pose2PixelInPlace(map, start);
+                PathPlanner planner = map.newPathPlanner();
+                int[] from = new int[2];
+                int[] to = new int[2];
+                PathPlanner.Path path = null;
+                // 机器人或点位落在未知区域边缘时，就近取可通行格子
+                if (planner != null
+                        && planner.nearestWalkable((int) Math.floor(start.x),
+                        (int) Math.floor(start.y), TravelMatrix.SNAP_RADIUS, from)
+                        && planner.nearestWalkable(goalX, goalY, TravelMatrix.SNAP_RADIUS, to)) {
+                    path = planner.plan(from[0], from[1], to[0], to[1], map.res);
+                }
+                Log.d(TAG, "previewRoute: " + placeName + " length="
+                        + (path != null ? path.length : -1) + " nodeLimit="
+                        + (planner != null && planner.isNodeLimitReached()));
+                final PathPlanner.Path route = path;
+                mMapView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isAdded() || map != mRoverMap) {
+                            return;
+                        }
+                        String routeInfo;
+                        if (route != null) {
+                            mMapView.setRoutePreview(route.toLines());
+                            routeInfo = getString(R.string.route_preview, route.length,
+                                    Math.round(route.getEta(ROUTE_PREVIEW_SPEED)));
+                        } else {
+                            mMapView.setRoutePreview(null);
+                            routeInfo = getString(R.string.route_unreachable);
+                        }
+                        showGoNavigation(placeName, routeInfo);
+                    }
+                });
+            }
+        }, "RoutePreview").start();
+    }
+
+    private void showGoNavigation(final String placeName, String routeInfo) {
+        DialogUtils.showGoNavigation(getContext(), placeName, routeInfo,
+                new DialogConfirm.ConfirmCallBack() {
+                    @Override
+                    public void confirmClick() {
+                        placeName1 = placeName;
+                        startNavigation(placeName);
+                    }
+                }, new DialogConfirm.CancelBtnCallBack() {
+                    @Override
+                    public void cancelClick() {
+                        mMapView.setRoutePreview(null);
+                        Toast.makeText(getContext(), "点击成功", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
     /**
      * startNavigation
      * 导航到指定位置
      */
     public static void startNavigation(String placeName) {
-
-        RobotApi.getInstance().startNavigation(0, placeName, 1.5, 10 * 1000, mNavigationListener);
+        NavigationHelper.startNavigation(placeName, 1.5, 10 * 1000, mNavigationListener);
     }
 
     /**
@@ -235,7 +507,7 @@ public class NavFragment extends Fragment {
      * 停止导航到指定位置
      */
     private void stopNavigation() {
-        RobotApi.getInstance().stopNavigation(0);
+        NavigationHelper.stopNavigation();
     }
 
     private boolean isCurrentMap() {
@@ -261,30 +533,44 @@ public class NavFragment extends Fragment {
         super.onStop();
         RobotApi.getInstance().unregisterStatusListener(mStatusPoseListener);
         RobotApi.getInstance().unregisterStatusListener(mEstimateStateListen);
+        mPoseAnimator.clear();
+        stopSyntheticScan();
         //释放 service 层资源
         ShareMemoryApi.getInstance().releaseGetMapPgmPFD();
     }
 
     private StatusListener mStatusPoseListener = new StatusListener() {
         long preTime = System.currentTimeMillis();
+        // 位姿回调始终在同一线程，解析器和位姿对象复用
+        final PoseParser parser = new PoseParser();
+        final Pose2d pose2d = new Pose2d(0, 0, 0);
+        final Pose2d pixel = new Pose2d(0, 0, 0);
 
         @Override
         public void onStatusUpdate(String type, String value) {
-            Pose2d pose2d = GsonUtil.fromJson(value, Pose2d.class);
+            // 样本时间取到达时刻，每一帧都解析并发布，只有界面插值按间隔抽稀
+            long sampleTime = SystemClock.uptimeMillis();
+            if (!parser.parse(value, pose2d)) {
+                Log.d(TAG, "onStatusUpdate: invalid pose " + value);
+                return;
+            }
             long curTime = System.currentTimeMillis();
             if (curTime - preTime > 2500) {
                 preTime = curTime;
-                Log.d(TAG, "onStatusUpdate. " + pose2d);
+                Log.d(TAG, "onStatusUpdate. " + pose2d + " " + mPoseAnimator);
             }
             GlobalData.getInstance().setNewestLocation(pose2d);
-            onMapPose2d(pose2d);
+            onMapPose2d(sampleTime, pose2d, pixel);
         }
     };
 
-    private void onMapPose2d(final Pose2d pose2d) {
+    private void onMapPose2d(long sampleTime, final Pose2d pose2d, Pose2d pixel) {
         if (null != mRoverMap) {
             if (mIsEstimate) {
-                mMapView.setOrigin(MapppUtils.pose2PixelByRoverMap(mRoverMap, pose2d));
+                // 交给预测器，每个显示帧在主线程插值刷新
+                pixel.set(pose2d);
+                MapppUtils.pose2PixelInPlace(mRoverMap, pixel);
+                mPoseAnimator.submit(sampleTime, pixel);
 //                mMapView.setResolution(mRoverMap.res);
             }
         }
@@ -301,6 +587,7 @@ public class NavFragment extends Fragment {
                 mIsEstimate = false;
             }
             if (!mIsEstimate) {
+                mPoseAnimator.clear();
                 mMapView.setOrigin(null);
             }
         }
@@ -310,7 +597,6 @@ public class NavFragment extends Fragment {
 
         @Override
         public void onResult(int status, String response) throws RemoteException {
-
             switch (status) {
                 case Definition.RESULT_OK:
                     if ("true".equals(response)) {
@@ -35,6 +35,9 @@ import com.ainirobot.coreservice.client.listener.ActionListener;
 import com.ainirobot.coreservice.client.listener.CommandListener;
 import com.ainirobot.robotos.LogTools;
 import com.ainirobot.robotos.R;
+import com.ainirobot.robotos.maputils.GlobalData;
+import com.ainirobot.robotos.maputils.TravelMatrix;
+import com.ainirobot.robotos.nav.NavigationHelper;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -139,12 +142,26 @@ public class NavigationFragment extends BaseFragment {
      * 导航到指定位置
      */
     private void startNavigation(String name) {
-        RobotApi.getInstance().startNavigation(0, name.length() > 0 ? name : getNavigationPoint(), 1.5, 10 * 1000, mNavigationListener);
+        NavigationHelper.startNavigation(name.length() > 0 ? name : getNavigationPoint(), 1.5, 10 * 1000, mNavigationListener);
         //若为Pose则直接导航到对应Pose
         //startNavigation(int reqId, Pose pose, double coordinateDeviation, long time, ActionListener listener)
     }
 
 
+    /**
+     * 点位到闸机位姿的行走距离：位姿是已知点位时直接查距离矩阵，矩阵还没算好或查不到时再向底盘查询
+     */
+    private double getPlaceDistance(String placeName, Pose pose) {
+        TravelMatrix matrix = GlobalData.getInstance().getTravelMatrix();
+        if (matrix != null && pose.getName() != null) {
+            float distance = matrix.getDistance(placeName, pose.getName());
+            if (distance != TravelMatrix.UNREACHABLE) {
+                return distance;
+            }
+        }
+        return RobotApi.getInstance().getPlaceOrPoseDistance(placeName, pose);
+    }
+
     /**
      * checkoutPassGate
      * 判断导航到指定位置时是否需要经过闸机
@@ -175,8 +192,8 @@ public class NavigationFragment extends BaseFragment {
                             check_pass_gate_status.setText("需要经过闸机，请先导航至第一个闸机点位");
                             //1.直接取返回的两个点位进行先后导航，2.也可根据点位名称进行对应的引导
                             //此条为有名称匹配，引导时，将返回的两个节点和已知节点相匹配,随意取一个点即可
-                            double distance = RobotApi.getInstance().getPlaceOrPoseDistance("闸机入口", poseList.get(0));
-                            double distance1 = RobotApi.getInstance().getPlaceOrPoseDistance("闸机入口", poseList.get(1));
+                            double distance = getPlaceDistance("闸机入口", poseList.get(0));
+                            double distance1 = getPlaceDistance("闸机入口", poseList.get(1));
                             LogTools.info("getGatePassingRoute distance: " + distance + "distance1 " + distance1);
                             getActivity().runOnUiThread(new Runnable() {
                                 @Override
@@ -235,7 +252,7 @@ public class NavigationFragment extends BaseFragment {
      * 停止导航到指定位置
      */
     private void stopNavigation() {
-        RobotApi.getInstance().stopNavigation(0);
+        NavigationHelper.stopNavigation();
     }
 
     /**
@@ -35,9 +35,20 @@ public class DialogUtils {
     public static void showGoNavigation(
             Context context, String placeName, DialogConfirm.ConfirmCallBack confirmCallBack,
             DialogConfirm.CancelBtnCallBack cancelBtnCallBack) {
+        showGoNavigation(context, placeName, null, confirmCallBack, cancelBtnCallBack);
+    }
+
+    /**
+     * @param routeInfo 预览路线的长度和预计时间，为 null 时不显示
+     */
+    public static void showGoNavigation(
+            Context context, String placeName, String routeInfo,
+            DialogConfirm.ConfirmCallBack confirmCallBack,
+            DialogConfirm.CancelBtnCallBack cancelBtnCallBack) {
         final DialogConfirm dialogConfirm = new DialogConfirm(context);
         dialogConfirm.setTextContent1(context.getString(R.string.go_navigation));
-        dialogConfirm.setTextContent2(context.getString(R.string.sure_go_navigation, placeName));
+        String content = context.getString(R.string.sure_go_navigation, placeName);
+        dialogConfirm.setTextContent2(routeInfo == null ? content : content + "\n" + routeInfo);
         dialogConfirm.setTextCancle(context.getString(R.string.cancel_txt));
         dialogConfirm.setTextConfirm(context.getString(R.string.confirm_txt));
         dialogConfirm.setConfirmCallBack(confirmCallBack);
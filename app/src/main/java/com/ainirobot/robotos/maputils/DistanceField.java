@@ -0,0 +1,254 @@
+package com.ainirobot.robotos.maputils;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * 栅格的欧氏距离场，每格记录到最近禁行线或障碍物的距离，用于检查点位离墙是否过近
+ * Exact Euclidean distance transform of an {@link OccupancyGrid} to the nearest
+ * BLOCK / OBSTACLE cell, computed in linear time with the
+ * Felzenszwalb-Huttenlocher lower envelope: a vertical pass for column
+ * distances followed by a parabola envelope per row. Distances are stored in
+ * one byte per cell in quarter-cell units, rounded down and saturating at
+ * {@link #MAX_CELLS}; only clearance near obstacles matters, and capping lets
+ * an edit be recomputed from a window {@link #MARGIN} cells around the
+ * changed rectangle instead of the whole map. Both passes run on
+ * {@link MapPixelConverter}'s pool for large maps.
+ */
+public class DistanceField {
+    private static final String TAG = Constant.PREFIX + "DistanceField";
+
+    /**
+     * 每格的量化步长，1/4 格
+     */
+    private static final int STEPS_PER_CELL = 4;
+    private static final int SATURATED = 255;
+    /**
+     * 能区分的最大距离，格，更远的格子都记为该值
+     */
+    public static final float MAX_CELLS = (float) SATURATED / STEPS_PER_CELL;
+    /**
+     * 编辑区域需要向外扩展的格数，超出该距离的障碍物不会影响未饱和的距离
+     */
+    static final int MARGIN = (int) Math.ceil(MAX_CELLS) + 1;
+    /**
+     * 点位离墙的默认最小距离，米
+     */
+    public static final double DEFAULT_MIN_CLEARANCE = 0.3;
+
+    private final OccupancyGrid mGrid;
+    private final int mWidth;
+    private final int mHeight;
+    private final byte[] mDistance;
+
+    private static final ThreadLocal<RowBuffers> sRowBuffers = new ThreadLocal<>();
+
+    /**
+     * 单行下包络计算复用的数组
+     */
+    private static class RowBuffers {
+        int[] f = new int[0];
+        int[] v = new int[0];
+        double[] z = new double[0];
+
+        void ensure(int n) {
+            if (f.length < n) {
+                f = new int[n];
+                v = new int[n];
+                z = new double[n + 1];
+            }
+        }
+    }
+
+    public DistanceField(OccupancyGrid grid) {
+        mGrid = grid;
+        mWidth = grid.getWidth();
+        mHeight = grid.getHeight();
+        mDistance = new byte[mWidth * mHeight];
+        long start = System.currentTimeMillis();
+        compute(0, 0, mWidth, mHeight);
+        Log.d(TAG, "build " + mWidth + "x" + mHeight + " cost="
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public boolean isFor(OccupancyGrid grid) {
+        return mGrid == grid;
+    }
+
+    /**
+     * 距离数组占用的字节数
+     */
+    public long byteSize() {
+        return mDistance.length;
+    }
+
+    /**
+     * 栅格中 [left, right) x [top, bottom) 被修改后调用，只重算受影响的窗口
+     */
+    public void update(int left, int top, int right, int bottom) {
+        compute(left - MARGIN, top - MARGIN, right + MARGIN, bottom + MARGIN);
+    }
+
+    /**
+     * 格子 (x, y) 到最近障碍物的距离，格，向下取整到 1/4 格；界外返回 0，
+     * 返回 {@link #MAX_CELLS} 时表示至少这么远
+     */
+    public float getCells(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return 0;
+        }
+        return (mDistance[y * mWidth + x] & 0xff) / (float) STEPS_PER_CELL;
+    }
+
+    /**
+     * 像素坐标处的距离，米
+     */
+    public double getClearanceAtPixel(RoverMap map, double px, double py) {
+        return getCells((int) Math.floor(px), (int) Math.floor(py)) * map.res;
+    }
+
+    /**
+     * 世界坐标处的距离，米
+     */
+    public double getClearance(RoverMap map, Pose2d pose) {
+        double px = (pose.x - map.x) / map.res;
+        double py = map.height - (pose.y - map.y) / map.res;
+        return getClearanceAtPixel(map, px, py);
+    }
+
+    /**
+     * 找出离障碍物小于 minClearance 的点位，点位为像素坐标
+     *
+     * @param minClearance 最小距离，米
+     * @return 过近点位的下标，按列表顺序
+     */
+    public int[] findLowClearance(RoverMap map, PlaceStore places, double minClearance) {
+        int[] out = new int[places.size()];
+        int count = 0;
+        for (int i = 0; i < places.size(); i++) {
+            if (getClearanceAtPixel(map, places.getX(i), places.getY(i)) < minClearance) {
+                out[count++] = i;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * 重算 [left, right) x [top, bottom) 内的距离，区域外 MARGIN 格内的障碍物参与计算
+     */
+    private void compute(int left, int top, int right, int bottom) {
+        final int x0 = Math.max(left, 0);
+        final int y0 = Math.max(top, 0);
+        final int x1 = Math.min(right, mWidth);
+        final int y1 = Math.min(bottom, mHeight);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        // 竖直距离需要左右各多算 MARGIN 列，供按行求下包络时使用
+        final int cx0 = Math.max(x0 - MARGIN, 0);
+        final int cx1 = Math.min(x1 + MARGIN, mWidth);
+        final int columns = cx1 - cx0;
+        final int rows = y1 - y0;
+        final byte[] vertical = new byte[columns * rows];
+        MapPixelConverter.forEachStripe(rows, columns, new MapPixelConverter.RowRange() {
+            @Override
+            public void run(int column, int columnCount) {
+                verticalPass(cx0 + column, columnCount, y0, y1, vertical, cx0, columns);
+            }
+        });
+        MapPixelConverter.forEachStripe(columns, rows, new MapPixelConverter.RowRange() {
+            @Override
+            public void run(int row, int rowCount) {
+                for (int y = row; y < row + rowCount; y++) {
+                    horizontalPass(vertical, y * columns, columns, cx0, x0, x1, y0 + y);
+                }
+            }
+        });
+    }
+
+    /**
+     * 对 [fromX, fromX + count) 列求到最近障碍物的竖直距离（格，最大 MARGIN），写入 out
+     * 中 [y0, y1) 行；上下各多扫描 MARGIN 行
+     */
+    private void verticalPass(int fromX, int count, int y0, int y1, byte[] out, int outX,
+                              int outStride) {
+        int sy0 = Math.max(y0 - MARGIN, 0);
+        int sy1 = Math.min(y1 + MARGIN, mHeight);
+        int[] run = new int[count];
+        Arrays.fill(run, MARGIN);
+        for (int y = sy0; y < y1; y++) {
+            int base = (y - y0) * outStride + fromX - outX;
+            for (int i = 0; i < count; i++) {
+                run[i] = mGrid.isBlocked(fromX + i, y) ? 0 : Math.min(run[i] + 1, MARGIN);
+                if (y >= y0) {
+                    out[base + i] = (byte) run[i];
+                }
+            }
+        }
+        Arrays.fill(run, MARGIN);
+        for (int y = sy1 - 1; y >= y0; y--) {
+            int base = (y - y0) * outStride + fromX - outX;
+            for (int i = 0; i < count; i++) {
+                run[i] = mGrid.isBlocked(fromX + i, y) ? 0 : Math.min(run[i] + 1, MARGIN);
+                if (y < y1 && run[i] < out[base + i]) {
+                    out[base + i] = (byte) run[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * 一行的下包络：d(x) = min((x - q)^2 + g(q)^2)，结果量化后写入 [x0, x1)
+     */
+    private void horizontalPass(byte[] vertical, int offset, int n, int cx0, int x0, int x1,
+                                int y) {
+        RowBuffers buffers = sRowBuffers.get();
+        if (buffers == null) {
+            buffers = new RowBuffers();
+            sRowBuffers.set(buffers);
+        }
+        buffers.ensure(n);
+        int[] f = buffers.f;
+        int[] v = buffers.v;
+        double[] z = buffers.z;
+        for (int q = 0; q < n; q++) {
+            int g = vertical[offset + q];
+            f[q] = g * g;
+        }
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            // z[0] 为负无穷，k 不会小于 0
+            double s = intersect(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersect(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        int row = y * mWidth;
+        for (int q = x0 - cx0; q < x1 - cx0; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            int dx = q - v[k];
+            int d2 = dx * dx + f[v[k]];
+            int steps = (int) (Math.sqrt(d2) * STEPS_PER_CELL);
+            mDistance[row + cx0 + q] = (byte) Math.min(steps, SATURATED);
+        }
+    }
+
+    /**
+     * 以 q、p 为顶点的两条抛物线的交点横坐标
+     */
+    private static double intersect(int[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * (q - p));
+    }
+}
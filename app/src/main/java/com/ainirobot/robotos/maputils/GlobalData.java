@@ -27,15 +27,18 @@ public class GlobalData {
     private static final String TAG = GlobalData.class.getSimpleName();
 
     private String mCurrentMapName;
+    private String mDisplayedMapName;
     private String mCreatingMapLanguage;
     private int mCreatingMapFinishState;
     private MapView mMapView;
     private RoverMap mMap;
     private List<MapInfo> mMapInfoList;
     private List<PlaceBean> mPlaceBeanList;
-    private List<PoseBean> mPoseBeanList;
+    private volatile PlaceStore mPlaces = PlaceStore.EMPTY;
     private OnPoseBeanListChangeListener mOnPoseBeanListChangeListener;
     private Pose2d mNewestLocation;
+    private final TrajectoryRecorder mTrajectory = new TrajectoryRecorder();
+    private volatile TravelMatrix mTravelMatrix;
     private String mLastEditName;
     private int mLastEditTime;
     private int mCurrentWork;
@@ -90,6 +93,19 @@ public class GlobalData {
         mCurrentMapName = mapName;
     }
 
+    /**
+     * 导航页显示的地图，与 {@link #getCurrentMapName()} 分开记录，换图时清空按旧图
+     * 世界坐标记录的轨迹和点位距离
+     */
+    public void setDisplayedMapName(String mapName) {
+        if (mDisplayedMapName != null && !mDisplayedMapName.equals(mapName)) {
+            // 世界坐标只在同一张地图内有意义
+            mTrajectory.clear();
+            mTravelMatrix = null;
+        }
+        mDisplayedMapName = mapName;
+    }
+
     public List<MapInfo> getMapInfoList() {
         return mMapInfoList;
     }
@@ -106,18 +122,64 @@ public class GlobalData {
         mPlaceBeanList = placeBeanList;
     }
 
-    public void setNewestLocation(Pose2d newestLocation) {
-        mNewestLocation = newestLocation;
+    /**
+     * 保存一份拷贝，调用方可以继续复用传入的对象，同时记入轨迹
+     */
+    public synchronized void setNewestLocation(Pose2d newestLocation) {
+        if (newestLocation == null) {
+            mNewestLocation = null;
+            return;
+        } else if (mNewestLocation == null) {
+            mNewestLocation = new Pose2d(0, 0, 0).set(newestLocation);
+        } else {
+            mNewestLocation.set(newestLocation);
+        }
+        mTrajectory.add(System.currentTimeMillis(), newestLocation);
+    }
+
+    public TrajectoryRecorder getTrajectory() {
+        return mTrajectory;
     }
 
-    public void setPoseBeanList(List<PoseBean> poseBeanList, boolean notify) {
-        this.mPoseBeanList = poseBeanList;
+    /**
+     * 当前地图点位之间的行走距离，还没算好时返回 null
+     */
+    public TravelMatrix getTravelMatrix() {
+        return mTravelMatrix;
+    }
+
+    public void setTravelMatrix(TravelMatrix travelMatrix) {
+        mTravelMatrix = travelMatrix;
+    }
+
+    /**
+     * 拷贝最新位置到 out
+     *
+     * @return 还没有位置时返回 false，此时 out 不变
+     */
+    public synchronized boolean getNewestLocation(Pose2d out) {
+        if (mNewestLocation == null) {
+            return false;
+        }
+        out.set(mNewestLocation);
+        return true;
+    }
+
+    /**
+     * PlaceStore 不可修改，直接共享同一个对象
+     */
+    public void setPlaces(PlaceStore places, boolean notify) {
+        this.mPlaces = places != null ? places : PlaceStore.EMPTY;
         if (mOnPoseBeanListChangeListener != null && notify) {
             mOnPoseBeanListChangeListener.onChanged();
         }
     }
 
 
+    public PlaceStore getPlaces() {
+        return mPlaces;
+    }
+
     public interface OnPoseBeanListChangeListener {
         void onChanged();
     }
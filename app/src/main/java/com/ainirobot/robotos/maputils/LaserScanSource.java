@@ -0,0 +1,31 @@
+package com.ainirobot.robotos.maputils;
+
+/**
+ * 激光扫描数据来源，可以是机器人实时数据、录制回放或合成数据
+ * Supplier of laser scan frames. Implementations push frames to the listener
+ * on their own thread between {@link #start} and {@link #stop}; the overlay
+ * does not care whether they come from the robot, a recording or a synthetic
+ * generator.
+ */
+public interface LaserScanSource {
+
+    interface Listener {
+        /**
+         * 一帧扫描，ranges 在回调返回后可能被复用，不能保留引用
+         *
+         * @param time           采集时间，毫秒，时钟由实现决定，仅供参考；
+         *                       显示方按收到帧的时刻计算帧龄，不依赖该时钟
+         * @param pose           扫描时激光在世界坐标系下的位姿
+         * @param angleMin       第一条射线相对 pose 朝向的角度，弧度
+         * @param angleIncrement 相邻射线的角度差，弧度
+         * @param ranges         各射线的距离，米，无效值为 0、负数、NaN 或无穷大
+         * @param count          有效的射线个数
+         */
+        void onScan(long time, Pose2d pose, float angleMin, float angleIncrement,
+                    float[] ranges, int count);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+}
@@ -0,0 +1,209 @@
+package com.ainirobot.robotos.maputils;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 已解码地图的磁盘缓存，按地图名存放，用 MapInfo 版本号与 pgm md5 判断是否失效
+ * On-disk cache of decoded maps, one file per map name. An entry holds the
+ * header, the 16-byte extra block and the raw {@link OccupancyGrid} words, and
+ * is memory-mapped on load, so an unchanged map opens without pgm parsing.
+ * Entries are invalidated by the MapInfo version or by a pgm md5 mismatch.
+ */
+public class MapDiskCache {
+    private static final String TAG = Constant.PREFIX + "MapDiskCache";
+
+    private static final String DIR_NAME = "map_cache";
+    private static final String SUFFIX = ".rmap";
+    private static final int MAGIC = 0x524D4150; // "RMAP"
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * MapInfo 未提供版本号时使用
+     */
+    public static final int VERSION_UNKNOWN = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static MapDiskCache sInstance;
+
+    private final File mDir;
+
+    public static synchronized MapDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MapDiskCache(
+                    new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return sInstance;
+    }
+
+    public MapDiskCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 读取缓存，version 已知时必须一致，md5 不为空时也必须一致，否则返回 null
+     */
+    public RoverMap get(String mapName, int version, String md5) {
+        File file = fileOf(mapName);
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.d(TAG, "get: stale format, mapName=" + mapName);
+                return null;
+            }
+            int cachedVersion = buffer.getInt();
+            String cachedName = readString(buffer);
+            String cachedMd5 = readString(buffer);
+            if (!TextUtils.equals(mapName, cachedName)
+                    || (version != VERSION_UNKNOWN && version != cachedVersion)
+                    || (!TextUtils.isEmpty(md5) && !md5.equals(cachedMd5))) {
+                Log.d(TAG, "get: invalid, mapName=" + mapName + " version=" + version
+                        + "/" + cachedVersion);
+                return null;
+            }
+
+            RoverMap roverMap = new RoverMap();
+            roverMap.pgmMd5 = cachedMd5;
+            roverMap.width = buffer.getInt();
+            roverMap.height = buffer.getInt();
+            roverMap.palette = new MapPalette(buffer.getInt(), buffer.getInt(),
+                    buffer.getInt(), buffer.getInt());
+            roverMap.extra = new byte[PgmDecoder.EXTRA_SIZE];
+            buffer.get(roverMap.extra);
+            roverMap.res = MapppUtils.bytes2Double(roverMap.extra, 0);
+            roverMap.x = MapppUtils.byte2float(roverMap.extra, 8);
+            roverMap.y = MapppUtils.byte2float(roverMap.extra, 12);
+
+            buffer.position(align8(buffer.position()));
+            long[] words = new long[OccupancyGrid.strideOf(roverMap.width) * roverMap.height];
+            LongBuffer longs = buffer.asLongBuffer();
+            if (longs.remaining() < words.length) {
+                Log.d(TAG, "get: truncated, mapName=" + mapName);
+                return null;
+            }
+            longs.get(words);
+            roverMap.grid = new OccupancyGrid(roverMap.width, roverMap.height, words);
+            return roverMap;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "get: mapName=" + mapName, e);
+        } finally {
+            IOUtils.close(raf);
+        }
+        return null;
+    }
+
+    /**
+     * 写入缓存，先写临时文件再重命名，避免读到半个文件
+     */
+    public boolean put(String mapName, int version, RoverMap map) {
+        if (map == null || map.grid == null || map.extra == null) {
+            return false;
+        }
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(TAG, "put: mkdirs failed " + mDir);
+            return false;
+        }
+        File file = fileOf(mapName);
+        File temp = new File(mDir, file.getName() + ".tmp");
+        OccupancyGrid grid = map.grid;
+        MapPalette palette = map.palette != null ? map.palette : MapPalette.ROBOT;
+        byte[] name = mapName.getBytes(UTF_8);
+        byte[] md5 = map.pgmMd5 == null ? new byte[0] : map.pgmMd5.getBytes(UTF_8);
+        int headerSize = align8(4 * 3 + 4 + name.length + 4 + md5.length + 4 * 6
+                + PgmDecoder.EXTRA_SIZE);
+        long[] words = grid.words();
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(temp, "rw");
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(version);
+            header.putInt(name.length).put(name);
+            header.putInt(md5.length).put(md5);
+            header.putInt(grid.getWidth()).putInt(grid.getHeight());
+            header.putInt(palette.toColor(MapPalette.GREY_PASS))
+                    .putInt(palette.toColor(MapPalette.GREY_BLOCK))
+                    .putInt(palette.toColor(MapPalette.GREY_UNDETECT))
+                    .putInt(palette.toColor(MapPalette.GREY_OBSTACLE));
+            header.put(map.extra, 0, PgmDecoder.EXTRA_SIZE);
+            header.position(0);
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer chunkLongs = chunk.asLongBuffer();
+            for (int i = 0; i < words.length; ) {
+                int count = Math.min(chunkLongs.capacity(), words.length - i);
+                chunkLongs.clear();
+                chunkLongs.put(words, i, count);
+                chunk.position(0).limit(count * 8);
+                writeFully(channel, chunk);
+                i += count;
+            }
+            channel.force(false);
+            raf.close();
+            raf = null;
+            if (!temp.renameTo(file)) {
+                Log.e(TAG, "put: rename failed " + file);
+                temp.delete();
+                return false;
+            }
+            Log.d(TAG, "put: mapName=" + mapName + " version=" + version
+                    + " bytes=" + file.length());
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "put: mapName=" + mapName, e);
+            temp.delete();
+        } finally {
+            IOUtils.close(raf);
+        }
+        return false;
+    }
+
+    public void remove(String mapName) {
+        File file = fileOf(mapName);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private File fileOf(String mapName) {
+        // 地图名可能包含中文或路径字符，文件名用 hash
+        return new File(mDir, Integer.toHexString(mapName.hashCode()) + "_"
+                + mapName.length() + SUFFIX);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int align8(int value) {
+        return (value + 7) & ~7;
+    }
+}
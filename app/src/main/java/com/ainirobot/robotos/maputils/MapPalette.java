@@ -0,0 +1,89 @@
+package com.ainirobot.robotos.maputils;
+
+import com.ainirobot.coreservice.client.Definition;
+
+/**
+ * pgm 灰度值与地图颜色的双向查找表
+ * Lookup tables between pgm grey values and map colors. The forward table has
+ * 256 entries so decoding is a single array read per pixel; the reverse table
+ * maps the palette colors back to their grey values when saving.
+ */
+public class MapPalette {
+
+    public static final int GREY_PASS = 0xff;
+    public static final int GREY_BLOCK = 0x00;
+    public static final int GREY_UNDETECT = 0x96;
+    public static final int GREY_OBSTACLE = 0x05;
+
+    /**
+     * 本地显示用配色
+     */
+    public static final MapPalette LOCAL = new MapPalette(MapppUtils.PASS, MapppUtils.BLOCK,
+            MapppUtils.UNDETECT, MapppUtils.OBSTACLE);
+
+    /**
+     * 与底盘共享内存地图一致的配色
+     */
+    public static final MapPalette ROBOT = new MapPalette(Definition.MAPCOLOR.PASS,
+            Definition.MAPCOLOR.BLOCK, Definition.MAPCOLOR.UNDETECT, Definition.MAPCOLOR.OBSTACLE);
+
+    private final int[] mColors = new int[256];
+    private final int[] mReverseColors;
+    private final byte[] mReverseGreys;
+
+    public MapPalette(int pass, int block, int undetect, int obstacle) {
+        this(pass, block, undetect, obstacle, 0);
+    }
+
+    /**
+     * @param unknown 未定义灰度值对应的颜色
+     */
+    public MapPalette(int pass, int block, int undetect, int obstacle, int unknown) {
+        for (int i = 0; i < mColors.length; i++) {
+            mColors[i] = unknown;
+        }
+        mColors[GREY_PASS] = pass;
+        mColors[GREY_BLOCK] = block;
+        mColors[GREY_UNDETECT] = undetect;
+        mColors[GREY_OBSTACLE] = obstacle;
+
+        mReverseColors = new int[]{pass, block, undetect, obstacle};
+        mReverseGreys = new byte[]{(byte) GREY_PASS, (byte) GREY_BLOCK,
+                (byte) GREY_UNDETECT, (byte) GREY_OBSTACLE};
+    }
+
+    public int toColor(int grey) {
+        return mColors[grey & 0xff];
+    }
+
+    /**
+     * 不在配色表中的颜色取低 8 位，与原有保存逻辑一致
+     */
+    public byte toGrey(int color) {
+        for (int i = 0; i < mReverseColors.length; i++) {
+            if (mReverseColors[i] == color) {
+                return mReverseGreys[i];
+            }
+        }
+        return (byte) color;
+    }
+
+    /**
+     * 本配色中的颜色换成 target 中同一灰度的颜色，不在本配色中的颜色原样返回
+     */
+    public int convertTo(MapPalette target, int color) {
+        for (int i = 0; i < mReverseColors.length; i++) {
+            if (mReverseColors[i] == color) {
+                return target.toColor(mReverseGreys[i] & 0xff);
+            }
+        }
+        return color;
+    }
+
+    /**
+     * 供热点循环直接使用，调用方不得修改
+     */
+    int[] colorTable() {
+        return mColors;
+    }
+}
@@ -0,0 +1,210 @@
+package com.ainirobot.robotos.maputils;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 地图像素转换，按行条带处理，大图在 ForkJoin 线程池上并行
+ * Converts map pixels in row stripes so only one stripe of ARGB pixels is
+ * alive per worker. Maps above {@link #PARALLEL_THRESHOLD} pixels are split
+ * across a fork-join pool sized to the CPU count.
+ */
+public class MapPixelConverter {
+
+    /**
+     * 超过该像素数才并行，小图线程调度的开销比转换本身还大
+     */
+    public static final int PARALLEL_THRESHOLD = 1024 * 1024;
+    private static final int STRIPE_PIXELS = 64 * 1024;
+
+    /**
+     * 填充 [row, row + rowCount) 行的 ARGB 像素，行宽为地图宽度
+     */
+    public interface RowSource {
+        void fillRows(int[] dst, int row, int rowCount);
+    }
+
+    /**
+     * 接收转换好的一段行，并行时会被多个线程以不相交的行区间同时调用
+     */
+    public interface RowSink {
+        void onRows(int[] pixels, int row, int rowCount);
+    }
+
+    /**
+     * 处理 [row, row + rowCount) 行，并行时各调用的行区间互不重叠
+     */
+    public interface RowRange {
+        void run(int row, int rowCount);
+    }
+
+    private static final ThreadLocal<int[]> sStripeBuffer = new ThreadLocal<>();
+
+    private MapPixelConverter() {
+    }
+
+    private static class PoolHolder {
+        static final ForkJoinPool POOL =
+                new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static ForkJoinPool getPool() {
+        return PoolHolder.POOL;
+    }
+
+    public static void convert(final int width, int height, final RowSource source,
+                               final RowSink sink) {
+        forEachStripe(width, height, new RowRange() {
+            @Override
+            public void run(int row, int rowCount) {
+                convertStripe(width, row, rowCount, source, sink);
+            }
+        });
+    }
+
+    /**
+     * 按条带遍历所有行，超过 {@link #PARALLEL_THRESHOLD} 时在线程池上并行
+     */
+    public static void forEachStripe(int width, int height, RowRange range) {
+        int stripeRows = stripeRowsOf(width);
+        if ((long) width * height < PARALLEL_THRESHOLD) {
+            for (int row = 0; row < height; row += stripeRows) {
+                range.run(row, Math.min(stripeRows, height - row));
+            }
+        } else {
+            getPool().invoke(new StripeTask(0, height, stripeRows, range));
+        }
+    }
+
+    /**
+     * 灰度像素经调色板转为 ARGB，pixels 的 position 须为 0
+     */
+    public static RowSource greyRows(final ByteBuffer pixels, final int width,
+                                     final MapPalette palette) {
+        final int[] lut = palette.colorTable();
+        return new RowSource() {
+            private final ThreadLocal<byte[]> mGreyBuffer = new ThreadLocal<>();
+
+            @Override
+            public void fillRows(int[] dst, int row, int rowCount) {
+                int count = rowCount * width;
+                byte[] grey = mGreyBuffer.get();
+                if (grey == null || grey.length < count) {
+                    grey = new byte[count];
+                    mGreyBuffer.set(grey);
+                }
+                ByteBuffer src = pixels.duplicate();
+                src.position(row * width);
+                src.get(grey, 0, count);
+                for (int i = 0; i < count; i++) {
+                    dst[i] = lut[grey[i] & 0xff];
+                }
+            }
+        };
+    }
+
+    /**
+     * 写入可变 Bitmap。Bitmap 不保证线程安全，各条带并行转换像素，setPixels 在
+     * bitmap 上加锁串行执行
+     */
+    public static RowSink bitmapRows(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        return new RowSink() {
+            @Override
+            public void onRows(int[] pixels, int row, int rowCount) {
+                synchronized (bitmap) {
+                    bitmap.setPixels(pixels, 0, width, 0, row, width, rowCount);
+                }
+            }
+        };
+    }
+
+    public static Bitmap toBitmap(int width, int height, RowSource source) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        convert(width, height, source, bitmapRows(bitmap));
+        return bitmap;
+    }
+
+    /**
+     * ARGB 转回灰度，按条带读取 Bitmap，避免整图 int[] 拷贝
+     */
+    public static void toGrey(Bitmap bitmap, MapPalette palette, byte[] dst, int offset) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int stripeRows = stripeRowsOf(width);
+        int[] stripe = new int[stripeRows * width];
+        for (int row = 0; row < height; row += stripeRows) {
+            int rows = Math.min(stripeRows, height - row);
+            toGrey(bitmap, palette, stripe, row, rows, dst, offset);
+            offset += rows * width;
+        }
+    }
+
+    /**
+     * 把 [row, row + rowCount) 行转回灰度，argb 为调用方复用的缓冲，至少 rowCount * width
+     */
+    public static void toGrey(Bitmap bitmap, MapPalette palette, int[] argb, int row,
+                              int rowCount, byte[] dst, int offset) {
+        int width = bitmap.getWidth();
+        bitmap.getPixels(argb, 0, width, 0, row, width, rowCount);
+        int count = rowCount * width;
+        int lastColor = argb[0];
+        byte lastGrey = palette.toGrey(lastColor);
+        for (int i = 0; i < count; i++) {
+            int color = argb[i];
+            // 地图大片同色，缓存上一次的结果
+            if (color != lastColor) {
+                lastColor = color;
+                lastGrey = palette.toGrey(color);
+            }
+            dst[offset++] = lastGrey;
+        }
+    }
+
+    /**
+     * 每个条带的行数，条带约 {@link #STRIPE_PIXELS} 像素
+     */
+    public static int stripeRowsOf(int width) {
+        return Math.max(1, STRIPE_PIXELS / width);
+    }
+
+    private static void convertStripe(int width, int row, int rowCount, RowSource source,
+                                      RowSink sink) {
+        int count = rowCount * width;
+        int[] buffer = sStripeBuffer.get();
+        if (buffer == null || buffer.length < count) {
+            buffer = new int[count];
+            sStripeBuffer.set(buffer);
+        }
+        source.fillRows(buffer, row, rowCount);
+        sink.onRows(buffer, row, rowCount);
+    }
+
+    private static class StripeTask extends RecursiveAction {
+        private final int mRow;
+        private final int mRowCount;
+        private final int mStripeRows;
+        private final RowRange mRange;
+
+        StripeTask(int row, int rowCount, int stripeRows, RowRange range) {
+            mRow = row;
+            mRowCount = rowCount;
+            mStripeRows = stripeRows;
+            mRange = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (mRowCount <= mStripeRows) {
+                mRange.run(mRow, mRowCount);
+                return;
+            }
+            int half = mRowCount / 2;
+            invokeAll(new StripeTask(mRow, half, mStripeRows, mRange),
+                    new StripeTask(mRow + half, mRowCount - half, mStripeRows, mRange));
+        }
+    }
+}
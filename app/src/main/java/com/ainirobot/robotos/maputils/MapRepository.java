@@ -0,0 +1,359 @@
+package com.ainirobot.robotos.maputils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.ainirobot.base.analytics.utils.StringUtil;
+import com.ainirobot.coreservice.client.actionbean.PlaceBean;
+import com.ainirobot.coreservice.client.ashmem.ShareMemoryApi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 应用级地图仓库，内存中缓存地图、点位投影和点位列表，切换 Fragment 不再重复加载
+ * Application-scoped store for decoded maps and their place lists, so fragment
+ * switches do not re-read the PFD or re-fetch places. Entries are kept in LRU
+ * order and evicted once their estimated size exceeds the byte budget; the most
+ * recently used map is always kept. Cache hits are revalidated by pgm md5 on a
+ * background thread when no MapInfo version is available. Projected places are
+ * also persisted, so markers can be shown from disk while the caller refreshes
+ * the list from the robot at most once per {@link #PLACE_REVALIDATE_INTERVAL}.
+ */
+public class MapRepository {
+    private static final String TAG = Constant.PREFIX + "MapRepository";
+
+    private final static String ROBOT_MAP_DIR =
+            Environment.getExternalStorageDirectory() + "/robot/map";
+    private final static String MAP_PGM = "pgm.zip";
+    /**
+     * 版本未知时两次 md5 校验的最小间隔
+     */
+    private static final long REVALIDATE_INTERVAL = 5 * 60 * 1000;
+    private static final long PLACE_BYTES = 256;
+    /**
+     * 点位列表两次向机器人查询的最小间隔
+     */
+    public static final long PLACE_REVALIDATE_INTERVAL = 30 * 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public interface OnMapUpdateListener {
+        /**
+         * 后台校验发现地图已变化，在仓库线程回调
+         */
+        void onMapUpdated(String mapName, RoverMap map);
+    }
+
+    private static class Entry {
+        RoverMap map;
+        int version;
+        long validateTime;
+        String placeListKey;
+        List<PlaceBean> placeBeans;
+        PlaceStore places;
+        long placeValidateTime;
+
+        long sizeOf() {
+            long size = 0;
+            if (map != null) {
+                if (map.grid != null) {
+                    size += map.grid.byteSize();
+                }
+                Bitmap bitmap = map.bitmap;
+                if (bitmap != null && !bitmap.isRecycled()) {
+                    size += bitmap.getAllocationByteCount();
+                }
+            }
+            if (placeBeans != null) {
+                size += placeBeans.size() * PLACE_BYTES;
+            }
+            if (places != null) {
+                size += places.byteSize();
+            }
+            return size;
+        }
+    }
+
+    private static MapRepository sInstance;
+
+    private final MapDiskCache mDiskCache;
+    private final PlaceDiskCache mPlaceDiskCache;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(4, 0.75f, true);
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private long mBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+
+    public static synchronized MapRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MapRepository(MapDiskCache.getInstance(context),
+                    PlaceDiskCache.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private MapRepository(MapDiskCache diskCache, PlaceDiskCache placeDiskCache) {
+        mDiskCache = diskCache;
+        mPlaceDiskCache = placeDiskCache;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+        trimToBudget();
+    }
+
+    /**
+     * 依次查内存、磁盘缓存，都没有时解析共享内存/pgm.zip，调用线程会被阻塞
+     *
+     * @param version  MapInfo 版本号，未知时传 {@link MapDiskCache#VERSION_UNKNOWN}
+     * @param listener 缓存命中但后台校验发现地图变化时回调，可为 null
+     */
+    public RoverMap loadMap(String mapName, int version, OnMapUpdateListener listener) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(mapName);
+        }
+        if (entry != null && entry.map != null
+                && (version == MapDiskCache.VERSION_UNKNOWN || version == entry.version)) {
+            Log.d(TAG, "loadMap: memory hit, mapName=" + mapName);
+            scheduleRevalidate(mapName, version, entry, listener);
+            return entry.map;
+        }
+
+        RoverMap map = mDiskCache.get(mapName, version, null);
+        boolean fromDisk = map != null;
+        if (!fromDisk) {
+            map = decode(mapName);
+        }
+        if (map == null) {
+            return null;
+        }
+        entry = putMap(mapName, version, map, !fromDisk);
+        if (fromDisk) {
+            Log.d(TAG, "loadMap: disk hit, mapName=" + mapName);
+            scheduleRevalidate(mapName, version, entry, listener);
+        } else {
+            final String name = mapName;
+            final int mapVersion = version;
+            final RoverMap decoded = map;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mDiskCache.put(name, mapVersion, decoded);
+                }
+            });
+        }
+        return map;
+    }
+
+    public synchronized RoverMap getMap(String mapName) {
+        Entry entry = mEntries.get(mapName);
+        return entry != null ? entry.map : null;
+    }
+
+    public synchronized PlaceStore getPlaces(String mapName) {
+        Entry entry = mEntries.get(mapName);
+        return entry != null ? entry.places : null;
+    }
+
+    /**
+     * 内存中没有时读取磁盘缓存，须先加载地图，缓存按地图版本和 md5 校验
+     */
+    public synchronized PlaceStore loadPlaces(String mapName) {
+        Entry entry = mEntries.get(mapName);
+        if (entry == null || entry.map == null) {
+            return null;
+        }
+        if (entry.places == null) {
+            PlaceDiskCache.Places cached = mPlaceDiskCache.get(mapName, entry.version,
+                    entry.map.pgmMd5);
+            if (cached != null) {
+                Log.d(TAG, "loadPlaces: disk hit, mapName=" + mapName
+                        + " places=" + cached.places.size());
+                entry.placeListKey = cached.listKey;
+                entry.places = cached.places;
+                // 磁盘来的列表需要向机器人再确认一次
+                entry.placeValidateTime = 0;
+                trimToBudget();
+            }
+        }
+        return entry.places;
+    }
+
+    /**
+     * 缓存的点位列表是否需要向机器人重新查询
+     */
+    public synchronized boolean shouldRefreshPlaces(String mapName) {
+        Entry entry = mEntries.get(mapName);
+        return entry == null || entry.places == null || entry.placeValidateTime == 0
+                || SystemClock.elapsedRealtime() - entry.placeValidateTime
+                >= PLACE_REVALIDATE_INTERVAL;
+    }
+
+    public synchronized List<PlaceBean> getPlaceBeans(String mapName) {
+        Entry entry = mEntries.get(mapName);
+        return entry != null ? entry.placeBeans : null;
+    }
+
+    /**
+     * 新查询到的点位列表原文是否与缓存一致，一致时无需重新解析，并记为已校验
+     */
+    public synchronized boolean isSamePlaceList(String mapName, String placeListJson) {
+        Entry entry = mEntries.get(mapName);
+        boolean same = entry != null && entry.places != null
+                && TextUtils.equals(entry.placeListKey, placeListKeyOf(placeListJson));
+        if (same) {
+            entry.placeValidateTime = SystemClock.elapsedRealtime();
+        }
+        return same;
+    }
+
+    /**
+     * 保存新解析的点位，同时在后台写入磁盘缓存
+     */
+    public synchronized void putPlaces(final String mapName, String placeListJson,
+                                       List<PlaceBean> placeBeans,
+                                       final PlaceStore places) {
+        Entry entry = mEntries.get(mapName);
+        if (entry == null) {
+            return;
+        }
+        final String listKey = placeListKeyOf(placeListJson);
+        entry.placeListKey = listKey;
+        entry.placeBeans = placeBeans;
+        entry.places = places;
+        entry.placeValidateTime = SystemClock.elapsedRealtime();
+        trimToBudget();
+        if (entry.map == null) {
+            return;
+        }
+        final int version = entry.version;
+        final String md5 = entry.map.pgmMd5;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPlaceDiskCache.put(mapName, version, md5, listKey, places);
+            }
+        });
+    }
+
+    public synchronized void evict(String mapName) {
+        mEntries.remove(mapName);
+    }
+
+    /**
+     * @param validated 刚解析出的地图无需再校验，磁盘缓存来的需要
+     */
+    private synchronized Entry putMap(String mapName, int version, RoverMap map,
+                                      boolean validated) {
+        Entry entry = mEntries.get(mapName);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(mapName, entry);
+        }
+        if (entry.map != null && !TextUtils.equals(entry.map.pgmMd5, map.pgmMd5)) {
+            // 地图变了，点位的像素坐标需要重新投影
+            entry.placeListKey = null;
+            entry.placeBeans = null;
+            entry.places = null;
+        }
+        entry.map = map;
+        entry.version = version;
+        entry.validateTime = validated ? SystemClock.elapsedRealtime() : 0;
+        trimToBudget();
+        return entry;
+    }
+
+    private void scheduleRevalidate(final String mapName, final int version, final Entry entry,
+                                    final OnMapUpdateListener listener) {
+        if (version != MapDiskCache.VERSION_UNKNOWN) {
+            return;
+        }
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (entry.validateTime != 0 && now - entry.validateTime < REVALIDATE_INTERVAL) {
+                return;
+            }
+            entry.validateTime = now;
+        }
+        final String cachedMd5 = entry.map.pgmMd5;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                RoverMap fresh = decode(mapName);
+                if (fresh == null || TextUtils.equals(fresh.pgmMd5, cachedMd5)) {
+                    return;
+                }
+                Log.d(TAG, "revalidate: map changed, mapName=" + mapName);
+                putMap(mapName, version, fresh, true);
+                mDiskCache.put(mapName, version, fresh);
+                if (listener != null) {
+                    listener.onMapUpdated(mapName, fresh);
+                }
+            }
+        });
+    }
+
+    /**
+     * 优先共享内存，失败时读取老结构的 pgm.zip
+     */
+    private RoverMap decode(String mapName) {
+        RoverMap roverMap = null;
+        ParcelFileDescriptor mapPgmPFD = ShareMemoryApi.getInstance().getMapPgmPFD(mapName);
+        if (mapPgmPFD != null) {
+            roverMap = MapppUtils.loadPFD2RoverMap(
+                    new FileInputStream(mapPgmPFD.getFileDescriptor()));
+        }
+        if (roverMap == null) {
+            String mapPath = ROBOT_MAP_DIR + File.separator + mapName + File.separator + MAP_PGM;
+            roverMap = MapppUtils.loadMap(mapPath);
+        }
+        if (roverMap == null) {
+            Log.d(TAG, "decode: parse map fail, mapName=" + mapName);
+        }
+        return roverMap;
+    }
+
+    private void trimToBudget() {
+        long used = 0;
+        for (Entry entry : mEntries.values()) {
+            used += entry.sizeOf();
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        // 按 LRU 顺序淘汰，最近使用的一个始终保留
+        while (used > mBudgetBytes && mEntries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            used -= eldest.getValue().sizeOf();
+            Log.d(TAG, "trimToBudget: evict " + eldest.getKey());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 点位列表原文的 md5，与地图 md5 同一格式；hashCode 只有 32 位，不同列表可能碰撞
+     */
+    private static String placeListKeyOf(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return StringUtil.toHexString(digest.digest(json.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -7,19 +7,18 @@ import android.graphics.Paint;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.ainirobot.base.analytics.utils.Md5Util;
-import com.ainirobot.coreservice.client.Definition;
+import com.ainirobot.base.analytics.utils.StringUtil;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -62,14 +61,36 @@ public class MapppUtils {
 
     public static Pose2d pose2PixelByRoverMap(RoverMap costMap, Pose2d pose) {
         Pose2d newPose = new Pose2d(pose.x, pose.y, pose.t, pose.status);
+        pose2PixelInPlace(costMap, newPose);
+        return newPose;
+    }
+
+    /**
+     * 世界坐标原地转换为像素坐标，不分配新对象
+     */
+    public static void pose2PixelInPlace(RoverMap costMap, Pose2d pose) {
         if (costMap != null) {
-            newPose.x -= costMap.x;
-            newPose.x /= costMap.res;
-            newPose.y -= costMap.y;
-            newPose.y /= costMap.res;
-            newPose.y = costMap.height - newPose.y;
+            pose.x = (pose.x - costMap.x) / costMap.res;
+            pose.y = costMap.height - (pose.y - costMap.y) / costMap.res;
+        }
+    }
+
+    /**
+     * 批量原地转换，poses 按 {@link PoseParser#STRIDE} 排列（x, y, theta, status），只改 x、y
+     */
+    public static void pose2PixelInPlace(RoverMap costMap, double[] poses, int offset, int count) {
+        if (costMap == null) {
+            return;
+        }
+        double originX = costMap.x;
+        double originY = costMap.y;
+        double scale = 1 / costMap.res;
+        int height = costMap.height;
+        int end = offset + count * PoseParser.STRIDE;
+        for (int i = offset; i < end; i += PoseParser.STRIDE) {
+            poses[i] = (poses[i] - originX) * scale;
+            poses[i + 1] = height - (poses[i + 1] - originY) * scale;
         }
-        return newPose;
     }
 
     /*
@@ -78,165 +99,69 @@ public class MapppUtils {
      * */
     public static RoverMap loadMapNew(String pgmPath){
         FileInputStream fileInputStream = null;
-        DataInputStream dataInputStream = null;
         try {
-
-
-            RoverMap roverMap = new RoverMap();
             fileInputStream = new FileInputStream(pgmPath);
-            dataInputStream = new DataInputStream(fileInputStream);
-
-            String magic = nextNonCommentLine(dataInputStream);
-            Log.d("PgmBitMap", magic);
-            if (!magic.equals("P5")) {
-                throw new Exception("Unknown magic number: " + magic);
-            }
-
-            String widthHeight = nextNonCommentLine(dataInputStream);
-            String[] tokens = widthHeight.split(" ");
-            int width = Integer.parseInt(tokens[0]);
-            int height = Integer.parseInt(tokens[1]);
-            int size = width * height;
-
-            nextNonCommentLine(dataInputStream);
-            /*String sMaxVal = nextNonCommentLine(dataInputStream);
-            int maxVal = Integer.parseInt(sMaxVal);*/
-
-            byte[] pixelsByte = new byte[size];
-            dataInputStream.read(pixelsByte, 0, size);
-            roverMap.extra = new byte[16];
-            dataInputStream.read(roverMap.extra, 0, 16);
-
-            int[] pixelsInt = new int[size];
-            for (int i = 0; i < size; i++) {
-                int p = pixelsByte[i] & 0xff;
-                switch (p) {
-                    case 0x96:
-                        pixelsInt[i] = UNDETECT;//灰色---白色
-                        break;
-                    case 0x00:
-                        pixelsInt[i] = BLOCK;//黑色---深蓝
-                        break;
-                    case 0xff:
-                        pixelsInt[i] = PASS;//白色---浅蓝
-                        break;
-                    case 0x05:
-                        pixelsInt[i] = OBSTACLE;
-                        break;
-                    default:
-                        break;
-                }
-                //pixelsInt[i] = 0xff000000 | (p << 16) | (p << 8) | p;
-            }
-
-            roverMap.x = byte2float(roverMap.extra, 8);
-            roverMap.y = byte2float(roverMap.extra, 12);
-            roverMap.res = bytes2Double(roverMap.extra, 0);
-            roverMap.height = height;
-            roverMap.width = width;
-
-            roverMap.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            roverMap.bitmap.setPixels(pixelsInt, 0, width, 0, 0, width, height);
+            PgmDecoder.PgmData pgm = PgmDecoder.decode(fileInputStream.getChannel());
+            RoverMap roverMap = toRoverMap(pgm, MapPalette.LOCAL);
+            roverMap.pgmMd5 = PgmDecoder.md5(pgm);
             return roverMap;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            IOUtils.close(dataInputStream);
             IOUtils.close(fileInputStream);
         }
         return null;
     }
     /*
-     * 适用于老的地图结构，读取pgm文件
-     * For old pgm map structure.
+     * 适用于老的地图结构，直接从 zip 中流式解码 map.pgm，同时计算 md5，不落临时文件
+     * For old pgm map structure. map.pgm is decoded straight from the zip entry and
+     * hashed in the same pass, no temp file is written.
      * */
     public static RoverMap loadMap(String path) {
-        File zipFile = new File(path);
-        String pgmPath = zipFile.getParent() + File.separator + MAP_PGM_NAME;
-        File tempPgm = new File(pgmPath);
+        ZipFile zipFile = null;
+        InputStream inputStream = null;
         try {
-            upZipFile(zipFile, zipFile.getParent(), MAP_PGM_NAME);
-        } catch (IOException e) {
-            if (tempPgm.exists()) {
-                tempPgm.delete();
-            }
-            e.printStackTrace();
-            return null;
-        }
-
-        FileInputStream fileInputStream = null;
-        DataInputStream dataInputStream = null;
-        try {
-
-            RoverMap roverMap = new RoverMap();
-            roverMap.pgmMd5= Md5Util.getFileMD5(tempPgm);
-            fileInputStream = new FileInputStream(pgmPath);
-            dataInputStream = new DataInputStream(fileInputStream);
-
-            String magic = nextNonCommentLine(dataInputStream);
-            Log.d("PgmBitMap", magic);
-            if (!magic.equals("P5")) {
-                throw new Exception("Unknown magic number: " + magic);
-            }
-
-            String widthHeight = nextNonCommentLine(dataInputStream);
-            String[] tokens = widthHeight.split(" ");
-            int width = Integer.parseInt(tokens[0]);
-            int height = Integer.parseInt(tokens[1]);
-            int size = width * height;
-
-            nextNonCommentLine(dataInputStream);
-            /*String sMaxVal = nextNonCommentLine(dataInputStream);
-            int maxVal = Integer.parseInt(sMaxVal);*/
-
-            byte[] pixelsByte = new byte[size];
-            dataInputStream.read(pixelsByte, 0, size);
-            roverMap.extra = new byte[16];
-            dataInputStream.read(roverMap.extra, 0, 16);
-
-            int[] pixelsInt = new int[size];
-            for (int i = 0; i < size; i++) {
-                int p = pixelsByte[i] & 0xff;
-                switch (p) {
-                    case 0x96:
-                        pixelsInt[i] = UNDETECT;//灰色---白色
-                        break;
-                    case 0x00:
-                        pixelsInt[i] = BLOCK;//黑色---深蓝
-                        break;
-                    case 0xff:
-                        pixelsInt[i] = PASS;//白色---浅蓝
-                        break;
-                    case 0x05:
-                        pixelsInt[i] = OBSTACLE;
-                        break;
-                    default:
-                        break;
-                }
-                //pixelsInt[i] = 0xff000000 | (p << 16) | (p << 8) | p;
+            zipFile = new ZipFile(path);
+            ZipEntry entry = zipFile.getEntry(MAP_PGM_NAME);
+            if (entry == null) {
+                Log.d(TAG, "loadMap: " + MAP_PGM_NAME + " not found in " + path);
+                return null;
             }
-
-            roverMap.x = byte2float(roverMap.extra, 8);
-            roverMap.y = byte2float(roverMap.extra, 12);
-            roverMap.res = bytes2Double(roverMap.extra, 0);
-            roverMap.height = height;
-            roverMap.width = width;
-
-            roverMap.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            roverMap.bitmap.setPixels(pixelsInt, 0, width, 0, 0, width, height);
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            inputStream = new DigestInputStream(zipFile.getInputStream(entry), digest);
+            PgmDecoder.PgmData pgm = PgmDecoder.decode(inputStream, entry.getSize());
+            RoverMap roverMap = toRoverMap(pgm, MapPalette.LOCAL);
+            roverMap.pgmMd5 = StringUtil.toHexString(digest.digest());
             return roverMap;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            IOUtils.close(dataInputStream);
-            IOUtils.close(fileInputStream);
-            if (tempPgm.exists()) {
-                tempPgm.delete();
-            }
+            IOUtils.close(inputStream);
+            IOUtils.close(zipFile);
         }
         return null;
     }
 
+    /**
+     * 生成 RoverMap，三种加载方式共用，位图在显示时才生成
+     */
+    private static RoverMap toRoverMap(PgmDecoder.PgmData pgm, MapPalette palette) {
+        int width = pgm.width;
+        int height = pgm.height;
+
+        RoverMap roverMap = new RoverMap();
+        roverMap.extra = pgm.extra;
+        roverMap.x = byte2float(roverMap.extra, 8);
+        roverMap.y = byte2float(roverMap.extra, 12);
+        roverMap.res = bytes2Double(roverMap.extra, 0);
+        roverMap.height = height;
+        roverMap.width = width;
+
+        roverMap.palette = palette;
+        roverMap.grid = OccupancyGrid.fromGrey(pgm.pixels, width, height);
+        return roverMap;
+    }
+
 
     private static final int ZIP_BUFF_SIZE = 1024 * 1024; // 1M Byte
 
@@ -249,6 +174,7 @@ public class MapppUtils {
         ZipFile zf = null;
         try {
             zf = new ZipFile(zipFile);
+            byte buffer[] = new byte[ZIP_BUFF_SIZE];
             for (Enumeration<?> entries = zf.entries(); entries.hasMoreElements(); ) {
                 InputStream in = null;
                 OutputStream out = null;
@@ -274,7 +200,6 @@ public class MapppUtils {
                         desFile.createNewFile();
                     }
                     out = new FileOutputStream(desFile);
-                    byte buffer[] = new byte[ZIP_BUFF_SIZE];
                     int realLength;
                     while ((realLength = in.read(buffer)) > 0) {
                         out.write(buffer, 0, realLength);
@@ -289,26 +214,6 @@ public class MapppUtils {
         }
     }
 
-    private static String nextAnyLine(DataInputStream dataInputStream) throws IOException {
-        StringBuffer sb = new StringBuffer();
-        byte b = 0;
-        while (b != 10) // newline
-        {
-            b = dataInputStream.readByte();
-            char c = (char) b;
-            sb.append(c);
-        }
-        return sb.toString().trim();
-    }
-
-    private static String nextNonCommentLine(DataInputStream dataInputStream) throws IOException {
-        String s = nextAnyLine(dataInputStream);
-        while (s.startsWith("#") || s.equals("")) {
-            s = nextAnyLine(dataInputStream);
-        }
-        return s;
-    }
-
     /**
      * 文字生成图片
      *
@@ -376,68 +281,17 @@ public class MapppUtils {
      */
     public static RoverMap loadPFD2RoverMap(FileInputStream fileInputStream) {
         Log.d(TAG, "loadPFD2RoverMap:");
-        DataInputStream dataInputStream = null;
         try {
-            Log.d(TAG, "loadPFD2RoverMap: available=" + fileInputStream.available());
-            RoverMap roverMap = new RoverMap();
-            dataInputStream = new DataInputStream(fileInputStream);
-            Log.d(TAG, "loadPFD2RoverMap: available=" + dataInputStream.available());
-
-            String magic = nextNonCommentLine(dataInputStream);
-            Log.d(TAG, "loadPFD2RoverMap: magic=" + magic);
-            if (!magic.equals("P5")) {
-                throw new Exception("Unknown magic number: " + magic);
-            }
-
-            String widthHeight = nextNonCommentLine(dataInputStream);
-            String[] tokens = widthHeight.split(" ");
-            int width = Integer.parseInt(tokens[0]);
-            int height = Integer.parseInt(tokens[1]);
-            int size = width * height;
-
-            nextNonCommentLine(dataInputStream);
-
-            byte[] pixelsByte = new byte[size];
-            dataInputStream.read(pixelsByte, 0, size);
-            roverMap.extra = new byte[16];
-            dataInputStream.read(roverMap.extra, 0, 16);
-
-            int[] pixelsInt = new int[size];
-            for (int i = 0; i < size; i++) {
-                int p = pixelsByte[i] & 0xff;
-                switch (p) {
-                    case 0x96:
-                        pixelsInt[i] = Definition.MAPCOLOR.UNDETECT;//未探测
-                        break;
-                    case 0x00:
-                        pixelsInt[i] = Definition.MAPCOLOR.BLOCK;//禁行线
-                        break;
-                    case 0xff:
-                        pixelsInt[i] = Definition.MAPCOLOR.PASS;//可通行
-                        break;
-                    case 0x05:
-                        pixelsInt[i] = Definition.MAPCOLOR.OBSTACLE;//障碍物
-                        break;
-                    default:
-                        break;
-                }
-            }
-
-            roverMap.x = byte2float(roverMap.extra, 8);
-            roverMap.y = byte2float(roverMap.extra, 12);
-            roverMap.res = bytes2Double(roverMap.extra, 0);
-            roverMap.height = height;
-            roverMap.width = width;
-
-            roverMap.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            roverMap.bitmap.setPixels(pixelsInt, 0, width, 0, 0, width, height);
+            PgmDecoder.PgmData pgm = PgmDecoder.decode(fileInputStream.getChannel());
+            Log.d(TAG, "loadPFD2RoverMap: size=" + pgm.width + "x" + pgm.height);
+            RoverMap roverMap = toRoverMap(pgm, MapPalette.ROBOT);
+            roverMap.pgmMd5 = PgmDecoder.md5(pgm);
             Log.d(TAG, "loadPFD2RoverMap: Done!");
             return roverMap;
         } catch (Exception e) {
             Log.d(TAG, "loadPFD2RoverMap:Exception: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            IOUtils.close(dataInputStream);
             IOUtils.close(fileInputStream);
         }
         return null;
@@ -447,58 +301,30 @@ public class MapppUtils {
      * 把 RoverMap 转化成共享内存数据
      */
     public static byte[] saveRoverMapToPFDData(RoverMap map) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        DataOutputStream dataOutputStream = null;
         try {
-            dataOutputStream = new DataOutputStream(outputStream);
-
-            String fileHeader = String.format("P5\n%d %d\n255\n", map.bitmap.getWidth(), map
-                    .bitmap.getHeight());
-            dataOutputStream.writeBytes(fileHeader);
-
-            int size = map.bitmap.getWidth() * map.bitmap.getHeight();
-            byte[] pixelsByte = new byte[size];
-            int[] pixelsInt = new int[size];
-            map.bitmap.getPixels(pixelsInt, 0, map.bitmap.getWidth(), 0, 0, map.bitmap.getWidth()
-                    , map.bitmap.getHeight());
-
-            for (int i = 0; i < size; i++) {
-                switch (pixelsInt[i]) {
-                    case Definition.MAPCOLOR.UNDETECT:
-                        pixelsInt[i] = 0xff969696;
-                        break;
-                    case Definition.MAPCOLOR.BLOCK:
-                        pixelsInt[i] = 0xff000000;
-                        break;
-                    case Definition.MAPCOLOR.PASS:
-                        pixelsInt[i] = 0xffffffff;
-                        break;
-                    case Definition.MAPCOLOR.OBSTACLE:
-                        pixelsInt[i] = 0xff050505;
-                        break;
-                    default:
-                        break;
-                }
-                pixelsByte[i] = (byte) (pixelsInt[i] & 0x000000ff);
-            }
-            dataOutputStream.write(pixelsByte);
-            dataOutputStream.write(map.extra);
-            dataOutputStream.flush();
-            byte[] bytes = outputStream.toByteArray();
+            byte[] bytes = new byte[PgmEncoder.encodedSize(map)];
+            PgmEncoder.encode(map, ByteBuffer.wrap(bytes));
             Log.d(TAG, "saveRoverMapToPFDData: Done!");
             return bytes;
-        } catch (FileNotFoundException e) {
-            Log.d(TAG, "saveRoverMapToPFDData:FileNotFoundException " + e.getMessage());
-            e.printStackTrace();
         } catch (IOException e) {
             Log.d(TAG, "saveRoverMapToPFDData:IOException: " + e.getMessage());
             e.printStackTrace();
-        } finally {
-            IOUtils.close(dataOutputStream);
-            IOUtils.close(outputStream);
         }
         return null;
     }
-}
-
 
+    /**
+     * 把 RoverMap 直接写入共享内存 fd，不经过中间 byte[]
+     */
+    public static boolean saveRoverMapToPFD(RoverMap map, FileDescriptor fd) {
+        try {
+            long size = PgmEncoder.encode(map, fd);
+            Log.d(TAG, "saveRoverMapToPFD: Done! size=" + size);
+            return true;
+        } catch (IOException e) {
+            Log.d(TAG, "saveRoverMapToPFD:IOException: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
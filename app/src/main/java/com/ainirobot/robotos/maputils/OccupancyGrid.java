@@ -0,0 +1,307 @@
+package com.ainirobot.robotos.maputils;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 地图栅格，每格 2 bit，32 格打包成一个 long，每行按 long 对齐
+ * Occupancy grid with 2 bits per cell, 32 cells packed per long word. Each row
+ * starts on a word boundary, so row spans can be tested a word at a time.
+ * Cell states: {@link #UNDETECT} 00, {@link #PASS} 01, {@link #BLOCK} 10,
+ * {@link #OBSTACLE} 11 - the high bit is set exactly for impassable cells.
+ */
+public class OccupancyGrid {
+
+    public static final int UNDETECT = 0;
+    public static final int PASS = 1;
+    public static final int BLOCK = 2;
+    public static final int OBSTACLE = 3;
+
+    private static final int CELLS_PER_WORD = 32;
+    private static final long LOW_BITS = 0x5555555555555555L;
+    private static final long HIGH_BITS = 0xAAAAAAAAAAAAAAAAL;
+
+    private static final byte[] STATE_OF_GREY = new byte[256];
+
+    static {
+        // 未定义的灰度值按未探测处理
+        STATE_OF_GREY[MapPalette.GREY_PASS] = PASS;
+        STATE_OF_GREY[MapPalette.GREY_BLOCK] = BLOCK;
+        STATE_OF_GREY[MapPalette.GREY_OBSTACLE] = OBSTACLE;
+    }
+
+    private static final int[] GREY_OF_STATE = {MapPalette.GREY_UNDETECT,
+            MapPalette.GREY_PASS, MapPalette.GREY_BLOCK, MapPalette.GREY_OBSTACLE};
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;
+    private final long[] mWords;
+
+    public OccupancyGrid(int width, int height) {
+        this(width, height, new long[strideOf(width) * height]);
+    }
+
+    OccupancyGrid(int width, int height, long[] words) {
+        if (words.length != strideOf(width) * height) {
+            throw new IllegalArgumentException("Grid words " + words.length
+                    + " do not match size " + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mStride = strideOf(width);
+        mWords = words;
+    }
+
+    static int strideOf(int width) {
+        return (width + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+    }
+
+    public static int stateOfGrey(int grey) {
+        return STATE_OF_GREY[grey & 0xff];
+    }
+
+    public static int greyOfState(int state) {
+        return GREY_OF_STATE[state];
+    }
+
+    /**
+     * 由 pgm 灰度像素构建，pixels 的 position 须为 0
+     */
+    public static OccupancyGrid fromGrey(final ByteBuffer pixels, final int width, int height) {
+        final OccupancyGrid grid = new OccupancyGrid(width, height);
+        MapPixelConverter.forEachStripe(width, height, new MapPixelConverter.RowRange() {
+            @Override
+            public void run(int row, int rowCount) {
+                byte[] line = new byte[width];
+                ByteBuffer src = pixels.duplicate();
+                src.position(row * width);
+                for (int y = row; y < row + rowCount; y++) {
+                    src.get(line, 0, width);
+                    grid.packRow(y, line);
+                }
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * 由显示用 Bitmap 反推，用于编辑（禁行线等）之后同步栅格
+     */
+    public static OccupancyGrid fromBitmap(Bitmap bitmap, MapPalette palette) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        OccupancyGrid grid = new OccupancyGrid(width, height);
+        byte[] grey = new byte[width * height];
+        MapPixelConverter.toGrey(bitmap, palette, grey, 0);
+        grid.packGrey(grey, 0);
+        return grid;
+    }
+
+    /**
+     * 2x2 取最大值缩小一半，障碍物/禁行线优先于可通行，可通行优先于未探测，缩小后不会丢失障碍
+     * Halves the grid with 2x2 max-pooling over the state values, so any
+     * impassable cell survives into the coarser level.
+     */
+    public OccupancyGrid downsample() {
+        final OccupancyGrid dst = new OccupancyGrid((mWidth + 1) / 2, (mHeight + 1) / 2);
+        MapPixelConverter.forEachStripe(dst.mWidth, dst.mHeight, new MapPixelConverter.RowRange() {
+            @Override
+            public void run(int row, int rowCount) {
+                for (int y = row; y < row + rowCount; y++) {
+                    int sy = y << 1;
+                    int sy1 = Math.min(sy + 1, mHeight - 1);
+                    for (int x = 0; x < dst.mWidth; x++) {
+                        int sx = x << 1;
+                        int sx1 = Math.min(sx + 1, mWidth - 1);
+                        int state = Math.max(Math.max(get(sx, sy), get(sx1, sy)),
+                                Math.max(get(sx, sy1), get(sx1, sy1)));
+                        dst.set(x, y, state);
+                    }
+                }
+            }
+        });
+        return dst;
+    }
+
+    private void packGrey(byte[] grey, int offset) {
+        byte[] line = new byte[mWidth];
+        for (int y = 0; y < mHeight; y++) {
+            System.arraycopy(grey, offset + y * mWidth, line, 0, mWidth);
+            packRow(y, line);
+        }
+    }
+
+    private void packRow(int y, byte[] line) {
+        int base = y * mStride;
+        for (int w = 0; w < mStride; w++) {
+            int x0 = w * CELLS_PER_WORD;
+            int end = Math.min(x0 + CELLS_PER_WORD, mWidth);
+            long word = 0;
+            for (int x = x0; x < end; x++) {
+                word |= (long) STATE_OF_GREY[line[x] & 0xff] << ((x - x0) << 1);
+            }
+            mWords[base + w] = word;
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 每行占用的 long 个数
+     */
+    public int getStride() {
+        return mStride;
+    }
+
+    long[] words() {
+        return mWords;
+    }
+
+    /**
+     * 栅格占用的内存字节数
+     */
+    public long byteSize() {
+        return (long) mWords.length * 8;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < mWidth && y < mHeight;
+    }
+
+    public int get(int x, int y) {
+        long word = mWords[y * mStride + (x >>> 5)];
+        return (int) (word >>> ((x & 31) << 1)) & 3;
+    }
+
+    public void set(int x, int y, int state) {
+        int index = y * mStride + (x >>> 5);
+        int shift = (x & 31) << 1;
+        mWords[index] = (mWords[index] & ~(3L << shift)) | ((long) (state & 3) << shift);
+    }
+
+    public boolean isFree(int x, int y) {
+        return get(x, y) == PASS;
+    }
+
+    /**
+     * 禁行线或障碍物
+     */
+    public boolean isBlocked(int x, int y) {
+        return (get(x, y) & 2) != 0;
+    }
+
+    public int countFree(int left, int top, int right, int bottom) {
+        return count(PASS, left, top, right, bottom);
+    }
+
+    /**
+     * 统计矩形 [left, right) x [top, bottom) 内状态为 state 的格子数，越界部分会被裁掉
+     */
+    public int count(int state, int left, int top, int right, int bottom) {
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, mWidth);
+        bottom = Math.min(bottom, mHeight);
+        if (left >= right || top >= bottom) {
+            return 0;
+        }
+        long pattern = (state & 3) * LOW_BITS;
+        int total = 0;
+        for (int y = top; y < bottom; y++) {
+            int base = y * mStride;
+            int firstWord = left >>> 5;
+            int lastWord = (right - 1) >>> 5;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long diff = mWords[base + w] ^ pattern;
+                // 两位都为 0 的格子即等于 state
+                long match = ~(diff | (diff >>> 1)) & LOW_BITS;
+                total += Long.bitCount(match & spanMask(w, left, right));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 第 y 行 [fromX, toX) 区间内是否有禁行线或障碍物
+     */
+    public boolean anyBlocked(int y, int fromX, int toX) {
+        if (y < 0 || y >= mHeight) {
+            return false;
+        }
+        fromX = Math.max(fromX, 0);
+        toX = Math.min(toX, mWidth);
+        if (fromX >= toX) {
+            return false;
+        }
+        int base = y * mStride;
+        int lastWord = (toX - 1) >>> 5;
+        for (int w = fromX >>> 5; w <= lastWord; w++) {
+            if ((mWords[base + w] & HIGH_BITS & spanMask(w, fromX, toX)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 第 w 个字中落在 [from, to) 内的格子对应的位
+     */
+    private static long spanMask(int w, int from, int to) {
+        int x0 = w << 5;
+        int start = Math.max(from - x0, 0);
+        int end = Math.min(to - x0, CELLS_PER_WORD);
+        long mask = end == CELLS_PER_WORD ? -1L : (1L << (end << 1)) - 1;
+        return mask & (-1L << (start << 1));
+    }
+
+    /**
+     * 写出 pgm 灰度，dst 从 offset 开始需要 width * height 字节
+     */
+    public void toGrey(byte[] dst, int offset) {
+        toGrey(0, mHeight, dst, offset);
+    }
+
+    /**
+     * 写出 [row, row + rowCount) 行的灰度
+     */
+    public void toGrey(int row, int rowCount, byte[] dst, int offset) {
+        for (int y = row; y < row + rowCount; y++) {
+            int base = y * mStride;
+            for (int x = 0; x < mWidth; x++) {
+                long word = mWords[base + (x >>> 5)];
+                dst[offset++] = (byte) GREY_OF_STATE[(int) (word >>> ((x & 31) << 1)) & 3];
+            }
+        }
+    }
+
+    /**
+     * 按调色板渲染成 ARGB 行，供 {@link MapPixelConverter} 生成 Bitmap
+     */
+    public MapPixelConverter.RowSource rows(MapPalette palette) {
+        final int[] colors = new int[4];
+        for (int state = 0; state < 4; state++) {
+            colors[state] = palette.toColor(GREY_OF_STATE[state]);
+        }
+        return new MapPixelConverter.RowSource() {
+            @Override
+            public void fillRows(int[] dst, int row, int rowCount) {
+                int i = 0;
+                for (int y = row; y < row + rowCount; y++) {
+                    int base = y * mStride;
+                    for (int x = 0; x < mWidth; x++) {
+                        long word = mWords[base + (x >>> 5)];
+                        dst[i++] = colors[(int) (word >>> ((x & 31) << 1)) & 3];
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,763 @@
+package com.ainirobot.robotos.maputils;
+
+import java.util.Arrays;
+
+/**
+ * 栅格路径规划，A* 加跳点搜索（JPS），用于导航前在本地预览路线和估算到达时间
+ * Grid path planner over an {@link OccupancyGrid}. Only {@link OccupancyGrid#PASS}
+ * cells are traversable; moves are 8-connected and a diagonal step needs both
+ * orthogonal neighbours free, so paths never cut corners. With jump point
+ * search on (the default) only jump points enter the open set, and straight
+ * jumps scan 64 cells at a time over passability bitsets kept both row-major
+ * and column-major. Search state lives in primitive arrays (a cell-to-node
+ * hash table, parallel node arrays and an int binary heap) that are kept and
+ * reused across searches, so a query allocates only its result.
+ * {@link #distances} reuses the same state for one heuristic-free search from
+ * a source to many targets. Copies made for other threads share the bitsets
+ * read-only; {@link #update} applies an edit to fresh copies of the arrays, so
+ * a search in flight never sees a half-applied edit. Building the bitsets
+ * walks the grid once; keep one planner per grid. Not thread-safe.
+ */
+public class PathPlanner {
+    /**
+     * 单次搜索最多创建的节点数，超过后放弃，避免普通 A* 在大地图上占用过多内存
+     */
+    public static final int DEFAULT_MAX_NODES = 1 << 20;
+
+    private static final float SQRT2 = (float) Math.sqrt(2);
+    private static final int[] DIRECTIONS_X = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] DIRECTIONS_Y = {0, 1, 0, -1, 1, 1, -1, -1};
+
+    private final OccupancyGrid mGrid;
+    private final int mWidth;
+    private final int mHeight;
+    /**
+     * 可通行位图，按行存放，每行 mRowWords 个 long；与副本共用后只读，{@link #update} 换新数组
+     */
+    private long[] mRows;
+    private final int mRowWords;
+    /**
+     * 同一位图转置后按列存放，每列 mColWords 个 long，用于竖直方向的跳跃
+     */
+    private long[] mCols;
+    private final int mColWords;
+
+    private boolean mJumpPointSearch = true;
+    private int mMaxNodes = DEFAULT_MAX_NODES;
+
+    /**
+     * 节点数组，下标为节点编号
+     */
+    private int[] mCell = new int[1024];
+    private int[] mParent = new int[1024];
+    private float[] mG = new float[1024];
+    private float[] mF = new float[1024];
+    /**
+     * 节点在堆中的位置，-1 表示已关闭
+     */
+    private int[] mHeapPos = new int[1024];
+    private int mNodeCount;
+
+    /**
+     * 格子到节点编号 + 1 的开放寻址表，0 为空
+     */
+    private int[] mTable = new int[2048];
+    private int mTableShift = 32 - 11;
+
+    private int[] mHeap = new int[1024];
+    private int mHeapSize;
+
+    private int mGoalX;
+    private int mGoalY;
+    private int mExpanded;
+    /**
+     * 多终点搜索时不用启发函数
+     */
+    private boolean mDijkstra;
+    private boolean mNodeLimitReached;
+
+    /**
+     * 规划结果，像素坐标下的折线，只包含拐点
+     */
+    public static class Path {
+        /**
+         * x, y 交错的格子中心像素坐标，从起点到终点
+         */
+        public final float[] points;
+        /**
+         * 路线长度，米
+         */
+        public final double length;
+        /**
+         * 搜索中展开的节点数
+         */
+        public final int expanded;
+
+        Path(float[] points, double length, int expanded) {
+            this.points = points;
+            this.length = length;
+            this.expanded = expanded;
+        }
+
+        public int getPointCount() {
+            return points.length / 2;
+        }
+
+        /**
+         * 按平均速度估算的到达时间，秒
+         *
+         * @param speed 平均速度，米/秒
+         */
+        public double getEta(double speed) {
+            return speed > 0 ? length / speed : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * drawLines 使用的线段数组，每段 x0, y0, x1, y1
+         */
+        public float[] toLines() {
+            int segments = Math.max(getPointCount() - 1, 0);
+            float[] lines = new float[segments * 4];
+            for (int i = 0; i < segments; i++) {
+                System.arraycopy(points, i * 2, lines, i * 4, 4);
+            }
+            return lines;
+        }
+    }
+
+    public PathPlanner(OccupancyGrid grid) {
+        mGrid = grid;
+        mWidth = grid.getWidth();
+        mHeight = grid.getHeight();
+        mRowWords = (mWidth + 63) >>> 6;
+        mColWords = (mHeight + 63) >>> 6;
+        mRows = new long[mRowWords * mHeight];
+        mCols = new long[mColWords * mWidth];
+        buildBitsets(0, 0, mWidth, mHeight);
+    }
+
+    /**
+     * 与 source 共用当前的可通行位图，只另建搜索状态，供多个线程同时规划；
+     * source 之后调用 {@link #update} 不影响这里，副本始终看到同一份完整的栅格
+     */
+    PathPlanner(PathPlanner source) {
+        mGrid = source.mGrid;
+        mWidth = source.mWidth;
+        mHeight = source.mHeight;
+        mRowWords = source.mRowWords;
+        mColWords = source.mColWords;
+        mRows = source.mRows;
+        mCols = source.mCols;
+        mJumpPointSearch = source.mJumpPointSearch;
+        mMaxNodes = source.mMaxNodes;
+    }
+
+    /**
+     * 栅格中 [left, right) x [top, bottom) 被修改后调用，在位图的拷贝上重新提取这部分的
+     * 可通行位再换上，其他线程中的副本继续使用修改前的位图；不能与本对象的规划同时进行
+     */
+    public void update(int left, int top, int right, int bottom) {
+        mRows = mRows.clone();
+        mCols = mCols.clone();
+        buildBitsets(Math.max(left, 0), Math.max(top, 0), Math.min(right, mWidth),
+                Math.min(bottom, mHeight));
+    }
+
+    /**
+     * 由 2 位一格的栅格提取 [left, right) x [top, bottom) 的可通行位，同时写出转置
+     */
+    private void buildBitsets(int left, int top, int right, int bottom) {
+        long[] words = mGrid.words();
+        int stride = mGrid.getStride();
+        for (int y = top; y < bottom; y++) {
+            int src = y * stride;
+            int dst = y * mRowWords;
+            long[] colBits = mCols;
+            int colWord = y >>> 6;
+            long colBit = 1L << (y & 63);
+            for (int x = left; x < right; x++) {
+                long word = words[src + (x >>> 5)];
+                long rowBit = 1L << (x & 63);
+                if (((word >>> ((x & 31) << 1)) & 3) == OccupancyGrid.PASS) {
+                    mRows[dst + (x >>> 6)] |= rowBit;
+                    colBits[x * mColWords + colWord] |= colBit;
+                } else {
+                    mRows[dst + (x >>> 6)] &= ~rowBit;
+                    colBits[x * mColWords + colWord] &= ~colBit;
+                }
+            }
+        }
+    }
+
+    public boolean isFor(OccupancyGrid grid) {
+        return mGrid == grid;
+    }
+
+    /**
+     * 关闭后退化为普通 A*，每次展开 8 个相邻格子
+     */
+    public void setJumpPointSearch(boolean enabled) {
+        mJumpPointSearch = enabled;
+    }
+
+    public void setMaxNodes(int maxNodes) {
+        mMaxNodes = maxNodes;
+    }
+
+    /**
+     * 上一次搜索是否因超出节点上限而放弃，搜索路径上不打日志，由调用方按需记录
+     */
+    public boolean isNodeLimitReached() {
+        return mNodeLimitReached;
+    }
+
+    public boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < mWidth && y < mHeight
+                && (mRows[y * mRowWords + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    /**
+     * 在 (x, y) 半径 radius 格以内找最近的可通行格子，写入 out[0]、out[1]
+     *
+     * @return 找不到时返回 false，out 不变
+     */
+    public boolean nearestWalkable(int x, int y, int radius, int[] out) {
+        int best = Integer.MAX_VALUE;
+        for (int r = 0; r <= radius && best > r * r; r++) {
+            for (int dy = -r; dy <= r; dy++) {
+                // 只看第 r 圈
+                int step = Math.abs(dy) == r ? 1 : 2 * r;
+                for (int dx = -r; dx <= r; dx += Math.max(step, 1)) {
+                    int distance2 = dx * dx + dy * dy;
+                    if (distance2 < best && isWalkable(x + dx, y + dy)) {
+                        best = distance2;
+                        out[0] = x + dx;
+                        out[1] = y + dy;
+                    }
+                }
+            }
+        }
+        return best != Integer.MAX_VALUE;
+    }
+
+    /**
+     * 世界坐标之间规划，地图的分辨率和原点取自 RoverMap（即 pgm 的 extra 头）
+     *
+     * @return 起点或终点不可通行、不可达或超出节点上限时返回 null
+     */
+    public Path plan(RoverMap map, Pose2d start, Pose2d goal) {
+        Pose2d pixel = new Pose2d(start.x, start.y, 0);
+        MapppUtils.pose2PixelInPlace(map, pixel);
+        int sx = (int) Math.floor(pixel.x);
+        int sy = (int) Math.floor(pixel.y);
+        pixel.x = goal.x;
+        pixel.y = goal.y;
+        MapppUtils.pose2PixelInPlace(map, pixel);
+        return plan(sx, sy, (int) Math.floor(pixel.x), (int) Math.floor(pixel.y), map.res);
+    }
+
+    /**
+     * 格子坐标之间规划
+     *
+     * @param res 分辨率，米/格，用于换算路线长度
+     */
+    public Path plan(int startX, int startY, int goalX, int goalY, double res) {
+        mNodeLimitReached = false;
+        if (!isWalkable(startX, startY) || !isWalkable(goalX, goalY)) {
+            return null;
+        }
+        reset();
+        mGoalX = goalX;
+        mGoalY = goalY;
+        int goalCell = goalY * mWidth + goalX;
+        open(startY * mWidth + startX, -1, 0);
+        while (mHeapSize > 0) {
+            int node = pop();
+            int cell = mCell[node];
+            if (cell == goalCell) {
+                return buildPath(node, res);
+            }
+            mExpanded++;
+            boolean ok = mJumpPointSearch ? expandJumpPoints(node) : expandNeighbors(node);
+            if (!ok) {
+                mNodeLimitReached = true;
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从一个起点到多个终点的距离，一次 Dijkstra（相邻 8 格，不切角），所有终点出堆后即停止；
+     * 同一起点求多个距离时代替逐个 {@link #plan}
+     *
+     * @param count    终点数，取 targetX、targetY 的前 count 个，不可通行的终点跳过
+     * @param res      分辨率，米/格
+     * @param distance 输出，每个终点的距离，米，不可达为正无穷
+     * @param bounds   输出，可以为 null，每个终点 4 个：路线包围盒 left, top, right, bottom，
+     *                 闭区间，不可达时 left > right
+     * @return 求出的终点数；超出节点上限时返回 -1，此前已求出的终点结果有效
+     */
+    public int distances(int startX, int startY, int[] targetX, int[] targetY, int count,
+                         double res, float[] distance, int[] bounds) {
+        mNodeLimitReached = false;
+        Arrays.fill(distance, 0, count, Float.POSITIVE_INFINITY);
+        if (bounds != null) {
+            for (int k = 0; k < count; k++) {
+                bounds[k * 4] = 1;
+                bounds[k * 4 + 1] = 1;
+                bounds[k * 4 + 2] = 0;
+                bounds[k * 4 + 3] = 0;
+            }
+        }
+        if (!isWalkable(startX, startY)) {
+            return 0;
+        }
+        // 高 32 位为格子编号，低 32 位为终点序号，排序后出堆时二分查找
+        long[] targets = new long[count];
+        int total = 0;
+        for (int k = 0; k < count; k++) {
+            if (isWalkable(targetX[k], targetY[k])) {
+                targets[total++] = ((long) (targetY[k] * mWidth + targetX[k]) << 32) | k;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        Arrays.sort(targets, 0, total);
+        int remaining = total;
+        reset();
+        mDijkstra = true;
+        try {
+            open(startY * mWidth + startX, -1, 0);
+            while (mHeapSize > 0) {
+                int node = pop();
+                int cell = mCell[node];
+                for (int k = lowerBound(targets, total, (long) cell << 32);
+                     k < total && (int) (targets[k] >>> 32) == cell; k++) {
+                    int target = (int) targets[k];
+                    distance[target] = (float) (mG[node] * res);
+                    if (bounds != null) {
+                        traceBounds(node, bounds, target * 4);
+                    }
+                    remaining--;
+                }
+                if (remaining == 0) {
+                    break;
+                }
+                mExpanded++;
+                if (!expandNeighbors(node)) {
+                    mNodeLimitReached = true;
+                    return -1;
+                }
+            }
+            return total - remaining;
+        } finally {
+            mDijkstra = false;
+        }
+    }
+
+    /**
+     * 有序数组 values 前 size 个中第一个不小于 key 的位置
+     */
+    private static int lowerBound(long[] values, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 沿父节点回溯到起点，把经过格子的包围盒写入 out[offset..offset + 3]
+     */
+    private void traceBounds(int node, int[] out, int offset) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (; node >= 0; node = mParent[node]) {
+            int cell = mCell[node];
+            int x = cell % mWidth;
+            int y = cell / mWidth;
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x);
+            bottom = Math.max(bottom, y);
+        }
+        out[offset] = left;
+        out[offset + 1] = top;
+        out[offset + 2] = right;
+        out[offset + 3] = bottom;
+    }
+
+    private void reset() {
+        mNodeCount = 0;
+        mHeapSize = 0;
+        mExpanded = 0;
+        Arrays.fill(mTable, 0);
+    }
+
+    /**
+     * 普通 A*：相邻 8 格
+     */
+    private boolean expandNeighbors(int node) {
+        int cell = mCell[node];
+        int x = cell % mWidth;
+        int y = cell / mWidth;
+        for (int d = 0; d < 8; d++) {
+            int dx = DIRECTIONS_X[d];
+            int dy = DIRECTIONS_Y[d];
+            if (!canStep(x, y, dx, dy)) {
+                continue;
+            }
+            if (!relax(node, x + dx, y + dy, d < 4 ? 1 : SQRT2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 跳点搜索：按来向裁剪相邻格子，沿每个方向跳到下一个跳点
+     */
+    private boolean expandJumpPoints(int node) {
+        int cell = mCell[node];
+        int x = cell % mWidth;
+        int y = cell / mWidth;
+        int parent = mParent[node];
+        if (parent < 0) {
+            for (int d = 0; d < 8; d++) {
+                if (canStep(x, y, DIRECTIONS_X[d], DIRECTIONS_Y[d])
+                        && !jumpAndRelax(node, x, y, DIRECTIONS_X[d], DIRECTIONS_Y[d])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int parentCell = mCell[parent];
+        int dx = Integer.signum(x - parentCell % mWidth);
+        int dy = Integer.signum(y - parentCell / mWidth);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = isWalkable(x, y + dy);
+            boolean horizontal = isWalkable(x + dx, y);
+            if (vertical && !jumpAndRelax(node, x, y, 0, dy)) {
+                return false;
+            }
+            if (horizontal && !jumpAndRelax(node, x, y, dx, 0)) {
+                return false;
+            }
+            if (vertical && horizontal && !jumpAndRelax(node, x, y, dx, dy)) {
+                return false;
+            }
+        } else if (dx != 0) {
+            boolean next = isWalkable(x + dx, y);
+            boolean down = isWalkable(x, y + 1);
+            boolean up = isWalkable(x, y - 1);
+            if (next) {
+                if (!jumpAndRelax(node, x, y, dx, 0)
+                        || (down && !jumpAndRelax(node, x, y, dx, 1))
+                        || (up && !jumpAndRelax(node, x, y, dx, -1))) {
+                    return false;
+                }
+            }
+            if ((down && !jumpAndRelax(node, x, y, 0, 1))
+                    || (up && !jumpAndRelax(node, x, y, 0, -1))) {
+                return false;
+            }
+        } else {
+            boolean next = isWalkable(x, y + dy);
+            boolean right = isWalkable(x + 1, y);
+            boolean left = isWalkable(x - 1, y);
+            if (next) {
+                if (!jumpAndRelax(node, x, y, 0, dy)
+                        || (right && !jumpAndRelax(node, x, y, 1, dy))
+                        || (left && !jumpAndRelax(node, x, y, -1, dy))) {
+                    return false;
+                }
+            }
+            if ((right && !jumpAndRelax(node, x, y, 1, 0))
+                    || (left && !jumpAndRelax(node, x, y, -1, 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean jumpAndRelax(int node, int x, int y, int dx, int dy) {
+        int jump = jump(x + dx, y + dy, dx, dy);
+        if (jump < 0) {
+            return true;
+        }
+        int jx = jump % mWidth;
+        int jy = jump / mWidth;
+        return relax(node, jx, jy, octile(Math.abs(jx - x), Math.abs(jy - y)));
+    }
+
+    /**
+     * 从 (x, y) 开始（含）沿 (dx, dy) 寻找跳点
+     *
+     * @return 跳点的格子编号，没有时返回 -1
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        if (dy == 0) {
+            int jx = scan(mRows, mRowWords, mHeight, y, x, dx, y == mGoalY ? mGoalX : -1);
+            return jx < 0 ? -1 : y * mWidth + jx;
+        }
+        if (dx == 0) {
+            int jy = scan(mCols, mColWords, mWidth, x, y, dy, x == mGoalX ? mGoalY : -1);
+            return jy < 0 ? -1 : jy * mWidth + x;
+        }
+        while (true) {
+            if (!isWalkable(x, y)) {
+                return -1;
+            }
+            if (x == mGoalX && y == mGoalY) {
+                return y * mWidth + x;
+            }
+            // 水平或竖直方向上有跳点时，当前格子就是跳点
+            if (scan(mRows, mRowWords, mHeight, y, x + dx, dx, y == mGoalY ? mGoalX : -1) >= 0
+                    || scan(mCols, mColWords, mWidth, x, y + dy, dy,
+                    x == mGoalX ? mGoalY : -1) >= 0) {
+                return y * mWidth + x;
+            }
+            if (!isWalkable(x + dx, y) || !isWalkable(x, y + dy)) {
+                return -1;
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    /**
+     * 在位图 bits 的第 line 条线上从 pos 开始（含）沿 dir 逐字扫描，line 两侧的线出现
+     * “本格可走而来向的前一格不可走” 即为强制邻居，当前格成为跳点
+     *
+     * @param lines   线的条数，两侧越界的线视为全不可走
+     * @param goalPos 终点在这条线上的位置，不在时为 -1
+     * @return 跳点在线上的位置，先遇到障碍或出界时返回 -1
+     */
+    private static int scan(long[] bits, int stride, int lines, int line, int pos, int dir,
+                            int goalPos) {
+        if (pos < 0 || pos >= stride << 6) {
+            return -1;
+        }
+        int base = line * stride;
+        boolean hasBefore = line > 0;
+        boolean hasAfter = line < lines - 1;
+        int w = pos >>> 6;
+        if (dir > 0) {
+            long mask = -1L << (pos & 63);
+            for (; w < stride; w++, mask = -1L) {
+                long row = bits[base + w];
+                long before = hasBefore ? bits[base - stride + w] : 0;
+                long after = hasAfter ? bits[base + stride + w] : 0;
+                long beforePrev = hasBefore && w > 0 ? bits[base - stride + w - 1] >>> 63 : 0;
+                long afterPrev = hasAfter && w > 0 ? bits[base + stride + w - 1] >>> 63 : 0;
+                long forced = (before & ~((before << 1) | beforePrev))
+                        | (after & ~((after << 1) | afterPrev));
+                long blocked = ~row;
+                long stop = (forced | blocked) & mask;
+                if (goalPos >>> 6 == w && goalPos >= pos) {
+                    stop |= 1L << (goalPos & 63);
+                }
+                if (stop != 0) {
+                    int bit = Long.numberOfTrailingZeros(stop);
+                    return (blocked & (1L << bit)) != 0 ? -1 : (w << 6) + bit;
+                }
+            }
+        } else {
+            long mask = -1L >>> (63 - (pos & 63));
+            for (; w >= 0; w--, mask = -1L) {
+                long row = bits[base + w];
+                long before = hasBefore ? bits[base - stride + w] : 0;
+                long after = hasAfter ? bits[base + stride + w] : 0;
+                long beforeNext = hasBefore && w < stride - 1 ? bits[base - stride + w + 1] << 63 : 0;
+                long afterNext = hasAfter && w < stride - 1 ? bits[base + stride + w + 1] << 63 : 0;
+                long forced = (before & ~((before >>> 1) | beforeNext))
+                        | (after & ~((after >>> 1) | afterNext));
+                long blocked = ~row;
+                long stop = (forced | blocked) & mask;
+                if (goalPos >= 0 && goalPos >>> 6 == w && goalPos <= pos) {
+                    stop |= 1L << (goalPos & 63);
+                }
+                if (stop != 0) {
+                    int bit = 63 - Long.numberOfLeadingZeros(stop);
+                    return (blocked & (1L << bit)) != 0 ? -1 : (w << 6) + bit;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 斜向移动要求两个正交方向的邻格都可走，不切角
+     */
+    private boolean canStep(int x, int y, int dx, int dy) {
+        if (!isWalkable(x + dx, y + dy)) {
+            return false;
+        }
+        return dx == 0 || dy == 0 || (isWalkable(x + dx, y) && isWalkable(x, y + dy));
+    }
+
+    private static float octile(int dx, int dy) {
+        return dx > dy ? dx - dy + SQRT2 * dy : dy - dx + SQRT2 * dx;
+    }
+
+    private float heuristic(int x, int y) {
+        return mDijkstra ? 0 : octile(Math.abs(x - mGoalX), Math.abs(y - mGoalY));
+    }
+
+    /**
+     * 经 node 到达 (x, y) 的代价更低时更新
+     *
+     * @return 超出节点上限时返回 false
+     */
+    private boolean relax(int node, int x, int y, float cost) {
+        int cell = y * mWidth + x;
+        float g = mG[node] + cost;
+        int slot = find(cell);
+        int other = mTable[slot] - 1;
+        if (other < 0) {
+            if (mNodeCount >= mMaxNodes) {
+                return false;
+            }
+            open(cell, node, g);
+            return true;
+        }
+        if (mHeapPos[other] < 0 || g >= mG[other]) {
+            return true;
+        }
+        mG[other] = g;
+        mF[other] = g + heuristic(x, y);
+        mParent[other] = node;
+        siftUp(mHeapPos[other]);
+        return true;
+    }
+
+    private void open(int cell, int parent, float g) {
+        if (mNodeCount == mCell.length) {
+            growNodes();
+        }
+        int node = mNodeCount++;
+        mCell[node] = cell;
+        mParent[node] = parent;
+        mG[node] = g;
+        mF[node] = g + heuristic(cell % mWidth, cell / mWidth);
+        if (mNodeCount * 2 > mTable.length) {
+            growTable();
+        }
+        mTable[find(cell)] = node + 1;
+        if (mHeapSize == mHeap.length) {
+            mHeap = Arrays.copyOf(mHeap, mHeap.length * 2);
+        }
+        mHeap[mHeapSize] = node;
+        mHeapPos[node] = mHeapSize;
+        siftUp(mHeapSize++);
+    }
+
+    /**
+     * cell 所在的槽位，不存在时为应插入的空槽
+     */
+    private int find(int cell) {
+        int mask = mTable.length - 1;
+        int slot = (cell * 0x9E3779B9) >>> mTableShift;
+        while (true) {
+            int node = mTable[slot] - 1;
+            if (node < 0 || mCell[node] == cell) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void growTable() {
+        mTable = new int[mTable.length * 2];
+        mTableShift--;
+        for (int node = 0; node < mNodeCount - 1; node++) {
+            mTable[find(mCell[node])] = node + 1;
+        }
+    }
+
+    private void growNodes() {
+        int capacity = mCell.length * 2;
+        mCell = Arrays.copyOf(mCell, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mG = Arrays.copyOf(mG, capacity);
+        mF = Arrays.copyOf(mF, capacity);
+        mHeapPos = Arrays.copyOf(mHeapPos, capacity);
+    }
+
+    private int pop() {
+        int node = mHeap[0];
+        mHeapPos[node] = -1;
+        mHeapSize--;
+        if (mHeapSize > 0) {
+            int last = mHeap[mHeapSize];
+            mHeap[0] = last;
+            mHeapPos[last] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    private void siftUp(int pos) {
+        int node = mHeap[pos];
+        float f = mF[node];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >>> 1;
+            int parent = mHeap[parentPos];
+            if (mF[parent] <= f) {
+                break;
+            }
+            mHeap[pos] = parent;
+            mHeapPos[parent] = pos;
+            pos = parentPos;
+        }
+        mHeap[pos] = node;
+        mHeapPos[node] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int node = mHeap[pos];
+        float f = mF[node];
+        int half = mHeapSize >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < mHeapSize && mF[mHeap[right]] < mF[mHeap[child]]) {
+                child = right;
+            }
+            if (mF[mHeap[child]] >= f) {
+                break;
+            }
+            mHeap[pos] = mHeap[child];
+            mHeapPos[mHeap[pos]] = pos;
+            pos = child;
+        }
+        mHeap[pos] = node;
+        mHeapPos[node] = pos;
+    }
+
+    private Path buildPath(int goalNode, double res) {
+        int count = 0;
+        for (int node = goalNode; node >= 0; node = mParent[node]) {
+            count++;
+        }
+        float[] points = new float[count * 2];
+        int i = count;
+        for (int node = goalNode; node >= 0; node = mParent[node]) {
+            int cell = mCell[node];
+            i--;
+            points[i * 2] = cell % mWidth + 0.5f;
+            points[i * 2 + 1] = cell / mWidth + 0.5f;
+        }
+        return new Path(points, mG[goalNode] * res, mExpanded);
+    }
+}
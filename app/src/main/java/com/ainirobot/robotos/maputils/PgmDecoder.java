@@ -0,0 +1,222 @@
+package com.ainirobot.robotos.maputils;
+
+import com.ainirobot.base.analytics.utils.StringUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * P5 格式 pgm 地图解码，文件/共享内存 fd 走内存映射，其余按块读取
+ * Decoder for P5 pgm maps. Files and shared memory fds are memory-mapped,
+ * other sources are read in bulk. The layout is header + width * height
+ * grey bytes + 16 bytes extra (resolution, origin x, origin y).
+ */
+public class PgmDecoder {
+
+    public static final int EXTRA_SIZE = 16;
+    private static final String MAGIC = "P5";
+    private static final int READ_CHUNK = 64 * 1024;
+
+    public static class PgmData {
+        public int width;
+        public int height;
+        public int maxVal;
+        /**
+         * 像素区，position 为 0，limit 为 width * height
+         */
+        public ByteBuffer pixels;
+        public byte[] extra;
+        /**
+         * 完整的 pgm 数据，用于计算 md5
+         */
+        public ByteBuffer raw;
+    }
+
+    private PgmDecoder() {
+    }
+
+    /**
+     * 从当前 position 解码，能映射时直接映射，否则读到 EOF
+     */
+    public static PgmData decode(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long size = channel.size();
+        if (size > position) {
+            ByteBuffer mapped = null;
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size - position);
+            } catch (IOException | UnsupportedOperationException e) {
+                // ashmem 等不支持映射的 fd，退回到按块读取
+            }
+            if (mapped != null) {
+                return decode(mapped);
+            }
+        }
+        return decode(readFully(channel, size - position));
+    }
+
+    /**
+     * 读到 EOF 后解码，sizeHint 未知时传 -1
+     */
+    public static PgmData decode(InputStream in, long sizeHint) throws IOException {
+        return decode(readFully(Channels.newChannel(in), sizeHint));
+    }
+
+    public static PgmData decode(ByteBuffer buffer) throws IOException {
+        HeaderReader header = new HeaderReader(buffer);
+        String magic = header.nextToken();
+        if (!MAGIC.equals(magic)) {
+            throw new IOException("Unknown magic number: " + magic);
+        }
+        int width = header.nextInt();
+        int height = header.nextInt();
+        int maxVal = header.nextInt();
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Invalid pgm size: " + width + "x" + height);
+        }
+        if (maxVal <= 0 || maxVal > 255) {
+            throw new IOException("Unsupported pgm max value: " + maxVal);
+        }
+        // maxval 之后紧跟一个空白字符，然后是像素区
+        header.skipSingleWhitespace();
+
+        long size = (long) width * height;
+        int dataStart = header.position();
+        long available = buffer.limit() - dataStart;
+        if (size > Integer.MAX_VALUE || available < size + EXTRA_SIZE) {
+            throw new IOException("Truncated pgm data: need " + (size + EXTRA_SIZE)
+                    + " bytes, got " + available);
+        }
+
+        PgmData data = new PgmData();
+        data.width = width;
+        data.height = height;
+        data.maxVal = maxVal;
+
+        ByteBuffer pixels = buffer.duplicate();
+        pixels.limit(dataStart + (int) size);
+        pixels.position(dataStart);
+        data.pixels = pixels.slice();
+
+        data.raw = buffer.duplicate();
+
+        data.extra = new byte[EXTRA_SIZE];
+        ByteBuffer extra = buffer.duplicate();
+        extra.position(dataStart + (int) size);
+        extra.get(data.extra);
+        return data;
+    }
+
+    /**
+     * 与 Md5Util.getFileMD5 相同格式的 md5
+     */
+    public static String md5(PgmData data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data.raw.duplicate());
+            return StringUtil.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, long sizeHint)
+            throws IOException {
+        // 多留一个字节，长度准确时读到 EOF 不需要扩容
+        int capacity = sizeHint > 0 && sizeHint < Integer.MAX_VALUE
+                ? (int) sizeHint + 1 : READ_CHUNK;
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 直接在 buffer 上按绝对位置解析头部，跳过 # 注释
+     */
+    private static class HeaderReader {
+        private final ByteBuffer buffer;
+        private int pos;
+
+        HeaderReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.pos = buffer.position();
+        }
+
+        int position() {
+            return pos;
+        }
+
+        String nextToken() throws IOException {
+            skipWhitespaceAndComments();
+            int start = pos;
+            while (pos < buffer.limit() && !isWhitespace(buffer.get(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IOException("Unexpected end of pgm header");
+            }
+            StringBuilder sb = new StringBuilder(pos - start);
+            for (int i = start; i < pos; i++) {
+                sb.append((char) (buffer.get(i) & 0xff));
+            }
+            return sb.toString();
+        }
+
+        int nextInt() throws IOException {
+            String token = nextToken();
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid pgm header value: " + token);
+            }
+        }
+
+        void skipSingleWhitespace() throws IOException {
+            if (pos >= buffer.limit() || !isWhitespace(buffer.get(pos))) {
+                throw new IOException("Malformed pgm header");
+            }
+            // 兼容 \r\n 结尾的头部
+            if (buffer.get(pos) == '\r' && pos + 1 < buffer.limit() && buffer.get(pos + 1) == '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        private void skipWhitespaceAndComments() {
+            while (pos < buffer.limit()) {
+                byte b = buffer.get(pos);
+                if (b == '#') {
+                    while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                        pos++;
+                    }
+                } else if (isWhitespace(b)) {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+        }
+    }
+}
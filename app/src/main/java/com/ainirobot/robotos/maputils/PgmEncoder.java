@@ -0,0 +1,156 @@
+package com.ainirobot.robotos.maputils;
+
+import android.graphics.Bitmap;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * RoverMap 编码为 P5 pgm，按条带直接写入目标 ByteBuffer / FileChannel / fd
+ * Encodes a {@link RoverMap} as P5 pgm (header + width * height grey bytes +
+ * 16 bytes extra). Pixels are converted one row stripe at a time straight
+ * into the destination, so no whole-map int[] or intermediate stream is kept.
+ * A bitmap that has been created wins over the grid, it may carry edits.
+ */
+public class PgmEncoder {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private PgmEncoder() {
+    }
+
+    /**
+     * 编码后的总字节数
+     */
+    public static int encodedSize(RoverMap map) {
+        int width = widthOf(map);
+        int height = heightOf(map);
+        return header(width, height).length + width * height + PgmDecoder.EXTRA_SIZE;
+    }
+
+    /**
+     * 写入 dst 的当前 position，剩余空间不足时抛出 IOException，不会写入半个地图
+     */
+    public static void encode(RoverMap map, ByteBuffer dst) throws IOException {
+        int width = widthOf(map);
+        int height = heightOf(map);
+        byte[] header = header(width, height);
+        int size = header.length + width * height + PgmDecoder.EXTRA_SIZE;
+        if (dst.remaining() < size) {
+            throw new IOException("Buffer too small: need " + size + " bytes, got "
+                    + dst.remaining());
+        }
+        dst.put(header);
+        if (dst.hasArray()) {
+            // 堆内缓冲直接写到底层数组，省掉条带拷贝
+            int offset = dst.arrayOffset() + dst.position();
+            writePixels(map, dst.array(), offset);
+            dst.position(dst.position() + width * height);
+        } else {
+            GreySource source = sourceOf(map, width);
+            int stripeRows = MapPixelConverter.stripeRowsOf(width);
+            byte[] stripe = new byte[stripeRows * width];
+            for (int row = 0; row < height; row += stripeRows) {
+                int rows = Math.min(stripeRows, height - row);
+                source.fillGrey(row, rows, stripe, 0);
+                dst.put(stripe, 0, rows * width);
+            }
+        }
+        dst.put(map.extra, 0, PgmDecoder.EXTRA_SIZE);
+    }
+
+    /**
+     * 从 channel 的当前位置写入，返回写入的字节数
+     */
+    public static long encode(RoverMap map, FileChannel channel) throws IOException {
+        int width = widthOf(map);
+        int height = heightOf(map);
+        GreySource source = sourceOf(map, width);
+        int stripeRows = MapPixelConverter.stripeRowsOf(width);
+        ByteBuffer stripe = ByteBuffer.allocate(stripeRows * width);
+
+        long written = writeFully(channel, ByteBuffer.wrap(header(width, height)));
+        for (int row = 0; row < height; row += stripeRows) {
+            int rows = Math.min(stripeRows, height - row);
+            source.fillGrey(row, rows, stripe.array(), 0);
+            stripe.position(0).limit(rows * width);
+            written += writeFully(channel, stripe);
+        }
+        written += writeFully(channel, ByteBuffer.wrap(map.extra, 0, PgmDecoder.EXTRA_SIZE));
+        return written;
+    }
+
+    /**
+     * 写入共享内存等 fd，fd 由调用方关闭
+     */
+    public static long encode(RoverMap map, FileDescriptor fd) throws IOException {
+        // 不关闭 stream，关闭会连带关闭调用方的 fd
+        FileChannel channel = new FileOutputStream(fd).getChannel();
+        return encode(map, channel);
+    }
+
+    private static void writePixels(RoverMap map, byte[] dst, int offset) {
+        if (map.bitmap != null) {
+            MapPixelConverter.toGrey(map.bitmap, paletteOf(map), dst, offset);
+        } else {
+            map.grid.toGrey(dst, offset);
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    private static byte[] header(int width, int height) {
+        return String.format(Locale.US, "P5\n%d %d\n255\n", width, height).getBytes(US_ASCII);
+    }
+
+    private static int widthOf(RoverMap map) {
+        return map.bitmap != null ? map.bitmap.getWidth() : map.grid.getWidth();
+    }
+
+    private static int heightOf(RoverMap map) {
+        return map.bitmap != null ? map.bitmap.getHeight() : map.grid.getHeight();
+    }
+
+    private static MapPalette paletteOf(RoverMap map) {
+        return map.palette != null ? map.palette : MapPalette.ROBOT;
+    }
+
+    /**
+     * 按行区间输出灰度
+     */
+    private interface GreySource {
+        void fillGrey(int row, int rowCount, byte[] dst, int offset);
+    }
+
+    private static GreySource sourceOf(RoverMap map, int width) {
+        final Bitmap bitmap = map.bitmap;
+        if (bitmap != null) {
+            final MapPalette palette = paletteOf(map);
+            final int[] argb = new int[MapPixelConverter.stripeRowsOf(width) * width];
+            return new GreySource() {
+                @Override
+                public void fillGrey(int row, int rowCount, byte[] dst, int offset) {
+                    MapPixelConverter.toGrey(bitmap, palette, argb, row, rowCount, dst, offset);
+                }
+            };
+        }
+        final OccupancyGrid grid = map.grid;
+        return new GreySource() {
+            @Override
+            public void fillGrey(int row, int rowCount, byte[] dst, int offset) {
+                grid.toGrey(row, rowCount, dst, offset);
+            }
+        };
+    }
+}
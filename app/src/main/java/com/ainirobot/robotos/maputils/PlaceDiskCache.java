@@ -0,0 +1,199 @@
+package com.ainirobot.robotos.maputils;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 点位投影结果的磁盘缓存，按地图名存放，冷启动时无需等待 getInternationalPlaceList
+ * On-disk cache of the projected place list, one file per map name. An entry
+ * records the MapInfo version and pgm md5 it was projected against, plus the
+ * key of the place list JSON it came from, so a background refresh can tell
+ * whether the robot's list changed. Pixel coordinates are stored as floats.
+ */
+public class PlaceDiskCache {
+    private static final String TAG = Constant.PREFIX + "PlaceDiskCache";
+
+    private static final String DIR_NAME = "place_cache";
+    private static final String SUFFIX = ".rplace";
+    private static final int MAGIC = 0x52504C43; // "RPLC"
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static PlaceDiskCache sInstance;
+
+    private final File mDir;
+
+    public static class Places {
+        /**
+         * 生成该列表的点位 JSON 的 key，用于和新拉取的列表比较
+         */
+        public final String listKey;
+        public final PlaceStore places;
+
+        Places(String listKey, PlaceStore places) {
+            this.listKey = listKey;
+            this.places = places;
+        }
+    }
+
+    public static synchronized PlaceDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlaceDiskCache(
+                    new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return sInstance;
+    }
+
+    public PlaceDiskCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 读取缓存，version 已知时必须一致，md5 为地图当前 md5，不一致时投影已失效，返回 null
+     */
+    public Places get(String mapName, int version, String md5) {
+        File file = fileOf(mapName);
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满为止
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.d(TAG, "get: stale format, mapName=" + mapName);
+                return null;
+            }
+            int cachedVersion = buffer.getInt();
+            String cachedName = readString(buffer);
+            String cachedMd5 = readString(buffer);
+            String listKey = readString(buffer);
+            if (!TextUtils.equals(mapName, cachedName)
+                    || (version != MapDiskCache.VERSION_UNKNOWN && version != cachedVersion)
+                    || !TextUtils.equals(md5 == null ? "" : md5, cachedMd5)) {
+                Log.d(TAG, "get: invalid, mapName=" + mapName + " version=" + version
+                        + "/" + cachedVersion);
+                return null;
+            }
+            int count = buffer.getInt();
+            PlaceStore.Builder places = new PlaceStore.Builder(count);
+            for (int i = 0; i < count; i++) {
+                String name = readString(buffer);
+                float x = buffer.getFloat();
+                float y = buffer.getFloat();
+                float t = buffer.getFloat();
+                places.add(name, x, y, t, buffer.getInt());
+            }
+            return new Places(listKey, places.build());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "get: mapName=" + mapName, e);
+        } finally {
+            IOUtils.close(raf);
+        }
+        return null;
+    }
+
+    /**
+     * 写入缓存，先写临时文件再重命名，避免读到半个文件
+     */
+    public boolean put(String mapName, int version, String md5, String listKey,
+                       PlaceStore places) {
+        if (places == null) {
+            return false;
+        }
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(TAG, "put: mkdirs failed " + mDir);
+            return false;
+        }
+        byte[] name = bytesOf(mapName);
+        byte[] md5Bytes = bytesOf(md5);
+        byte[] key = bytesOf(listKey);
+        int count = places.size();
+        byte[][] names = new byte[count][];
+        int size = 4 * 3 + 4 + name.length + 4 + md5Bytes.length + 4 + key.length + 4;
+        for (int i = 0; i < count; i++) {
+            names[i] = bytesOf(places.getName(i));
+            size += 4 + names[i].length + 4 * 4;
+        }
+
+        File file = fileOf(mapName);
+        File temp = new File(mDir, file.getName() + ".tmp");
+        RandomAccessFile raf = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(version);
+            buffer.putInt(name.length).put(name);
+            buffer.putInt(md5Bytes.length).put(md5Bytes);
+            buffer.putInt(key.length).put(key);
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(names[i].length).put(names[i]);
+                buffer.putFloat((float) places.getX(i)).putFloat((float) places.getY(i))
+                        .putFloat((float) places.getTheta(i)).putInt(places.getStatus(i));
+            }
+            buffer.flip();
+
+            raf = new RandomAccessFile(temp, "rw");
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            raf.close();
+            raf = null;
+            if (!temp.renameTo(file)) {
+                Log.e(TAG, "put: rename failed " + file);
+                temp.delete();
+                return false;
+            }
+            Log.d(TAG, "put: mapName=" + mapName + " places=" + count + " bytes=" + size);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "put: mapName=" + mapName, e);
+            temp.delete();
+        } finally {
+            IOUtils.close(raf);
+        }
+        return false;
+    }
+
+    public void remove(String mapName) {
+        File file = fileOf(mapName);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private File fileOf(String mapName) {
+        // 与 MapDiskCache 相同的命名方式
+        return new File(mDir, Integer.toHexString(mapName.hashCode()) + "_"
+                + mapName.length() + SUFFIX);
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? new byte[0] : value.getBytes(UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package com.ainirobot.robotos.maputils;
+
+import java.util.Arrays;
+
+/**
+ * 点位像素坐标的均匀网格索引，用于点击命中和视口裁剪
+ * Uniform grid over the pixel positions of a place list. The cell size is
+ * picked from the bounding box so each cell holds about two places, which
+ * makes a rectangle query cost proportional to the places it returns rather
+ * than to the whole list. The index is immutable; rebuild it when the list
+ * changes.
+ */
+public class PlaceIndex {
+
+    private static final float PLACES_PER_CELL = 2f;
+
+    private final PlaceStore mPlaces;
+    private final float[] mXs;
+    private final float[] mYs;
+    private final float mMinX;
+    private final float mMinY;
+    private final float mCellSize;
+    private final int mCols;
+    private final int mRows;
+    /**
+     * 第 c 个格子的点位为 mItems[mCellStart[c] .. mCellStart[c + 1])
+     */
+    private final int[] mCellStart;
+    private final int[] mItems;
+
+    public PlaceIndex(PlaceStore places) {
+        mPlaces = places;
+        int count = places.size();
+        mXs = new float[count];
+        mYs = new float[count];
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            mXs[i] = (float) places.getX(i);
+            mYs[i] = (float) places.getY(i);
+            minX = Math.min(minX, mXs[i]);
+            minY = Math.min(minY, mYs[i]);
+            maxX = Math.max(maxX, mXs[i]);
+            maxY = Math.max(maxY, mYs[i]);
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        mMinX = minX;
+        mMinY = minY;
+        float area = Math.max(maxX - minX, 1f) * Math.max(maxY - minY, 1f);
+        mCellSize = Math.max((float) Math.sqrt(area * PLACES_PER_CELL / Math.max(count, 1)), 1f);
+        mCols = (int) ((maxX - minX) / mCellSize) + 1;
+        mRows = (int) ((maxY - minY) / mCellSize) + 1;
+
+        // 计数排序，按格子存放点位下标
+        mCellStart = new int[mCols * mRows + 1];
+        int[] cellOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cellRow(mYs[i]) * mCols + cellCol(mXs[i]);
+            mCellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < mCols * mRows; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+        mItems = new int[count];
+        int[] fill = new int[mCols * mRows];
+        for (int i = 0; i < count; i++) {
+            int cell = cellOf[i];
+            mItems[mCellStart[cell] + fill[cell]++] = i;
+        }
+    }
+
+    /**
+     * 索引是否对应这份点位列表
+     */
+    public boolean isFor(PlaceStore places) {
+        return mPlaces == places;
+    }
+
+    public int size() {
+        return mXs.length;
+    }
+
+    /**
+     * 查找坐标落在矩形内的点位，下标写入 out 并按升序排列，out 长度须不小于 {@link #size()}
+     *
+     * @return 命中的个数
+     */
+    public int query(float left, float top, float right, float bottom, int[] out) {
+        int count = 0;
+        if (mXs.length == 0 || right < left || bottom < top) {
+            return 0;
+        }
+        int col0 = cellCol(left);
+        int col1 = cellCol(right);
+        int row0 = cellRow(top);
+        int row1 = cellRow(bottom);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * mCols + col;
+                for (int k = mCellStart[cell]; k < mCellStart[cell + 1]; k++) {
+                    int i = mItems[k];
+                    float x = mXs[i];
+                    float y = mYs[i];
+                    if (x >= left && x <= right && y >= top && y <= bottom) {
+                        out[count++] = i;
+                    }
+                }
+            }
+        }
+        // 保持列表顺序，绘制时的遮挡关系与原来一致
+        Arrays.sort(out, 0, count);
+        return count;
+    }
+
+    private int cellCol(float x) {
+        int col = (int) ((x - mMinX) / mCellSize);
+        return Math.max(0, Math.min(mCols - 1, col));
+    }
+
+    private int cellRow(float y) {
+        int row = (int) ((y - mMinY) / mCellSize);
+        return Math.max(0, Math.min(mRows - 1, row));
+    }
+}
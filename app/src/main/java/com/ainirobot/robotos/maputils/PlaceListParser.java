@@ -0,0 +1,186 @@
+package com.ainirobot.robotos.maputils;
+
+import com.ainirobot.coreservice.client.Definition;
+import com.ainirobot.coreservice.client.actionbean.PlaceBean;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * getInternationalPlaceList 结果的流式解析，解析、过滤特殊点位和像素投影在同一遍完成
+ * Streams the place list JSON with {@link JsonReader} instead of binding the
+ * whole array through reflection. Each place is classified with one hash
+ * lookup on its zh_CN name and projected to pixel space as soon as its object
+ * closes, so the result is ready when the array ends.
+ */
+public class PlaceListParser {
+
+    private static final String ZH_CN = Locale.SIMPLIFIED_CHINESE.toString();
+
+    /**
+     * 回充点，不显示
+     */
+    private static final int KIND_CHARGING_POINT = 1;
+    /**
+     * 充电桩存在时由桩代替显示的导航点
+     */
+    private static final int KIND_PILE_POINT = 2;
+
+    public static class Result {
+        public final List<PlaceBean> placeBeans;
+        public final PlaceStore places;
+
+        Result(List<PlaceBean> placeBeans, PlaceStore places) {
+            this.placeBeans = placeBeans;
+            this.places = places;
+        }
+    }
+
+    private PlaceListParser() {
+    }
+
+    /**
+     * @param map              用于投影的地图，为 null 时保留世界坐标
+     * @param chargePileExists 充电桩是否存在，存在时隐藏对应的导航点
+     */
+    public static Result parse(String json, RoverMap map, boolean chargePileExists)
+            throws IOException {
+        HashMap<String, Integer> kinds = new HashMap<>();
+        kinds.put(fold(Definition.START_BACK_CHARGE_POSE), KIND_CHARGING_POINT);
+        if (chargePileExists) {
+            kinds.put(fold(ProductUtils.getPointUnchangeableText(Constant.NavigatorPoint.POINT2)),
+                    KIND_PILE_POINT);
+        }
+        // 与 PlaceBean.getPlaceName() 取名称的 key 一致
+        Locale locale = Locale.getDefault();
+        String localeKey = locale.getLanguage() + "_" + locale.getCountry();
+
+        List<PlaceBean> placeBeans = new ArrayList<>();
+        PlaceStore.Builder places = new PlaceStore.Builder();
+        Pose2d pose = new Pose2d(0, 0, 0);
+        boolean[] hasNameList = new boolean[1];
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                PlaceBean placeBean = readPlace(reader, hasNameList);
+                placeBeans.add(placeBean);
+                String zhName = placeBean.getPlaceName(ZH_CN);
+                Integer kind = zhName == null ? null : kinds.get(fold(zhName));
+                if (kind != null) {
+                    continue;
+                }
+                // 没有名称表时 getPlaceName() 返回 ""，空表时返回 null
+                String placeName = !hasNameList[0] ? ""
+                        : placeBean.getPlaceNameList() == null ? null
+                        : placeBean.getPlaceNameList().get(localeKey);
+                if (placeName != null) {
+                    pose.x = placeBean.getPointX();
+                    pose.y = placeBean.getPointY();
+                    MapppUtils.pose2PixelInPlace(map, pose);
+                    places.add(placeName, pose.x, pose.y, placeBean.getPointTheta(),
+                            placeBean.getPlaceStatus());
+                }
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return new Result(placeBeans, places.build());
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param hasNameList 返回是否出现了非 null 的 placeNameList
+     */
+    private static PlaceBean readPlace(JsonReader reader, boolean[] hasNameList)
+            throws IOException {
+        PlaceBean bean = new PlaceBean();
+        hasNameList[0] = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "placeId":
+                    bean.setPlaceId(reader.nextString());
+                    break;
+                case "iconUrl":
+                    bean.setIconUrl(reader.nextString());
+                    break;
+                case "placeType":
+                    bean.setPlaceType(reader.nextInt());
+                    break;
+                case "placeStatus":
+                    bean.setPlaceStatus(reader.nextInt());
+                    break;
+                case "pointTheta":
+                    bean.setPointTheta((float) reader.nextDouble());
+                    break;
+                case "pointX":
+                    bean.setPointX((float) reader.nextDouble());
+                    break;
+                case "pointY":
+                    bean.setPointY((float) reader.nextDouble());
+                    break;
+                case "updateTime":
+                    bean.setUpdateTime(reader.nextLong());
+                    break;
+                case "updateTimeNew":
+                    bean.setUpdateTimeNew(reader.nextString());
+                    break;
+                case "mapName":
+                    bean.setMapName(reader.nextString());
+                    break;
+                case "alias":
+                    bean.setAlias(reader.nextString());
+                    break;
+                case "placeNameList":
+                    hasNameList[0] = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String language = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.skipValue();
+                        } else {
+                            bean.addPlaceName(language, reader.nextString());
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "createTime":
+                    bean.setCreateTime(reader.nextString());
+                    break;
+                case "mapId":
+                    bean.setMapId(reader.nextString());
+                    break;
+                case "syncState":
+                    bean.setSyncState(reader.nextInt());
+                    break;
+                case "ignoreDistance":
+                    bean.setIgnoreDistance(reader.nextBoolean());
+                    break;
+                case "safeDistance":
+                    bean.setSafeDistance(reader.nextInt());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return bean;
+    }
+}
@@ -0,0 +1,190 @@
+package com.ainirobot.robotos.maputils;
+
+import java.util.HashMap;
+
+/**
+ * 点位列表，按列存放在基本类型数组中，创建后不可修改
+ * Immutable struct-of-arrays place list: parallel x / y / theta / status
+ * arrays plus interned names and a name-to-index map. A store is built once
+ * by a {@link Builder} and never changes, so it can be handed to the UI thread
+ * and shared by GlobalData, the repository and MapView without copying.
+ * Changes go through {@link #buildUpon()}, which copies the arrays into a new
+ * builder and leaves every published store untouched.
+ */
+public final class PlaceStore {
+
+    public static final PlaceStore EMPTY = new Builder(0).build();
+
+    /**
+     * 估算每个点位占用的字节数，不含名称字符串
+     */
+    private static final int BYTES_PER_PLACE = 8 * 3 + 4 + 4;
+
+    private final int mSize;
+    private final double[] mX;
+    private final double[] mY;
+    private final double[] mTheta;
+    private final int[] mStatus;
+    private final String[] mNames;
+    private final HashMap<String, Integer> mIndexOfName;
+
+    private PlaceStore(Builder builder) {
+        mSize = builder.mSize;
+        mX = trim(builder.mX, mSize);
+        mY = trim(builder.mY, mSize);
+        mTheta = trim(builder.mTheta, mSize);
+        mStatus = trim(builder.mStatus, mSize);
+        String[] names = new String[mSize];
+        System.arraycopy(builder.mNames, 0, names, 0, mSize);
+        mNames = names;
+        mIndexOfName = new HashMap<>(mSize * 4 / 3 + 1);
+        for (int i = mSize - 1; i >= 0; i--) {
+            // 重名时保留第一个
+            if (mNames[i] != null) {
+                mIndexOfName.put(mNames[i], i);
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public double getX(int index) {
+        return mX[index];
+    }
+
+    public double getY(int index) {
+        return mY[index];
+    }
+
+    public double getTheta(int index) {
+        return mTheta[index];
+    }
+
+    public int getStatus(int index) {
+        return mStatus[index];
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * 名称对应的第一个下标，没有时返回 -1
+     */
+    public int indexOf(String name) {
+        Integer index = name == null ? null : mIndexOfName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 新建 Pose2d，只在需要兼容旧接口时使用
+     */
+    public Pose2d getPose(int index) {
+        return new Pose2d(mX[index], mY[index], mTheta[index], mStatus[index]);
+    }
+
+    public long byteSize() {
+        return (long) mSize * BYTES_PER_PLACE;
+    }
+
+    /**
+     * 以当前内容为起点的 Builder，修改不会影响本对象
+     */
+    public Builder buildUpon() {
+        Builder builder = new Builder(mSize);
+        for (int i = 0; i < mSize; i++) {
+            builder.add(mNames[i], mX[i], mY[i], mTheta[i], mStatus[i]);
+        }
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaceStore{size=" + mSize + "}";
+    }
+
+    private static double[] trim(double[] values, int size) {
+        double[] out = new double[size];
+        System.arraycopy(values, 0, out, 0, size);
+        return out;
+    }
+
+    private static int[] trim(int[] values, int size) {
+        int[] out = new int[size];
+        System.arraycopy(values, 0, out, 0, size);
+        return out;
+    }
+
+    public static class Builder {
+        private int mSize;
+        private double[] mX;
+        private double[] mY;
+        private double[] mTheta;
+        private int[] mStatus;
+        private String[] mNames;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            mX = new double[capacity];
+            mY = new double[capacity];
+            mTheta = new double[capacity];
+            mStatus = new int[capacity];
+            mNames = new String[capacity];
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public Builder add(String name, double x, double y, double theta, int status) {
+            if (mSize == mX.length) {
+                grow();
+            }
+            mNames[mSize] = name == null ? null : name.intern();
+            mX[mSize] = x;
+            mY[mSize] = y;
+            mTheta[mSize] = theta;
+            mStatus[mSize] = status;
+            mSize++;
+            return this;
+        }
+
+        public Builder setStatus(int index, int status) {
+            mStatus[index] = status;
+            return this;
+        }
+
+        public PlaceStore build() {
+            return new PlaceStore(this);
+        }
+
+        private void grow() {
+            int capacity = mX.length * 2;
+            double[] x = new double[capacity];
+            double[] y = new double[capacity];
+            double[] theta = new double[capacity];
+            int[] status = new int[capacity];
+            String[] names = new String[capacity];
+            System.arraycopy(mX, 0, x, 0, mSize);
+            System.arraycopy(mY, 0, y, 0, mSize);
+            System.arraycopy(mTheta, 0, theta, 0, mSize);
+            System.arraycopy(mStatus, 0, status, 0, mSize);
+            System.arraycopy(mNames, 0, names, 0, mSize);
+            mX = x;
+            mY = y;
+            mTheta = theta;
+            mStatus = status;
+            mNames = names;
+        }
+    }
+}
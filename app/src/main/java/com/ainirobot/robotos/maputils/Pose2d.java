@@ -48,6 +48,14 @@ public class Pose2d {
         this.t = Float.valueOf(pose.getTheta()).doubleValue();
     }
 
+    public Pose2d set(Pose2d other) {
+        this.x = other.x;
+        this.y = other.y;
+        this.t = other.t;
+        this.status = other.status;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "Pose2d{" +
@@ -0,0 +1,293 @@
+package com.ainirobot.robotos.maputils;
+
+/**
+ * STATUS_POSE 消息的流式解析，直接写入调用方的 Pose2d 或 double 数组，不产生临时对象
+ * Hand-rolled parser for the pose JSON {"px":..,"py":..,"theta":..,"status":..}.
+ * It walks the string once, reads numbers without substrings and skips any
+ * other member. Numbers with at most 2^53 as mantissa and a power of ten
+ * within 10^22 are converted with one correctly rounded multiply or divide;
+ * longer mantissas (such as 17-digit shortest-repr doubles) fall back to
+ * Double.parseDouble on a substring, so results always match Gson. Missing
+ * members keep the value already in the destination. One instance per thread.
+ */
+public class PoseParser {
+
+    /**
+     * double 数组中每个位姿占用的个数：x, y, theta, status
+     */
+    public static final int STRIDE = 4;
+
+    private static final int PX = 0;
+    private static final int PY = 1;
+    private static final int THETA = 2;
+    private static final int STATUS = 3;
+    private static final int UNKNOWN = -1;
+
+    /**
+     * long 能精确表示的十进制位数
+     */
+    private static final int MAX_DIGITS = 18;
+    /**
+     * 尾数不超过 2^53 且 10 的幂不超过 10^22 时两者都是精确的 double，一次乘除即正确舍入
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private String mJson;
+    private int mPos;
+    private final double[] mValues = new double[STRIDE];
+
+    /**
+     * @return 格式错误时返回 false，此时 out 不变
+     */
+    public boolean parse(String json, Pose2d out) {
+        mValues[PX] = out.x;
+        mValues[PY] = out.y;
+        mValues[THETA] = out.t;
+        mValues[STATUS] = out.status;
+        if (!parse(json, mValues, 0)) {
+            return false;
+        }
+        out.x = mValues[PX];
+        out.y = mValues[PY];
+        out.t = mValues[THETA];
+        out.status = (int) mValues[STATUS];
+        return true;
+    }
+
+    /**
+     * 写入 out[offset .. offset + STRIDE)
+     *
+     * @return 格式错误时返回 false，out 中可能已写入部分字段
+     */
+    public boolean parse(String json, double[] out, int offset) {
+        if (json == null) {
+            return false;
+        }
+        mJson = json;
+        mPos = 0;
+        try {
+            if (!consume('{')) {
+                return false;
+            }
+            if (consume('}')) {
+                return true;
+            }
+            do {
+                int field = readKey();
+                if (field == UNKNOWN) {
+                    skipValue();
+                } else if (consumeNull()) {
+                    // 与 Gson 一致，null 不覆盖原值
+                } else {
+                    out[offset + field] = readNumber();
+                }
+            } while (consume(','));
+            return consume('}');
+        } catch (IllegalArgumentException e) {
+            return false;
+        } finally {
+            mJson = null;
+        }
+    }
+
+    private int readKey() {
+        expect('"');
+        int start = mPos;
+        int end = mJson.indexOf('"', start);
+        if (end < 0) {
+            throw new IllegalArgumentException();
+        }
+        mPos = end + 1;
+        expect(':');
+        int length = end - start;
+        if (length == 2 && mJson.regionMatches(start, "px", 0, length)) {
+            return PX;
+        } else if (length == 2 && mJson.regionMatches(start, "py", 0, length)) {
+            return PY;
+        } else if (length == 5 && mJson.regionMatches(start, "theta", 0, length)) {
+            return THETA;
+        } else if (length == 6 && mJson.regionMatches(start, "status", 0, length)) {
+            return STATUS;
+        }
+        return UNKNOWN;
+    }
+
+    private double readNumber() {
+        skipWhitespace();
+        String json = mJson;
+        int length = json.length();
+        int start = mPos;
+        boolean negative = false;
+        if (mPos < length && (json.charAt(mPos) == '-' || json.charAt(mPos) == '+')) {
+            negative = json.charAt(mPos) == '-';
+            mPos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean fraction = false;
+        boolean truncated = false;
+        while (mPos < length) {
+            char c = json.charAt(mPos);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits < MAX_DIGITS) {
+                    if (mantissa != 0 || c != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    truncated = true;
+                    if (!fraction) {
+                        exponent++;
+                    }
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            mPos++;
+        }
+        if (!seenDigit) {
+            return readLiteralNumber(start);
+        }
+        if (mPos < length && (json.charAt(mPos) == 'e' || json.charAt(mPos) == 'E')) {
+            mPos++;
+            boolean negativeExp = false;
+            if (mPos < length && (json.charAt(mPos) == '-' || json.charAt(mPos) == '+')) {
+                negativeExp = json.charAt(mPos) == '-';
+                mPos++;
+            }
+            int exp = 0;
+            boolean expDigit = false;
+            while (mPos < length && json.charAt(mPos) >= '0' && json.charAt(mPos) <= '9') {
+                exp = Math.min(exp * 10 + (json.charAt(mPos) - '0'), 1000);
+                expDigit = true;
+                mPos++;
+            }
+            if (!expDigit) {
+                throw new IllegalArgumentException();
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (truncated || mantissa > MAX_EXACT_MANTISSA || exponent <= -POW10.length
+                || exponent >= POW10.length) {
+            // 17 位以上的有效数字或超大指数无法一步正确舍入，交给标准库
+            return Double.parseDouble(json.substring(start, mPos));
+        }
+        double value;
+        if (exponent < 0) {
+            value = mantissa / POW10[-exponent];
+        } else {
+            value = mantissa * POW10[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * NaN、Infinity 等非标准写法
+     */
+    private double readLiteralNumber(int start) {
+        mPos = start;
+        skipValue();
+        if (mPos == start) {
+            throw new IllegalArgumentException();
+        }
+        // 不是数字时 parseDouble 抛出的 NumberFormatException 即 IllegalArgumentException
+        return Double.parseDouble(mJson.substring(start, mPos));
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        if (mPos >= mJson.length()) {
+            throw new IllegalArgumentException();
+        }
+        char c = mJson.charAt(mPos);
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = mJson.charAt(mPos);
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                mPos++;
+            } while (depth > 0 && mPos < mJson.length());
+            if (depth > 0) {
+                throw new IllegalArgumentException();
+            }
+        } else {
+            // 数字、true、false、null
+            while (mPos < mJson.length()) {
+                c = mJson.charAt(mPos);
+                if (c == ',' || c == '}' || c == ']' || c <= ' ') {
+                    break;
+                }
+                mPos++;
+            }
+        }
+    }
+
+    private void skipString() {
+        mPos++;
+        while (mPos < mJson.length()) {
+            char c = mJson.charAt(mPos++);
+            if (c == '\\') {
+                mPos++;
+            } else if (c == '"') {
+                return;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    private boolean consumeNull() {
+        skipWhitespace();
+        if (mJson.startsWith("null", mPos)) {
+            mPos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (mPos < mJson.length() && mJson.charAt(mPos) == c) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mJson.length() && mJson.charAt(mPos) <= ' ') {
+            mPos++;
+        }
+    }
+}
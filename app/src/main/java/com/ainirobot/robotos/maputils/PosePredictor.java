@@ -0,0 +1,215 @@
+package com.ainirobot.robotos.maputils;
+
+/**
+ * 位姿预测，保存最近几帧带时间戳的位姿，按任意时刻插值或有限外推
+ * Keeps a short history of timestamped poses and evaluates the pose at an
+ * arbitrary time. Frames are rendered {@link #getDelay()} behind the clock,
+ * which tracks the average input interval, so a steady stream is drawn by
+ * interpolating between two real samples. When a sample is late the pose is
+ * extrapolated from the least-squares linear and angular velocity of the
+ * recent samples, for at most the extrapolation horizon, and then held.
+ * Coordinates are unit-agnostic; timestamps are milliseconds on any
+ * monotonic clock. Methods are synchronized so samples may be added from the
+ * listener thread while frames are evaluated on the UI thread.
+ */
+public class PosePredictor {
+
+    public static final long DEFAULT_MAX_EXTRAPOLATION = 250;
+
+    private static final int CAPACITY = 8;
+    /**
+     * 用于估计速度的时间窗口
+     */
+    private static final long VELOCITY_WINDOW = 500;
+    /**
+     * 两帧间隔超过该值视为数据中断，历史清空，不在中断两侧插值
+     */
+    private static final long MAX_GAP = 1000;
+    /**
+     * 渲染延迟的上限，输入很慢时宁可外推也不让显示过于滞后
+     */
+    private static final long MAX_DELAY = 200;
+
+    private final long mMaxExtrapolation;
+    private final long[] mTime = new long[CAPACITY];
+    private final double[] mX = new double[CAPACITY];
+    private final double[] mY = new double[CAPACITY];
+    /**
+     * 展开后的朝向，相邻两帧差值在 (-PI, PI] 内，插值时不会绕远路
+     */
+    private final double[] mT = new double[CAPACITY];
+    private int mHead = -1;
+    private int mCount;
+    private int mStatus;
+    private double mInterval;
+
+    private boolean mVelocityValid;
+    private double mVx;
+    private double mVy;
+    private double mVt;
+
+    public PosePredictor() {
+        this(DEFAULT_MAX_EXTRAPOLATION);
+    }
+
+    /**
+     * @param maxExtrapolation 最新一帧之后最多外推的毫秒数
+     */
+    public PosePredictor(long maxExtrapolation) {
+        mMaxExtrapolation = Math.max(maxExtrapolation, 0);
+    }
+
+    /**
+     * 加入一帧，时间倒退或间隔过长时先清空历史；pose 只读取不保留
+     */
+    public synchronized void add(long time, Pose2d pose) {
+        double t = pose.t;
+        if (mCount > 0) {
+            long last = mTime[mHead];
+            long gap = time - last;
+            if (gap <= 0 || gap > MAX_GAP) {
+                clear();
+            } else {
+                t = mT[mHead] + Math.IEEEremainder(pose.t - mT[mHead], 2 * Math.PI);
+                mInterval = mInterval == 0 ? gap : mInterval * 0.8 + gap * 0.2;
+            }
+        }
+        mHead = (mHead + 1) % CAPACITY;
+        mTime[mHead] = time;
+        mX[mHead] = pose.x;
+        mY[mHead] = pose.y;
+        mT[mHead] = t;
+        mStatus = pose.status;
+        if (mCount < CAPACITY) {
+            mCount++;
+        }
+        mVelocityValid = false;
+    }
+
+    public synchronized void clear() {
+        mHead = -1;
+        mCount = 0;
+        mInterval = 0;
+        mVelocityValid = false;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * 当前的渲染延迟，即平均输入间隔，最大 {@link #MAX_DELAY}
+     */
+    public synchronized long getDelay() {
+        return Math.min((long) mInterval, MAX_DELAY);
+    }
+
+    /**
+     * 计算 now 时刻应显示的位姿，即 now - {@link #getDelay()} 时的位姿
+     *
+     * @return 没有历史时返回 false，此时 out 不变
+     */
+    public synchronized boolean predict(long now, Pose2d out) {
+        if (mCount == 0) {
+            return false;
+        }
+        long time = now - getDelay();
+        int newest = mHead;
+        out.status = mStatus;
+        if (time >= mTime[newest]) {
+            long ahead = Math.min(time - mTime[newest], mMaxExtrapolation);
+            if (ahead == 0 || mCount < 2) {
+                write(out, mX[newest], mY[newest], mT[newest]);
+                return true;
+            }
+            updateVelocity();
+            double dt = ahead / 1000.0;
+            write(out, mX[newest] + mVx * dt, mY[newest] + mVy * dt, mT[newest] + mVt * dt);
+            return true;
+        }
+        // 从新到旧找到 time 所在的区间
+        int later = newest;
+        for (int i = 1; i < mCount; i++) {
+            int earlier = (newest - i + CAPACITY) % CAPACITY;
+            if (time >= mTime[earlier]) {
+                double f = (double) (time - mTime[earlier]) / (mTime[later] - mTime[earlier]);
+                write(out, mX[earlier] + (mX[later] - mX[earlier]) * f,
+                        mY[earlier] + (mY[later] - mY[earlier]) * f,
+                        mT[earlier] + (mT[later] - mT[earlier]) * f);
+                return true;
+            }
+            later = earlier;
+        }
+        // 比最早一帧还早
+        write(out, mX[later], mY[later], mT[later]);
+        return true;
+    }
+
+    /**
+     * now 时刻显示的位姿是否还会随时间变化，为 false 时在下一帧到来之前不必再刷新
+     */
+    public synchronized boolean isAnimating(long now) {
+        return mCount > 0 && now - getDelay() < mTime[mHead] + mMaxExtrapolation;
+    }
+
+    /**
+     * 以窗口内各帧对时间做最小二乘，得到线速度和角速度（每秒）
+     */
+    private void updateVelocity() {
+        if (mVelocityValid) {
+            return;
+        }
+        mVelocityValid = true;
+        mVx = 0;
+        mVy = 0;
+        mVt = 0;
+        long newestTime = mTime[mHead];
+        int n = 0;
+        double sumT = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumA = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mHead - i + CAPACITY) % CAPACITY;
+            long age = newestTime - mTime[index];
+            if (i >= 2 && age > VELOCITY_WINDOW) {
+                break;
+            }
+            sumT += -age / 1000.0;
+            sumX += mX[index];
+            sumY += mY[index];
+            sumA += mT[index];
+            n++;
+        }
+        if (n < 2) {
+            return;
+        }
+        double meanT = sumT / n;
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double meanA = sumA / n;
+        double stt = 0;
+        double stx = 0;
+        double sty = 0;
+        double sta = 0;
+        for (int i = 0; i < n; i++) {
+            int index = (mHead - i + CAPACITY) % CAPACITY;
+            double dt = -(newestTime - mTime[index]) / 1000.0 - meanT;
+            stt += dt * dt;
+            stx += dt * (mX[index] - meanX);
+            sty += dt * (mY[index] - meanY);
+            sta += dt * (mT[index] - meanA);
+        }
+        if (stt > 0) {
+            mVx = stx / stt;
+            mVy = sty / stt;
+            mVt = sta / stt;
+        }
+    }
+
+    private static void write(Pose2d out, double x, double y, double t) {
+        out.x = x;
+        out.y = y;
+        out.t = Math.IEEEremainder(t, 2 * Math.PI);
+    }
+}
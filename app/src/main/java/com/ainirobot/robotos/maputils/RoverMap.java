@@ -20,7 +20,12 @@ package com.ainirobot.robotos.maputils;
 import android.graphics.Bitmap;
 
 public class RoverMap {
+    /**
+     * 显示用位图，按需由 grid 生成，编辑（禁行线等）直接画在这里
+     */
     public Bitmap bitmap;
+    public OccupancyGrid grid;
+    public MapPalette palette;
     public byte[] extra;
     public double x;
     public double y;
@@ -28,6 +33,91 @@ public class RoverMap {
     public int height;
     public int width;
     public String pgmMd5;
+    private DistanceField distanceField;
+    private PathPlanner pathPlanner;
+
+    /**
+     * 首次显示时才从栅格渲染位图
+     */
+    public synchronized Bitmap getBitmap() {
+        if (bitmap == null && grid != null) {
+            bitmap = MapPixelConverter.toBitmap(width, height, grid.rows(palette));
+        }
+        return bitmap;
+    }
+
+    /**
+     * 位图被编辑后调用，让栅格与位图保持一致
+     */
+    public synchronized void syncGridFromBitmap() {
+        syncGridFromBitmap(0, 0, width, height);
+    }
+
+    /**
+     * 位图中 [left, right) x [top, bottom) 被编辑后调用，只把这部分写回栅格，
+     * 已建好的距离场和规划器位图按同一区域更新；点位距离矩阵由调用方更新
+     */
+    public synchronized void syncGridFromBitmap(int left, int top, int right, int bottom) {
+        if (bitmap == null) {
+            return;
+        }
+        // 没有配色时按共享内存地图的配色解析，与 MapTilePyramid 一致
+        MapPalette colors = palette != null ? palette : MapPalette.ROBOT;
+        if (grid == null) {
+            grid = OccupancyGrid.fromBitmap(bitmap, colors);
+            distanceField = null;
+            pathPlanner = null;
+            return;
+        }
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, grid.getWidth());
+        bottom = Math.min(bottom, grid.getHeight());
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        int w = right - left;
+        int[] row = new int[w];
+        for (int y = top; y < bottom; y++) {
+            bitmap.getPixels(row, 0, w, left, y, w, 1);
+            for (int i = 0; i < w; i++) {
+                grid.set(left + i, y, OccupancyGrid.stateOfGrey(colors.toGrey(row[i]) & 0xff));
+            }
+        }
+        if (distanceField != null && distanceField.isFor(grid)) {
+            distanceField.update(left, top, right, bottom);
+        }
+        if (pathPlanner != null && pathPlanner.isFor(grid)) {
+            pathPlanner.update(left, top, right, bottom);
+        }
+    }
+
+    /**
+     * 首次使用时计算距离场，栅格被替换后重新计算；耗时较长，不要在主线程首次调用
+     */
+    public synchronized DistanceField getDistanceField() {
+        if (grid == null) {
+            return null;
+        }
+        if (distanceField == null || !distanceField.isFor(grid)) {
+            distanceField = new DistanceField(grid);
+        }
+        return distanceField;
+    }
+
+    /**
+     * 当前可通行位图快照上的规划器，每次返回新的搜索状态，可在各自线程使用；之后的编辑
+     * 不影响已返回的规划器。首次调用会遍历整张栅格，不要在主线程首次调用
+     */
+    public synchronized PathPlanner newPathPlanner() {
+        if (grid == null) {
+            return null;
+        }
+        if (pathPlanner == null || !pathPlanner.isFor(grid)) {
+            pathPlanner = new PathPlanner(grid);
+        }
+        return new PathPlanner(pathPlanner);
+    }
 
     @Override
     public String toString() {
@@ -27,6 +27,21 @@ public class SpecialPlaceUtil {
 
     private static Context sContext;
 
+    /**
+     * 特殊点位类型，同一名称在某些语言下可能对应多个类型，按位组合
+     */
+    public static final int TYPE_CHARGING_POINT = 1;
+    public static final int TYPE_CHARGING_POLE = 1 << 1;
+    public static final int TYPE_POSITIONING_SPOT = 1 << 2;
+    public static final int TYPE_RECEPTION_POINT = 1 << 3;
+    public static final int TYPE_STAND_BY_SPOT = 1 << 4;
+
+    private static final int[] TYPE_STRING_IDS = {R.string.charging_point,
+            R.string.charging_pole, R.string.positioning_spot, R.string.reception_point,
+            R.string.stand_by_spot};
+
+    private static volatile NameIndex sNameIndex;
+
     private SpecialPlaceUtil() {
         this.sContext = ApplicationWrapper.getApplicationContext();
         initSpecialPlaceLangName();
@@ -90,6 +105,10 @@ public class SpecialPlaceUtil {
         if (TextUtils.isEmpty(placeName)) {
             return false;
         }
+        int type = typeOfStringId(resourceId);
+        if (type != 0) {
+            return (getNameIndex().typeOf(placeName) & type) != 0;
+        }
         if(sContext == null){
             sContext = ApplicationWrapper.getApplicationContext();
         }
@@ -104,6 +123,146 @@ public class SpecialPlaceUtil {
         return false;
     }
 
+    /**
+     * 名称在所有语言下对应的特殊点位类型，不是特殊点位时返回 0
+     */
+    public static int getSpecialPlaceType(String placeName) {
+        if (TextUtils.isEmpty(placeName)) {
+            return 0;
+        }
+        return getNameIndex().typeOf(placeName);
+    }
+
+    /**
+     * 在后台线程预先构建名称索引，首次点击点位时不再逐个语言加载资源
+     */
+    public static void prewarm(final Context context) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (sContext == null) {
+                    sContext = context.getApplicationContext();
+                }
+                getNameIndex();
+            }
+        }, "SpecialPlaceIndex").start();
+    }
+
+    private static int typeOfStringId(int resourceId) {
+        for (int i = 0; i < TYPE_STRING_IDS.length; i++) {
+            if (TYPE_STRING_IDS[i] == resourceId) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    private static NameIndex getNameIndex() {
+        NameIndex index = sNameIndex;
+        if (index == null) {
+            synchronized (SpecialPlaceUtil.class) {
+                index = sNameIndex;
+                if (index == null) {
+                    index = buildNameIndex();
+                    sNameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    @SuppressLint("LongLogTag")
+    private static NameIndex buildNameIndex() {
+        long start = System.currentTimeMillis();
+        if (sContext == null) {
+            sContext = ApplicationWrapper.getApplicationContext();
+        }
+        NameIndex index = new NameIndex();
+        String[] languages = sContext.getResources().getStringArray(R.array.special_place_lang);
+        for (String language : languages) {
+            for (int i = 0; i < TYPE_STRING_IDS.length; i++) {
+                try {
+                    index.add(getStringByLanguage(TYPE_STRING_IDS[i], language), 1 << i);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        Log.d(TAG, "buildNameIndex: names=" + index.size() + " cost="
+                + (System.currentTimeMillis() - start) + "ms");
+        return index;
+    }
+
+    /**
+     * 忽略大小写的开放寻址哈希表，查询不分配对象
+     * Open-addressing table keyed by name with the same case folding as
+     * {@link String#equalsIgnoreCase}, so lookups need no lower-cased copy.
+     */
+    private static class NameIndex {
+        private String[] mNames = new String[64];
+        private int[] mTypes = new int[64];
+        private int mSize;
+
+        int size() {
+            return mSize;
+        }
+
+        void add(String name, int type) {
+            if (TextUtils.isEmpty(name)) {
+                return;
+            }
+            if ((mSize + 1) * 2 > mNames.length) {
+                grow();
+            }
+            int mask = mNames.length - 1;
+            int slot = hash(name) & mask;
+            while (mNames[slot] != null) {
+                if (mNames[slot].equalsIgnoreCase(name)) {
+                    mTypes[slot] |= type;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            mNames[slot] = name;
+            mTypes[slot] = type;
+            mSize++;
+        }
+
+        int typeOf(String name) {
+            int mask = mNames.length - 1;
+            int slot = hash(name) & mask;
+            while (mNames[slot] != null) {
+                if (mNames[slot].equalsIgnoreCase(name)) {
+                    return mTypes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        private void grow() {
+            String[] names = mNames;
+            int[] types = mTypes;
+            mNames = new String[names.length * 2];
+            mTypes = new int[names.length * 2];
+            mSize = 0;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    add(names[i], types[i]);
+                }
+            }
+        }
+
+        private static int hash(String name) {
+            int h = 0;
+            for (int i = 0; i < name.length(); i++) {
+                // 与 equalsIgnoreCase 的比较规则一致
+                h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
     /**
      * 特殊点位多语言名称列表，特殊点位配置的语言类型全集，便于本地增加新语言支持后的地图兼容
      */
@@ -0,0 +1,114 @@
+package com.ainirobot.robotos.maputils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/**
+ * 在栅格地图上按机器人最新位姿做射线求交，生成模拟激光数据，用于调试和测试扫描图层
+ * Synthetic scan generator: casts evenly spaced rays from the robot's newest
+ * location across the occupancy grid and reports the distance to the first
+ * blocked cell. Runs on its own thread at a fixed period, so the overlay can
+ * be exercised without a robot.
+ */
+public class SyntheticScanSource implements LaserScanSource {
+
+    private final RoverMap mMap;
+    private final int mBeams;
+    private final float mMaxRange;
+    private final long mPeriod;
+    private final float[] mRanges;
+    private final Pose2d mPose = new Pose2d(0, 0, 0);
+    private final Pose2d mPixel = new Pose2d(0, 0, 0);
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private Listener mListener;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            long start = SystemClock.uptimeMillis();
+            if (GlobalData.getInstance().getNewestLocation(mPose)) {
+                scan(mPose, mRanges);
+                mListener.onScan(start, mPose, (float) -Math.PI,
+                        (float) (2 * Math.PI / mBeams), mRanges, mBeams);
+            }
+            mHandler.postDelayed(this, mPeriod);
+        }
+    };
+
+    /**
+     * @param beams    每帧射线个数，均匀覆盖一周
+     * @param maxRange 最大量程，米
+     * @param period   帧间隔，毫秒
+     */
+    public SyntheticScanSource(RoverMap map, int beams, float maxRange, long period) {
+        mMap = map;
+        mBeams = beams;
+        mMaxRange = maxRange;
+        mPeriod = period;
+        mRanges = new float[beams];
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (mThread != null) {
+            return;
+        }
+        mListener = listener;
+        mThread = new HandlerThread("SyntheticScan");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(mTick);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mHandler.removeCallbacks(mTick);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+    }
+
+    /**
+     * 从 pose 出发按像素步进，遇到禁行线或障碍物停止，出界或超出量程记为 0
+     */
+    void scan(Pose2d pose, float[] ranges) {
+        OccupancyGrid grid = mMap.grid;
+        if (grid == null) {
+            return;
+        }
+        mPixel.set(pose);
+        MapppUtils.pose2PixelInPlace(mMap, mPixel);
+        double res = mMap.res;
+        int maxSteps = (int) (mMaxRange / res);
+        double angle = pose.t - Math.PI;
+        double step = 2 * Math.PI / mBeams;
+        for (int i = 0; i < mBeams; i++, angle += step) {
+            // 像素坐标 y 轴向下
+            double dx = Math.cos(angle);
+            double dy = -Math.sin(angle);
+            double x = mPixel.x;
+            double y = mPixel.y;
+            float range = 0;
+            for (int s = 1; s <= maxSteps; s++) {
+                x += dx;
+                y += dy;
+                int cx = (int) Math.floor(x);
+                int cy = (int) Math.floor(y);
+                if (!grid.contains(cx, cy)) {
+                    break;
+                }
+                if (grid.isBlocked(cx, cy)) {
+                    range = (float) (s * res);
+                    break;
+                }
+            }
+            ranges[i] = range;
+        }
+    }
+}
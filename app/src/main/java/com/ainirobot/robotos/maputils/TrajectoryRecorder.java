@@ -0,0 +1,389 @@
+package com.ainirobot.robotos.maputils;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 机器人轨迹记录，世界坐标顶点存放在可增长的基本类型环形数组中，边记录边简化
+ * Records where the robot went. Vertices live in a growable ring of primitive
+ * arrays (time, x, y, theta); once the ring reaches its maximum size the
+ * oldest vertices are overwritten. Poses closer than the radial distance to
+ * the last vertex are ignored, and the last vertex floats: a new pose
+ * replaces it as long as every pose it swallowed stays within the tolerance
+ * of the straight segment from the previous vertex. This is the on-line
+ * (opening window) form of Douglas-Peucker, so a straight run costs two
+ * vertices however long it is. Large jumps or gaps start a new segment.
+ */
+public class TrajectoryRecorder {
+    private static final String TAG = Constant.PREFIX + "TrajectoryRecorder";
+
+    public static final int DEFAULT_MAX_VERTICES = 16384;
+    /**
+     * 默认显示最近一小时的轨迹
+     */
+    public static final long DISPLAY_WINDOW = 60 * 60 * 1000;
+
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * 与上一个顶点距离小于该值的位姿直接忽略，米
+     */
+    private static final float MIN_DISTANCE = 0.05f;
+    /**
+     * 被合并的位姿到线段的最大距离，米
+     */
+    private static final float TOLERANCE = 0.05f;
+    /**
+     * 一条线段最多合并的位姿个数，超过后强制落点，保证每次检查的开销有上限
+     */
+    private static final int MAX_PENDING = 128;
+    /**
+     * 相邻位姿距离或时间间隔超过该值时断开，重定位或暂停记录后不连线
+     */
+    private static final float MAX_JUMP = 2f;
+    private static final long MAX_GAP = 5000;
+
+    private final int mMaxVertices;
+    private long[] mTime;
+    private float[] mX;
+    private float[] mY;
+    private float[] mT;
+    /**
+     * 顶点与前一个顶点之间不连线
+     */
+    private boolean[] mBreak;
+    private int mStart;
+    private int mSize;
+    /**
+     * 最后一个顶点是否还能被新位姿替换
+     */
+    private boolean mTailFloating;
+    /**
+     * mStart 处顶点的序号，序号只增不减，用于定位任务起点
+     */
+    private long mFirstSeq;
+    private int mVersion;
+
+    private final float[] mPendingX = new float[MAX_PENDING];
+    private final float[] mPendingY = new float[MAX_PENDING];
+    private int mPendingCount;
+
+    private String mMissionName;
+    private long mMissionStartSeq = -1;
+    private long mMissionStartTime;
+
+    /**
+     * 一次任务的轨迹快照
+     */
+    public static class Mission {
+        public final String name;
+        public final long startTime;
+        public final long endTime;
+        public final long[] time;
+        public final float[] x;
+        public final float[] y;
+        public final float[] theta;
+
+        Mission(String name, long startTime, long endTime, int size) {
+            this.name = name;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.time = new long[size];
+            this.x = new float[size];
+            this.y = new float[size];
+            this.theta = new float[size];
+        }
+
+        public int size() {
+            return time.length;
+        }
+
+        /**
+         * 以 csv 写入 dir，每行 time,x,y,theta，须在后台线程调用
+         *
+         * @return 写入的文件，失败时返回 null
+         */
+        public File writeTo(File dir) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Log.e(TAG, "writeTo: mkdirs failed " + dir);
+                return null;
+            }
+            String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US)
+                    .format(new Date(startTime));
+            String safeName = name == null ? "" : "_" + name.replaceAll("[\\\\/:*?\"<>|\\s]", "_");
+            File file = new File(dir, stamp + safeName + ".csv");
+            Writer writer = null;
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file), "UTF-8"));
+                writer.write("time,x,y,theta\n");
+                StringBuilder line = new StringBuilder(64);
+                for (int i = 0; i < time.length; i++) {
+                    line.setLength(0);
+                    line.append(time[i]).append(',').append(x[i]).append(',')
+                            .append(y[i]).append(',').append(theta[i]).append('\n');
+                    writer.write(line.toString());
+                }
+                writer.flush();
+                Log.d(TAG, "writeTo: " + file + " vertices=" + time.length);
+                return file;
+            } catch (IOException e) {
+                e.printStackTrace();
+                file.delete();
+            } finally {
+                IOUtils.close(writer);
+            }
+            return null;
+        }
+    }
+
+    public TrajectoryRecorder() {
+        this(DEFAULT_MAX_VERTICES);
+    }
+
+    public TrajectoryRecorder(int maxVertices) {
+        mMaxVertices = Math.max(maxVertices, 2);
+        allocate(Math.min(INITIAL_CAPACITY, mMaxVertices));
+    }
+
+    /**
+     * 记录一个世界坐标位姿
+     */
+    public synchronized void add(long time, Pose2d pose) {
+        float x = (float) pose.x;
+        float y = (float) pose.y;
+        float t = (float) pose.t;
+        if (mSize == 0) {
+            append(time, x, y, t, true);
+            return;
+        }
+        int tail = indexOf(mSize - 1);
+        float dx = x - mX[tail];
+        float dy = y - mY[tail];
+        float distance2 = dx * dx + dy * dy;
+        if (distance2 > MAX_JUMP * MAX_JUMP || time - mTime[tail] > MAX_GAP
+                || time < mTime[tail]) {
+            append(time, x, y, t, true);
+            return;
+        }
+        if (distance2 < MIN_DISTANCE * MIN_DISTANCE) {
+            return;
+        }
+        if (mTailFloating && mPendingCount < MAX_PENDING) {
+            int anchor = indexOf(mSize - 2);
+            // 原来的末端顶点也要落在新线段附近
+            mPendingX[mPendingCount] = mX[tail];
+            mPendingY[mPendingCount] = mY[tail];
+            if (fits(mX[anchor], mY[anchor], x, y, mPendingCount + 1)) {
+                mPendingCount++;
+                set(tail, time, x, y, t);
+                mVersion++;
+                return;
+            }
+        }
+        // 末端顶点固定下来，新位姿成为新的末端
+        append(time, x, y, t, false);
+    }
+
+    /**
+     * pending 中前 count 个点到线段 (ax, ay) - (bx, by) 的距离是否都不超过 TOLERANCE
+     */
+    private boolean fits(float ax, float ay, float bx, float by, int count) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float length2 = dx * dx + dy * dy;
+        float limit = TOLERANCE * TOLERANCE;
+        for (int i = 0; i < count; i++) {
+            float px = mPendingX[i] - ax;
+            float py = mPendingY[i] - ay;
+            float distance2;
+            if (length2 == 0) {
+                distance2 = px * px + py * py;
+            } else {
+                float f = Math.max(0, Math.min(1, (px * dx + py * dy) / length2));
+                float ex = px - f * dx;
+                float ey = py - f * dy;
+                distance2 = ex * ex + ey * ey;
+            }
+            if (distance2 > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(long time, float x, float y, float t, boolean breakBefore) {
+        if (mSize == mTime.length) {
+            if (mSize < mMaxVertices) {
+                grow();
+            } else {
+                mStart = (mStart + 1) % mTime.length;
+                mSize--;
+                mFirstSeq++;
+            }
+        }
+        int index = indexOf(mSize);
+        set(index, time, x, y, t);
+        mBreak[index] = breakBefore;
+        mSize++;
+        mTailFloating = !breakBefore;
+        mPendingCount = 0;
+        mVersion++;
+    }
+
+    private void set(int index, long time, float x, float y, float t) {
+        mTime[index] = time;
+        mX[index] = x;
+        mY[index] = y;
+        mT[index] = t;
+    }
+
+    private int indexOf(int i) {
+        return (mStart + i) % mTime.length;
+    }
+
+    private void allocate(int capacity) {
+        mTime = new long[capacity];
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mT = new float[capacity];
+        mBreak = new boolean[capacity];
+    }
+
+    /**
+     * 按顺序展开到新数组，mStart 归零
+     */
+    private void grow() {
+        long[] time = mTime;
+        float[] x = mX;
+        float[] y = mY;
+        float[] t = mT;
+        boolean[] breaks = mBreak;
+        int old = time.length;
+        allocate(Math.min(old * 2, mMaxVertices));
+        int head = old - mStart;
+        System.arraycopy(time, mStart, mTime, 0, head);
+        System.arraycopy(time, 0, mTime, head, mStart);
+        System.arraycopy(x, mStart, mX, 0, head);
+        System.arraycopy(x, 0, mX, head, mStart);
+        System.arraycopy(y, mStart, mY, 0, head);
+        System.arraycopy(y, 0, mY, head, mStart);
+        System.arraycopy(t, mStart, mT, 0, head);
+        System.arraycopy(t, 0, mT, head, mStart);
+        System.arraycopy(breaks, mStart, mBreak, 0, head);
+        System.arraycopy(breaks, 0, mBreak, head, mStart);
+        mStart = 0;
+    }
+
+    public synchronized void clear() {
+        mStart = 0;
+        mSize = 0;
+        mFirstSeq = 0;
+        mPendingCount = 0;
+        mTailFloating = false;
+        mMissionStartSeq = -1;
+        mVersion++;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * 每次顶点变化都会增加，绘制方据此判断是否需要重新生成线段
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * 顶点数组占用的字节数
+     */
+    public synchronized long byteSize() {
+        return (long) mTime.length * (8 + 4 * 3 + 1);
+    }
+
+    /**
+     * {@link #toLines} 需要的数组长度
+     */
+    public synchronized int getLinesCapacity() {
+        return mSize * 4;
+    }
+
+    /**
+     * 生成 drawLines 用的线段，每段 x0, y0, x1, y1，已换算为地图像素坐标
+     *
+     * @param since 只输出终点时间不早于 since 的线段
+     * @param out   长度至少为 {@link #getLinesCapacity()}
+     * @return 写入的 float 个数
+     */
+    public synchronized int toLines(RoverMap map, long since, float[] out) {
+        if (map == null || mSize < 2) {
+            return 0;
+        }
+        float scale = (float) (1 / map.res);
+        float originX = (float) map.x;
+        float originY = (float) map.y;
+        float height = map.height;
+        int n = 0;
+        int previous = indexOf(0);
+        for (int i = 1; i < mSize; i++) {
+            int index = indexOf(i);
+            if (!mBreak[index] && mTime[index] >= since && n + 4 <= out.length) {
+                out[n++] = (mX[previous] - originX) * scale;
+                out[n++] = height - (mY[previous] - originY) * scale;
+                out[n++] = (mX[index] - originX) * scale;
+                out[n++] = height - (mY[index] - originY) * scale;
+            }
+            previous = index;
+        }
+        return n;
+    }
+
+    /**
+     * 开始记录一次任务，之前未结束的任务被丢弃
+     */
+    public synchronized void beginMission(String name, long time) {
+        mMissionName = name;
+        mMissionStartTime = time;
+        // 末端顶点仍可能被替换，从它开始算
+        mMissionStartSeq = mFirstSeq + Math.max(mSize - 1, 0);
+    }
+
+    /**
+     * 结束任务并返回这段时间的轨迹，没有进行中的任务时返回 null
+     */
+    public synchronized Mission endMission(long time) {
+        if (mMissionStartSeq < 0) {
+            return null;
+        }
+        int from = (int) Math.max(mMissionStartSeq - mFirstSeq, 0);
+        if (from > mSize) {
+            from = mSize;
+        }
+        Mission mission = new Mission(mMissionName, mMissionStartTime, time, mSize - from);
+        for (int i = from; i < mSize; i++) {
+            int index = indexOf(i);
+            mission.time[i - from] = mTime[index];
+            mission.x[i - from] = mX[index];
+            mission.y[i - from] = mY[index];
+            mission.theta[i - from] = mT[index];
+        }
+        mMissionName = null;
+        mMissionStartSeq = -1;
+        return mission;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TrajectoryRecorder{vertices=" + mSize + ", bytes=" + byteSize() + "}";
+    }
+}
@@ -0,0 +1,478 @@
+package com.ainirobot.robotos.maputils;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 点位两两之间的栅格行走距离，预先算好供调度按代价排序，查询为 O(1)
+ * All-pairs grid travel distances between the places of one map, in meters.
+ * Distances are symmetric and kept in a flat n x n float array. Pairs are
+ * grouped by their lower place index, and each group is one bounded
+ * {@link PathPlanner#distances} search from that place which stops once every
+ * target of the group is settled, so n places cost at most n - 1 searches
+ * instead of n(n-1)/2 point-to-point queries. Sources are pulled from a shared
+ * counter by one worker per thread of {@link MapPixelConverter}'s pool, every
+ * worker owning a planner that shares the passability bitsets. Places that
+ * sit on a non-free cell are snapped to the nearest free cell within
+ * {@link #SNAP_RADIUS}. For each pair the bounding box of its path is kept so
+ * that a grid edit only recomputes the pairs it can affect: those whose path
+ * crosses the edit, and those for which a detour through the edit could be
+ * shorter than the current distance (octile lower bound).
+ */
+public class TravelMatrix {
+    private static final String TAG = Constant.PREFIX + "TravelMatrix";
+
+    /**
+     * 不可达的点对
+     */
+    public static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+    /**
+     * 点位不在空闲格子上时，向外找空闲格子的最大距离，格
+     */
+    public static final int SNAP_RADIUS = 5;
+    /**
+     * 需要搜索的起点少于该值时不用线程池
+     */
+    private static final int PARALLEL_SOURCES = 2;
+    private static final float SQRT2_MINUS_1 = (float) (Math.sqrt(2) - 1);
+
+    private final String mMd5;
+    private final double mRes;
+    private final int mCount;
+    private final String[] mNames;
+    /**
+     * 点位所在格子，用于判断点位是否变化
+     */
+    private final int[] mPlaceX;
+    private final int[] mPlaceY;
+    /**
+     * 吸附后的起点格子，找不到空闲格子时为 -1
+     */
+    private final int[] mStartX;
+    private final int[] mStartY;
+    /**
+     * mCount x mCount，米
+     */
+    private final float[] mDistance;
+    /**
+     * 每个点对（i < j）路线的包围盒 left, top, right, bottom，闭区间，不可达时 left > right
+     */
+    private final int[] mBounds;
+    private final Map<String, Integer> mIndexOfName;
+
+    private PathPlanner mPlanner;
+
+    TravelMatrix(String md5, double res, String[] names, int[] placeX, int[] placeY,
+                 int[] startX, int[] startY, float[] distance, int[] bounds) {
+        mMd5 = md5;
+        mRes = res;
+        mCount = names.length;
+        mNames = names;
+        mPlaceX = placeX;
+        mPlaceY = placeY;
+        mStartX = startX;
+        mStartY = startY;
+        mDistance = distance;
+        mBounds = bounds;
+        mIndexOfName = new HashMap<>(mCount * 2);
+        for (int i = mCount - 1; i >= 0; i--) {
+            mIndexOfName.put(names[i], i);
+        }
+    }
+
+    /**
+     * 计算所有点对的距离，previous 为同一张地图的旧矩阵时，点位未变的点对直接沿用；
+     * 耗时较长，须在后台线程调用
+     *
+     * @param previous 可以为 null
+     * @return 地图没有栅格时返回 null；点位完全相同时直接返回 previous
+     */
+    public static TravelMatrix compute(RoverMap map, PlaceStore places, TravelMatrix previous) {
+        if (map == null || map.grid == null || places == null) {
+            return null;
+        }
+        int n = places.size();
+        String[] names = new String[n];
+        int[] placeX = new int[n];
+        int[] placeY = new int[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = places.getName(i);
+            placeX[i] = (int) Math.floor(places.getX(i));
+            placeY[i] = (int) Math.floor(places.getY(i));
+        }
+        if (previous != null && !previous.isFor(map)) {
+            previous = null;
+        }
+        if (previous != null && previous.hasPlaces(names, placeX, placeY)) {
+            return previous;
+        }
+
+        long start = System.currentTimeMillis();
+        // 与地图共用位图，地图编辑时由 RoverMap 一并更新
+        PathPlanner planner = map.newPathPlanner();
+        int[] startX = new int[n];
+        int[] startY = new int[n];
+        for (int i = 0; i < n; i++) {
+            snap(planner, placeX[i], placeY[i], i, startX, startY);
+        }
+        TravelMatrix matrix = new TravelMatrix(map.pgmMd5, map.res, names, placeX, placeY,
+                startX, startY, new float[n * n], new int[pairCount(n) * 4]);
+        matrix.mPlanner = planner;
+
+        // 新旧下标对应，沿用旧点对
+        int[] old = new int[n];
+        Arrays.fill(old, -1);
+        if (previous != null) {
+            for (int i = 0; i < n; i++) {
+                int index = previous.indexOf(names[i]);
+                if (index >= 0 && previous.mPlaceX[index] == placeX[i]
+                        && previous.mPlaceY[index] == placeY[i]) {
+                    old[i] = index;
+                }
+            }
+        }
+        boolean[] pending = new boolean[pairCount(n)];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (old[i] >= 0 && old[j] >= 0 && old[i] != old[j]) {
+                    matrix.copyPair(i, j, previous, old[i], old[j]);
+                } else {
+                    pending[matrix.pairIndex(i, j)] = true;
+                    count++;
+                }
+            }
+        }
+        int sources = matrix.computePairs(pending, count);
+        Log.d(TAG, "compute: places=" + n + " pairs=" + count + "/" + pairCount(n)
+                + " sources=" + sources + " cost=" + (System.currentTimeMillis() - start)
+                + "ms");
+        return matrix;
+    }
+
+    private static int pairCount(int n) {
+        return n * (n - 1) / 2;
+    }
+
+    /**
+     * 点对 (i, j)，i < j 在 mBounds 中的序号
+     */
+    private int pairIndex(int i, int j) {
+        return i * mCount - i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    /**
+     * 在 (x, y) 附近找最近的空闲格子写入 outX/outY[index]，找不到时写入 -1
+     */
+    private static void snap(PathPlanner planner, int x, int y, int index, int[] outX,
+                             int[] outY) {
+        int[] cell = new int[2];
+        if (planner.nearestWalkable(x, y, SNAP_RADIUS, cell)) {
+            outX[index] = cell[0];
+            outY[index] = cell[1];
+        } else {
+            outX[index] = -1;
+            outY[index] = -1;
+        }
+    }
+
+    private void copyPair(int i, int j, TravelMatrix from, int fromI, int fromJ) {
+        float distance = from.mDistance[fromI * from.mCount + fromJ];
+        mDistance[i * mCount + j] = distance;
+        mDistance[j * mCount + i] = distance;
+        int src = from.pairIndex(Math.min(fromI, fromJ), Math.max(fromI, fromJ)) * 4;
+        System.arraycopy(from.mBounds, src, mBounds, pairIndex(i, j) * 4, 4);
+    }
+
+    /**
+     * 重算 pending 中标记的点对（按 {@link #pairIndex} 编号），每个点位一次搜索，
+     * 求出它到所有待算的、下标更大的点位的距离
+     *
+     * @return 搜索的起点数
+     */
+    private int computePairs(final boolean[] pending, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        final int[] sources = new int[mCount];
+        int sourceCount = 0;
+        for (int i = 0; i < mCount - 1; i++) {
+            int base = pairIndex(i, i + 1);
+            for (int k = 0; k < mCount - i - 1; k++) {
+                if (pending[base + k]) {
+                    sources[sourceCount++] = i;
+                    break;
+                }
+            }
+        }
+        if (sourceCount < PARALLEL_SOURCES) {
+            SourceSearch search = new SourceSearch();
+            for (int k = 0; k < sourceCount; k++) {
+                search.run(sources[k], pending);
+            }
+            return sourceCount;
+        }
+        ForkJoinPool pool = MapPixelConverter.getPool();
+        final AtomicInteger next = new AtomicInteger();
+        final int total = sourceCount;
+        int workers = Math.min(pool.getParallelism(), total);
+        final RecursiveAction[] tasks = new RecursiveAction[workers];
+        for (int w = 0; w < workers; w++) {
+            tasks[w] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    SourceSearch search = new SourceSearch();
+                    int k;
+                    while ((k = next.getAndIncrement()) < total) {
+                        search.run(sources[k], pending);
+                    }
+                }
+            };
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        return sourceCount;
+    }
+
+    /**
+     * 一个线程的搜索状态，规划器与 mPlanner 共用位图
+     */
+    private class SourceSearch {
+        final PathPlanner planner = new PathPlanner(mPlanner);
+        final int[] targets = new int[mCount];
+        final int[] targetX = new int[mCount];
+        final int[] targetY = new int[mCount];
+        final float[] distance = new float[mCount];
+        final int[] bounds = new int[mCount * 4];
+
+        void run(int i, boolean[] pending) {
+            int count = 0;
+            int base = pairIndex(i, i + 1) - (i + 1);
+            for (int j = i + 1; j < mCount; j++) {
+                if (pending[base + j]) {
+                    targets[count] = j;
+                    targetX[count] = mStartX[j];
+                    targetY[count] = mStartY[j];
+                    count++;
+                }
+            }
+            int found = planner.distances(mStartX[i], mStartY[i], targetX, targetY, count,
+                    mRes, distance, bounds);
+            if (found < 0) {
+                // 超出节点上限，没求出的终点逐个用跳点搜索
+                Log.d(TAG, "computePairs: node limit reached from place " + i);
+                for (int k = 0; k < count; k++) {
+                    if (distance[k] == UNREACHABLE) {
+                        planPair(k, mStartX[i], mStartY[i]);
+                    }
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int j = targets[k];
+                mDistance[i * mCount + j] = distance[k];
+                mDistance[j * mCount + i] = distance[k];
+                System.arraycopy(bounds, k * 4, mBounds, pairIndex(i, j) * 4, 4);
+            }
+        }
+
+        private void planPair(int k, int startX, int startY) {
+            PathPlanner.Path path = planner.plan(startX, startY, targetX[k], targetY[k], mRes);
+            if (path == null) {
+                return;
+            }
+            int left = Integer.MAX_VALUE;
+            int top = Integer.MAX_VALUE;
+            int right = Integer.MIN_VALUE;
+            int bottom = Integer.MIN_VALUE;
+            for (int p = 0; p < path.points.length; p += 2) {
+                int x = (int) path.points[p];
+                int y = (int) path.points[p + 1];
+                left = Math.min(left, x);
+                top = Math.min(top, y);
+                right = Math.max(right, x);
+                bottom = Math.max(bottom, y);
+            }
+            distance[k] = (float) path.length;
+            bounds[k * 4] = left;
+            bounds[k * 4 + 1] = top;
+            bounds[k * 4 + 2] = right;
+            bounds[k * 4 + 3] = bottom;
+        }
+    }
+
+    /**
+     * 地图栅格中 [left, right) x [top, bottom) 被修改并同步（{@link
+     * RoverMap#syncGridFromBitmap(int, int, int, int)}）后调用，只重算可能受影响的点对；
+     * 须在后台线程调用
+     *
+     * @return 重算的点对数
+     */
+    public synchronized int update(RoverMap map, int left, int top, int right, int bottom) {
+        long start = System.currentTimeMillis();
+        // 取编辑后的位图快照，之前的搜索仍用旧快照
+        PathPlanner planner = map.newPathPlanner();
+        if (planner == null) {
+            return 0;
+        }
+        mPlanner = planner;
+        // 斜向一步要求两侧格子空闲，编辑区域外一圈的走法也可能变化
+        int l = left - 1;
+        int t = top - 1;
+        int r = right;
+        int b = bottom;
+        boolean[] moved = new boolean[mCount];
+        for (int i = 0; i < mCount; i++) {
+            if (mPlaceX[i] + SNAP_RADIUS >= l && mPlaceX[i] - SNAP_RADIUS <= r
+                    && mPlaceY[i] + SNAP_RADIUS >= t && mPlaceY[i] - SNAP_RADIUS <= b) {
+                snap(mPlanner, mPlaceX[i], mPlaceY[i], i, mStartX, mStartY);
+                moved[i] = true;
+            }
+        }
+        boolean[] pending = new boolean[pairCount(mCount)];
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            for (int j = i + 1; j < mCount; j++) {
+                if (moved[i] || moved[j] || isAffected(i, j, l, t, r, b)) {
+                    pending[pairIndex(i, j)] = true;
+                    count++;
+                }
+            }
+        }
+        int sources = computePairs(pending, count);
+        Log.d(TAG, "update: pairs=" + count + "/" + pairCount(mCount) + " sources=" + sources
+                + " cost=" + (System.currentTimeMillis() - start) + "ms");
+        return count;
+    }
+
+    /**
+     * 点对的路线经过区域，或者绕经区域的最短可能长度小于当前距离
+     */
+    private boolean isAffected(int i, int j, int l, int t, int r, int b) {
+        int bounds = pairIndex(i, j) * 4;
+        if (mBounds[bounds] <= r && mBounds[bounds + 2] >= l
+                && mBounds[bounds + 1] <= b && mBounds[bounds + 3] >= t) {
+            return true;
+        }
+        if (mStartX[i] < 0 || mStartX[j] < 0) {
+            return false;
+        }
+        float bound = (octile(mStartX[i], mStartY[i], l, t, r, b)
+                + octile(mStartX[j], mStartY[j], l, t, r, b)) * (float) mRes;
+        return bound < mDistance[i * mCount + j];
+    }
+
+    /**
+     * 格子到矩形的 8 邻域最短距离，格
+     */
+    private static float octile(int x, int y, int l, int t, int r, int b) {
+        int dx = Math.max(Math.max(l - x, x - r), 0);
+        int dy = Math.max(Math.max(t - y, y - b), 0);
+        return Math.max(dx, dy) + SQRT2_MINUS_1 * Math.min(dx, dy);
+    }
+
+    /**
+     * 是否按这张地图（同一 md5 和分辨率）计算
+     */
+    public boolean isFor(RoverMap map) {
+        return map != null && TextUtils.equals(mMd5, map.pgmMd5) && mRes == map.res;
+    }
+
+    private boolean hasPlaces(String[] names, int[] placeX, int[] placeY) {
+        return Arrays.equals(mNames, names) && Arrays.equals(mPlaceX, placeX)
+                && Arrays.equals(mPlaceY, placeY);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * 名称对应的下标，没有时返回 -1
+     */
+    public int indexOf(String name) {
+        Integer index = name == null ? null : mIndexOfName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 两点位之间的行走距离，米，不可达时返回 {@link #UNREACHABLE}；{@link #update} 期间
+     * 读到的可能是旧值
+     */
+    public float getDistance(int from, int to) {
+        return mDistance[from * mCount + to];
+    }
+
+    /**
+     * 按名称查询，名称不存在时返回 {@link #UNREACHABLE}
+     */
+    public float getDistance(String from, String to) {
+        int i = indexOf(from);
+        int j = indexOf(to);
+        return i < 0 || j < 0 ? UNREACHABLE : getDistance(i, j);
+    }
+
+    /**
+     * 按平均速度估算的行走时间，秒
+     *
+     * @param speed 平均速度，米/秒
+     */
+    public double getEta(String from, String to, double speed) {
+        return speed > 0 ? getDistance(from, to) / speed : Double.POSITIVE_INFINITY;
+    }
+
+    public String getMd5() {
+        return mMd5;
+    }
+
+    public double getRes() {
+        return mRes;
+    }
+
+    String getName(int index) {
+        return mNames[index];
+    }
+
+    int getPlaceX(int index) {
+        return mPlaceX[index];
+    }
+
+    int getPlaceY(int index) {
+        return mPlaceY[index];
+    }
+
+    int getStartX(int index) {
+        return mStartX[index];
+    }
+
+    int getStartY(int index) {
+        return mStartY[index];
+    }
+
+    float[] distances() {
+        return mDistance;
+    }
+
+    int[] bounds() {
+        return mBounds;
+    }
+
+    public long byteSize() {
+        return (long) mDistance.length * 4 + (long) mBounds.length * 4 + mCount * 16L;
+    }
+
+    @Override
+    public String toString() {
+        return "TravelMatrix{places=" + mCount + ", bytes=" + byteSize() + "}";
+    }
+}
@@ -0,0 +1,196 @@
+package com.ainirobot.robotos.maputils;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 点位距离矩阵的磁盘缓存，按地图 md5 存放，地图不变时冷启动无需重新规划
+ * On-disk cache of {@link TravelMatrix}, one file per pgm md5 so that a map
+ * edit, which changes the md5, never reads a stale matrix. The place names
+ * and cells are stored with the matrix; a changed place list still loads, and
+ * {@link TravelMatrix#compute} then reuses the pairs whose places did not move.
+ */
+public class TravelMatrixCache {
+    private static final String TAG = Constant.PREFIX + "TravelMatrixCache";
+
+    private static final String DIR_NAME = "travel_cache";
+    private static final String SUFFIX = ".rtravel";
+    private static final int MAGIC = 0x5254524D; // "RTRM"
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static TravelMatrixCache sInstance;
+
+    private final File mDir;
+
+    public static synchronized TravelMatrixCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TravelMatrixCache(
+                    new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return sInstance;
+    }
+
+    public TravelMatrixCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 读取 md5 对应的矩阵，没有或格式不符时返回 null
+     */
+    public TravelMatrix get(String md5) {
+        if (TextUtils.isEmpty(md5)) {
+            return null;
+        }
+        File file = fileOf(md5);
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满为止
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.d(TAG, "get: stale format, md5=" + md5);
+                return null;
+            }
+            String cachedMd5 = readString(buffer);
+            if (!md5.equals(cachedMd5)) {
+                Log.d(TAG, "get: md5 mismatch " + cachedMd5);
+                return null;
+            }
+            double res = buffer.getDouble();
+            int count = buffer.getInt();
+            String[] names = new String[count];
+            int[] placeX = new int[count];
+            int[] placeY = new int[count];
+            int[] startX = new int[count];
+            int[] startY = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = readString(buffer);
+                placeX[i] = buffer.getInt();
+                placeY[i] = buffer.getInt();
+                startX[i] = buffer.getInt();
+                startY[i] = buffer.getInt();
+            }
+            float[] distance = new float[count * count];
+            buffer.asFloatBuffer().get(distance);
+            buffer.position(buffer.position() + distance.length * 4);
+            int[] bounds = new int[count * (count - 1) / 2 * 4];
+            buffer.asIntBuffer().get(bounds);
+            return new TravelMatrix(md5, res, names, placeX, placeY, startX, startY,
+                    distance, bounds);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "get: md5=" + md5, e);
+        } finally {
+            IOUtils.close(raf);
+        }
+        return null;
+    }
+
+    /**
+     * 写入缓存，先写临时文件再重命名，避免读到半个文件
+     */
+    public boolean put(TravelMatrix matrix) {
+        if (matrix == null || TextUtils.isEmpty(matrix.getMd5())) {
+            return false;
+        }
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(TAG, "put: mkdirs failed " + mDir);
+            return false;
+        }
+        byte[] md5 = bytesOf(matrix.getMd5());
+        int count = matrix.size();
+        byte[][] names = new byte[count][];
+        int size = 4 * 2 + 4 + md5.length + 8 + 4;
+        for (int i = 0; i < count; i++) {
+            names[i] = bytesOf(matrix.getName(i));
+            size += 4 + names[i].length + 4 * 4;
+        }
+        float[] distance = matrix.distances();
+        int[] bounds = matrix.bounds();
+        size += distance.length * 4 + bounds.length * 4;
+
+        File file = fileOf(matrix.getMd5());
+        File temp = new File(mDir, file.getName() + ".tmp");
+        RandomAccessFile raf = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+            buffer.putInt(md5.length).put(md5);
+            buffer.putDouble(matrix.getRes());
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(names[i].length).put(names[i]);
+                buffer.putInt(matrix.getPlaceX(i)).putInt(matrix.getPlaceY(i))
+                        .putInt(matrix.getStartX(i)).putInt(matrix.getStartY(i));
+            }
+            buffer.asFloatBuffer().put(distance);
+            buffer.position(buffer.position() + distance.length * 4);
+            buffer.asIntBuffer().put(bounds);
+            buffer.position(buffer.position() + bounds.length * 4);
+            buffer.flip();
+
+            raf = new RandomAccessFile(temp, "rw");
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            raf.close();
+            raf = null;
+            if (!temp.renameTo(file)) {
+                Log.e(TAG, "put: rename failed " + file);
+                temp.delete();
+                return false;
+            }
+            Log.d(TAG, "put: md5=" + matrix.getMd5() + " places=" + count + " bytes=" + size);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "put: md5=" + matrix.getMd5(), e);
+            temp.delete();
+        } finally {
+            IOUtils.close(raf);
+        }
+        return false;
+    }
+
+    public void remove(String md5) {
+        File file = fileOf(md5);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private File fileOf(String md5) {
+        // md5 只含十六进制字符，其他字符一律替换，防止拼出别的路径
+        return new File(mDir, md5.replaceAll("[^0-9A-Za-z]", "_") + SUFFIX);
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? new byte[0] : value.getBytes(UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,182 @@
+package com.ainirobot.robotos.nav;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.ainirobot.coreservice.client.RobotApi;
+import com.ainirobot.coreservice.client.StatusListener;
+import com.ainirobot.coreservice.client.listener.ActionListener;
+import com.ainirobot.robotos.application.RobotOSApplication;
+import com.ainirobot.robotos.maputils.Constant;
+import com.ainirobot.robotos.maputils.GlobalData;
+import com.ainirobot.robotos.maputils.Pose2d;
+import com.ainirobot.robotos.maputils.PoseParser;
+import com.ainirobot.robotos.maputils.TrajectoryRecorder;
+
+import java.io.File;
+
+/**
+ * 导航统一入口，各页面经此发起和停止导航，每次导航记录为一段轨迹任务
+ * Shared entry point for place navigation. Each start begins a trajectory
+ * mission named after the destination and subscribes to the robot pose for
+ * its duration, so the track is recorded whichever page started it. The
+ * mission ends, and is exported to the cache dir on a background thread, when
+ * that navigation reports a result or an error or is stopped here. A result
+ * arriving for a navigation that has already been replaced does not end the
+ * newer mission.
+ */
+public class NavigationHelper {
+    private static final String TAG = Constant.PREFIX + "NavigationHelper";
+
+    /**
+     * 每次导航的轨迹导出目录
+     */
+    private static final String TRAJECTORY_DIR = "trajectory";
+
+    private static final Object sLock = new Object();
+    /**
+     * 当前任务的序号，0 表示没有进行中的任务
+     */
+    private static int sMission;
+    private static int sNextMission = 1;
+
+    private static final StatusListener sPoseListener = new StatusListener() {
+        // 位姿回调始终在同一线程，解析器和位姿对象复用
+        final PoseParser parser = new PoseParser();
+        final Pose2d pose = new Pose2d(0, 0, 0);
+
+        @Override
+        public void onStatusUpdate(String type, String value) {
+            if (parser.parse(value, pose)) {
+                GlobalData.getInstance().setNewestLocation(pose);
+            }
+        }
+    };
+
+    private NavigationHelper() {
+    }
+
+    /**
+     * 导航到指定点位，参数与 {@link RobotApi#startNavigation(int, String, double, long,
+     * ActionListener)} 相同
+     */
+    public static int startNavigation(String placeName, double coordinateDeviation, long time,
+                                      ActionListener listener) {
+        int mission;
+        synchronized (sLock) {
+            if (sMission == 0) {
+                RobotApi.getInstance().registerStatusListener(
+                        Constant.CoreDef.POSE_LISTEN, sPoseListener);
+            }
+            mission = sNextMission++;
+            sMission = mission;
+            GlobalData.getInstance().getTrajectory().beginMission(placeName,
+                    System.currentTimeMillis());
+        }
+        Log.d(TAG, "startNavigation: " + placeName + " mission=" + mission);
+        return RobotApi.getInstance().startNavigation(0, placeName, coordinateDeviation, time,
+                new MissionListener(mission, listener));
+    }
+
+    public static int stopNavigation() {
+        endMission(0);
+        return RobotApi.getInstance().stopNavigation(0);
+    }
+
+    public static int stopNavigation(boolean isAdjustAngle) {
+        endMission(0);
+        return RobotApi.getInstance().stopNavigation(0, isAdjustAngle);
+    }
+
+    /**
+     * 结束任务并在后台导出轨迹
+     *
+     * @param mission 只结束该序号的任务，0 表示结束当前任务
+     */
+    private static void endMission(int mission) {
+        TrajectoryRecorder.Mission trajectory;
+        synchronized (sLock) {
+            if (sMission == 0 || (mission != 0 && mission != sMission)) {
+                return;
+            }
+            sMission = 0;
+            RobotApi.getInstance().unregisterStatusListener(sPoseListener);
+            trajectory = GlobalData.getInstance().getTrajectory()
+                    .endMission(System.currentTimeMillis());
+        }
+        RobotOSApplication application = RobotOSApplication.getInstance();
+        if (trajectory == null || trajectory.size() == 0 || application == null) {
+            return;
+        }
+        final TrajectoryRecorder.Mission export = trajectory;
+        final File dir = new File(application.getCacheDir(), TRAJECTORY_DIR);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                export.writeTo(dir);
+            }
+        }, "TrajectoryExport").start();
+    }
+
+    /**
+     * 导航结束时先结束对应任务，再把回调转给调用方
+     */
+    private static class MissionListener extends ActionListener {
+        private final int mMission;
+        private final ActionListener mListener;
+
+        MissionListener(int mission, ActionListener listener) {
+            mMission = mission;
+            mListener = listener;
+        }
+
+        @Override
+        public void onResult(int status, String response, String extraData)
+                throws RemoteException {
+            endMission(mMission);
+            if (mListener != null) {
+                mListener.onResult(status, response, extraData);
+            }
+        }
+
+        @Override
+        public void onResult(int status, String response) throws RemoteException {
+            endMission(mMission);
+            if (mListener != null) {
+                mListener.onResult(status, response);
+            }
+        }
+
+        @Override
+        public void onError(int errorCode, String errorString, String extraData)
+                throws RemoteException {
+            endMission(mMission);
+            if (mListener != null) {
+                mListener.onError(errorCode, errorString, extraData);
+            }
+        }
+
+        @Override
+        public void onError(int errorCode, String errorString) throws RemoteException {
+            endMission(mMission);
+            if (mListener != null) {
+                mListener.onError(errorCode, errorString);
+            }
+        }
+
+        @Override
+        public void onStatusUpdate(int status, String data, String extraData)
+                throws RemoteException {
+            if (mListener != null) {
+                mListener.onStatusUpdate(status, data, extraData);
+            }
+        }
+
+        @Override
+        public void onStatusUpdate(int status, String data) throws RemoteException {
+            if (mListener != null) {
+                mListener.onStatusUpdate(status, data);
+            }
+        }
+    }
+}
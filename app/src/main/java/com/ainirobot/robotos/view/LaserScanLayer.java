@@ -0,0 +1,254 @@
+package com.ainirobot.robotos.view;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.view.View;
+
+import com.ainirobot.robotos.maputils.LaserScanSource;
+import com.ainirobot.robotos.maputils.Pose2d;
+import com.ainirobot.robotos.maputils.RoverMap;
+
+import java.util.Arrays;
+
+/**
+ * 激光扫描图层，最近几帧扫描点保存在预分配的环形数组中，按屏幕格子抽稀后一次 drawPoints 画出
+ * Laser scan overlay. Frames arrive on the source's thread, are converted to
+ * map pixels in one pass (beam directions by incremental rotation, no trig per
+ * beam) and copied into a preallocated ring of the last {@link #FRAMES}
+ * frames. On draw the live frames are mapped to screen space in bulk and
+ * thinned to one point per {@link #CELL} x {@link #CELL} screen cell, newest
+ * frame first, so the cost of the single drawPoints call is bounded by the
+ * view size rather than the scan density. Frames are aged by their arrival
+ * time on the {@link SystemClock#uptimeMillis()} clock, not by the source's
+ * timestamp, whose clock is up to the source.
+ */
+public class LaserScanLayer implements LaserScanSource.Listener {
+
+    public static final int DEFAULT_MAX_POINTS = 2048;
+
+    /**
+     * 环形数组保存的帧数
+     */
+    private static final int FRAMES = 4;
+    /**
+     * 收到后超过该时间的帧不再显示
+     */
+    private static final long MAX_AGE = 1000;
+    /**
+     * 抽稀格子的边长，屏幕像素
+     */
+    private static final int CELL = 4;
+
+    private final int mMaxPoints;
+    private final Object mLock = new Object();
+    /**
+     * FRAMES 帧，每帧 mMaxPoints 个点，地图像素坐标 x, y 交错存放
+     */
+    private final float[] mRing;
+    private final int[] mCounts = new int[FRAMES];
+    /**
+     * 各帧到达时的 uptime
+     */
+    private final long[] mTimes = new long[FRAMES];
+    private int mHead = -1;
+    private volatile RoverMap mMap;
+    private volatile View mView;
+
+    /**
+     * 数据线程使用
+     */
+    private final float[] mIngest;
+
+    /**
+     * UI 线程使用
+     */
+    private final float[] mScreen;
+    private float[] mDraw = new float[0];
+    private long[] mCells = new long[0];
+    private final Paint mPaint = new Paint();
+    private int mDrawnPoints;
+    private long mReceived;
+
+    public LaserScanLayer() {
+        this(DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * @param maxPoints 每帧最多保留的点数，射线更多时等间隔取样
+     */
+    public LaserScanLayer(int maxPoints) {
+        mMaxPoints = maxPoints;
+        mRing = new float[FRAMES * maxPoints * 2];
+        mIngest = new float[maxPoints * 2];
+        mScreen = new float[FRAMES * maxPoints * 2];
+        mPaint.setColor(Color.RED);
+        mPaint.setStrokeWidth(CELL - 1);
+        mPaint.setStrokeCap(Paint.Cap.SQUARE);
+    }
+
+    /**
+     * 扫描点换算像素坐标用的地图，切换地图时清空已有的帧
+     */
+    public void setMap(RoverMap map) {
+        mMap = map;
+        clear();
+    }
+
+    /**
+     * 收到新帧时刷新的 View
+     */
+    public void setView(View view) {
+        mView = view;
+    }
+
+    public Paint getPaint() {
+        return mPaint;
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            mHead = -1;
+            Arrays.fill(mCounts, 0);
+        }
+    }
+
+    @Override
+    public void onScan(long time, Pose2d pose, float angleMin, float angleIncrement,
+                       float[] ranges, int count) {
+        RoverMap map = mMap;
+        if (map == null || pose == null || count <= 0) {
+            return;
+        }
+        long arrival = SystemClock.uptimeMillis();
+        int points = project(map, pose, angleMin, angleIncrement, ranges, count, mIngest);
+        synchronized (mLock) {
+            int slot = (mHead + 1) % FRAMES;
+            System.arraycopy(mIngest, 0, mRing, slot * mMaxPoints * 2, points * 2);
+            mCounts[slot] = points;
+            mTimes[slot] = arrival;
+            mHead = slot;
+            mReceived++;
+        }
+        View view = mView;
+        if (view != null) {
+            view.postInvalidate();
+        }
+    }
+
+    /**
+     * 极坐标转换为地图像素坐标，跳过无效距离
+     *
+     * @return 写入 out 的点数
+     */
+    private int project(RoverMap map, Pose2d pose, float angleMin, float angleIncrement,
+                        float[] ranges, int count, float[] out) {
+        int step = (count + mMaxPoints - 1) / mMaxPoints;
+        double scale = 1 / map.res;
+        double baseX = (pose.x - map.x) * scale;
+        double baseY = map.height - (pose.y - map.y) * scale;
+        double angle = pose.t + angleMin;
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double stepCos = Math.cos(angleIncrement * step);
+        double stepSin = Math.sin(angleIncrement * step);
+        int n = 0;
+        for (int i = 0; i < count; i += step) {
+            float range = ranges[i];
+            if (range > 0 && !Float.isInfinite(range)) {
+                double r = range * scale;
+                out[n * 2] = (float) (baseX + r * cos);
+                // 像素坐标 y 轴向下
+                out[n * 2 + 1] = (float) (baseY - r * sin);
+                n++;
+            }
+            double nextCos = cos * stepCos - sin * stepSin;
+            sin = sin * stepCos + cos * stepSin;
+            cos = nextCos;
+        }
+        return n;
+    }
+
+    /**
+     * 在屏幕坐标系下绘制，须在 UI 线程调用，调用时 canvas 不能带地图矩阵
+     *
+     * @param matrix 地图像素到屏幕的矩阵
+     */
+    public void draw(Canvas canvas, Matrix matrix, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        int total = 0;
+        synchronized (mLock) {
+            if (mHead < 0) {
+                return;
+            }
+            // 从新到旧收集，抽稀时新帧优先占住格子
+            for (int i = 0; i < FRAMES; i++) {
+                int slot = (mHead - i + FRAMES) % FRAMES;
+                if (now - mTimes[slot] > MAX_AGE) {
+                    break;
+                }
+                int count = mCounts[slot];
+                matrix.mapPoints(mScreen, total * 2, mRing, slot * mMaxPoints * 2, count);
+                total += count;
+            }
+        }
+        mDrawnPoints = decimate(mScreen, total, width, height);
+        if (mDrawnPoints > 0) {
+            canvas.drawPoints(mDraw, 0, mDrawnPoints * 2, mPaint);
+        }
+    }
+
+    /**
+     * 每个屏幕格子只保留第一个落入的点，结果写入 mDraw
+     */
+    private int decimate(float[] points, int count, int width, int height) {
+        int columns = (width + CELL - 1) / CELL;
+        int rows = (height + CELL - 1) / CELL;
+        int words = (columns * rows + 63) >>> 6;
+        if (mCells.length < words) {
+            mCells = new long[words];
+        } else {
+            Arrays.fill(mCells, 0, words, 0);
+        }
+        int capacity = Math.min(count, columns * rows) * 2;
+        if (mDraw.length < capacity) {
+            mDraw = new float[capacity];
+        }
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            float x = points[i * 2];
+            float y = points[i * 2 + 1];
+            if (!(x >= 0 && x < width && y >= 0 && y < height)) {
+                continue;
+            }
+            int cell = ((int) y / CELL) * columns + (int) x / CELL;
+            long bit = 1L << cell;
+            if ((mCells[cell >>> 6] & bit) != 0) {
+                continue;
+            }
+            mCells[cell >>> 6] |= bit;
+            mDraw[n * 2] = x;
+            mDraw[n * 2 + 1] = y;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * 上一次绘制的点数
+     */
+    public int getDrawnPoints() {
+        return mDrawnPoints;
+    }
+
+    public long getReceived() {
+        synchronized (mLock) {
+            return mReceived;
+        }
+    }
+}
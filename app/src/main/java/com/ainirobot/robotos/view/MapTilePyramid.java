@@ -0,0 +1,261 @@
+package com.ainirobot.robotos.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+import com.ainirobot.robotos.maputils.MapPalette;
+import com.ainirobot.robotos.maputils.OccupancyGrid;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 地图瓦片金字塔，大地图按缩放选择层级，只绘制与视口相交的瓦片
+ * Multi-resolution tile pyramid for large maps. Level n is the map shrunk by
+ * 2^n with obstacle-preserving max-pooling, cut into {@link #TILE_SIZE} tiles.
+ * Levels are built on a background thread from the coarsest to the finest, so
+ * the first frames come from a coarse level and sharpen as finer ones land.
+ * Level 0 draws straight from the source bitmap unless it is too large for a
+ * single GPU texture.
+ */
+public class MapTilePyramid {
+    private static final String TAG = "MapTilePyramid";
+
+    public static final int TILE_SIZE = 256;
+    /**
+     * 小于该像素数的地图直接整图绘制
+     */
+    public static final int MIN_PIXELS = 1024 * 1024;
+    /**
+     * 超过该边长的位图无法作为单张纹理上传，第 0 层也切成瓦片
+     */
+    private static final int MAX_TEXTURE_SIZE = 4096;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    public interface OnLevelReadyListener {
+        /**
+         * 在构建线程回调
+         */
+        void onLevelReady(int level);
+    }
+
+    private final Bitmap mSource;
+    private final MapPalette mPalette;
+    private OccupancyGrid mGrid;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mLevelCount;
+    private final boolean mTileLevel0;
+    /**
+     * [level][row * cols + col]，第 0 层不切瓦片时为 null
+     */
+    private final Bitmap[][] mTiles;
+    /**
+     * 最精细的已就绪层级，等于 mLevelCount 时表示还没有可用层级
+     */
+    private volatile int mReadyLevel;
+    private volatile boolean mReleased;
+
+    private final Matrix mInverse = new Matrix();
+    private final RectF mViewport = new RectF();
+    private final RectF mDst = new RectF();
+    private final Rect mSrc = new Rect();
+    private final Paint mPaint = new Paint();
+
+    public static boolean isWorthwhile(Bitmap bitmap) {
+        return bitmap != null && (long) bitmap.getWidth() * bitmap.getHeight() >= MIN_PIXELS;
+    }
+
+    /**
+     * @param grid 与 source 内容一致的栅格，为 null 时按调色板从位图反推
+     */
+    public MapTilePyramid(Bitmap source, MapPalette palette, OccupancyGrid grid) {
+        mSource = source;
+        mPalette = palette != null ? palette : MapPalette.ROBOT;
+        mGrid = grid;
+        mWidth = source.getWidth();
+        mHeight = source.getHeight();
+        int levels = 1;
+        while (Math.max(mWidth, mHeight) >> (levels - 1) > TILE_SIZE) {
+            levels++;
+        }
+        mLevelCount = levels;
+        mTileLevel0 = Math.max(mWidth, mHeight) > MAX_TEXTURE_SIZE;
+        mTiles = new Bitmap[mLevelCount][];
+        mReadyLevel = mLevelCount;
+        mPaint.setFilterBitmap(true);
+    }
+
+    public int getLevelCount() {
+        return mLevelCount;
+    }
+
+    public void build(final OnLevelReadyListener listener) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                buildLevels(listener);
+                Log.d(TAG, "build: " + mWidth + "x" + mHeight + " levels=" + mLevelCount
+                        + " cost=" + (System.currentTimeMillis() - start) + "ms");
+            }
+        });
+    }
+
+    private void buildLevels(OnLevelReadyListener listener) {
+        OccupancyGrid[] grids = new OccupancyGrid[mLevelCount];
+        grids[0] = mGrid != null ? mGrid : OccupancyGrid.fromBitmap(mSource, mPalette);
+        mGrid = null;
+        for (int level = 1; level < mLevelCount && !mReleased; level++) {
+            grids[level] = grids[level - 1].downsample();
+        }
+        // 由粗到细，粗层先可用
+        for (int level = mLevelCount - 1; level >= 0 && !mReleased; level--) {
+            if (level > 0) {
+                mTiles[level] = renderTiles(grids[level]);
+            } else if (mTileLevel0) {
+                mTiles[0] = copyTiles(mSource);
+            }
+            grids[level] = null;
+            if (mReleased) {
+                recycle(mTiles[level]);
+                return;
+            }
+            mReadyLevel = level;
+            if (listener != null) {
+                listener.onLevelReady(level);
+            }
+        }
+    }
+
+    private Bitmap[] renderTiles(OccupancyGrid grid) {
+        int cols = tileCount(grid.getWidth());
+        int rows = tileCount(grid.getHeight());
+        int[] colors = new int[4];
+        for (int state = 0; state < colors.length; state++) {
+            colors[state] = mPalette.toColor(OccupancyGrid.greyOfState(state));
+        }
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        Bitmap[] tiles = new Bitmap[cols * rows];
+        for (int ty = 0; ty < rows; ty++) {
+            for (int tx = 0; tx < cols; tx++) {
+                int x0 = tx * TILE_SIZE;
+                int y0 = ty * TILE_SIZE;
+                int w = Math.min(TILE_SIZE, grid.getWidth() - x0);
+                int h = Math.min(TILE_SIZE, grid.getHeight() - y0);
+                int i = 0;
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) {
+                        pixels[i++] = colors[grid.get(x0 + x, y0 + y)];
+                    }
+                }
+                Bitmap tile = Bitmap.createBitmap(w, h, Bitmap.Config.RGB_565);
+                tile.setPixels(pixels, 0, w, 0, 0, w, h);
+                tiles[ty * cols + tx] = tile;
+            }
+        }
+        return tiles;
+    }
+
+    private Bitmap[] copyTiles(Bitmap source) {
+        int cols = tileCount(mWidth);
+        int rows = tileCount(mHeight);
+        Bitmap[] tiles = new Bitmap[cols * rows];
+        for (int ty = 0; ty < rows; ty++) {
+            for (int tx = 0; tx < cols; tx++) {
+                int x0 = tx * TILE_SIZE;
+                int y0 = ty * TILE_SIZE;
+                Bitmap tile = Bitmap.createBitmap(Math.min(TILE_SIZE, mWidth - x0),
+                        Math.min(TILE_SIZE, mHeight - y0), Bitmap.Config.RGB_565);
+                new Canvas(tile).drawBitmap(source, -x0, -y0, null);
+                tiles[ty * cols + tx] = tile;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * 按 matrix 绘制视口内的瓦片，canvas 须已 concat 同一个 matrix
+     *
+     * @return 还没有可用层级时返回 false，调用方自行绘制原图
+     */
+    public boolean draw(Canvas canvas, Matrix matrix, int viewWidth, int viewHeight) {
+        int ready = mReadyLevel;
+        if (ready >= mLevelCount || mReleased || !matrix.invert(mInverse)) {
+            return false;
+        }
+        float scale = matrix.mapRadius(1f);
+        int level = Math.max(levelFor(scale), ready);
+        // 放大时不做插值，栅格边缘保持清晰
+        mPaint.setFilterBitmap(scale < 1f);
+
+        mViewport.set(0, 0, viewWidth, viewHeight);
+        mInverse.mapRect(mViewport);
+        int levelWidth = (mWidth + (1 << level) - 1) >> level;
+        int levelHeight = (mHeight + (1 << level) - 1) >> level;
+        int cols = tileCount(levelWidth);
+        int rows = tileCount(levelHeight);
+        int span = TILE_SIZE << level;
+        int left = Math.max(0, (int) Math.floor(mViewport.left / span));
+        int top = Math.max(0, (int) Math.floor(mViewport.top / span));
+        int right = Math.min(cols - 1, (int) Math.floor(mViewport.right / span));
+        int bottom = Math.min(rows - 1, (int) Math.floor(mViewport.bottom / span));
+
+        Bitmap[] tiles = mTiles[level];
+        for (int ty = top; ty <= bottom; ty++) {
+            for (int tx = left; tx <= right; tx++) {
+                int x0 = tx * TILE_SIZE;
+                int y0 = ty * TILE_SIZE;
+                int w = Math.min(TILE_SIZE, levelWidth - x0);
+                int h = Math.min(TILE_SIZE, levelHeight - y0);
+                mDst.set(x0 << level, y0 << level, (x0 + w) << level, (y0 + h) << level);
+                if (tiles != null) {
+                    canvas.drawBitmap(tiles[ty * cols + tx], null, mDst, mPaint);
+                } else {
+                    mSrc.set(x0, y0, x0 + w, y0 + h);
+                    canvas.drawBitmap(mSource, mSrc, mDst, mPaint);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 每个屏幕像素对应不超过一个格子时的最粗层级
+     */
+    private int levelFor(float scale) {
+        int level = 0;
+        while (level + 1 < mLevelCount && scale * (1 << (level + 1)) <= 1f) {
+            level++;
+        }
+        return level;
+    }
+
+    public void release() {
+        mReleased = true;
+        for (Bitmap[] tiles : mTiles) {
+            recycle(tiles);
+        }
+    }
+
+    private static int tileCount(int size) {
+        return (size + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private static void recycle(Bitmap[] tiles) {
+        if (tiles == null) {
+            return;
+        }
+        for (Bitmap tile : tiles) {
+            if (tile != null) {
+                tile.recycle();
+            }
+        }
+    }
+}
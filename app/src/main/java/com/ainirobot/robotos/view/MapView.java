@@ -24,14 +24,15 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.WindowManager;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
@@ -41,9 +42,15 @@ import com.ainirobot.coreservice.client.RobotApi;
 import com.ainirobot.robotos.LogTools;
 import com.ainirobot.robotos.R;
 import com.ainirobot.robotos.maputils.Constant;
+import com.ainirobot.robotos.maputils.LaserScanSource;
+import com.ainirobot.robotos.maputils.MapPalette;
+import com.ainirobot.robotos.maputils.OccupancyGrid;
+import com.ainirobot.robotos.maputils.PlaceIndex;
+import com.ainirobot.robotos.maputils.PlaceStore;
 import com.ainirobot.robotos.maputils.Pose2d;
-import com.ainirobot.robotos.maputils.PoseBean;
+import com.ainirobot.robotos.maputils.RoverMap;
 import com.ainirobot.robotos.maputils.SpecialPlaceUtil;
+import com.ainirobot.robotos.maputils.TrajectoryRecorder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -54,11 +61,83 @@ public class MapView extends View {
     private static float sArrowSize = 20;
 
     private Bitmap mBitmap;
+    /**
+     * 离屏保存地图、网格、比例尺和点位，只有矩阵或数据变化时重绘
+     */
+    private Bitmap mStaticLayer;
+    private Canvas mStaticCanvas;
+    private final Matrix mStaticMatrix = new Matrix();
+    private volatile boolean mStaticDirty = true;
+    private boolean mStaticLayerValid = false;
+    /**
+     * 上一帧机器人图标的屏幕区域
+     */
+    private final Rect mArrowBounds = new Rect();
+    private final Rect mArrowNext = new Rect();
+    private final Rect mArrowDirty = new Rect();
+    private final float[] mArrowPoint = new float[2];
+    private final float[] mOriginPoints = new float[4];
+    private final Pose2d mOriginPose = new Pose2d(0, 0, 0);
+    /**
+     * 机器人图标屏幕位移和朝向变化都低于该值时不重绘
+     */
+    private static final float MIN_ORIGIN_MOVE = 1f;
+    private static final double MIN_ORIGIN_TURN = Math.toRadians(1);
+    private MapPalette mPalette;
+    /**
+     * 绘制与触摸过程中复用的对象，稳定帧内不再分配
+     */
+    private final Matrix mTempMatrix = new Matrix();
+    private final Matrix mHitMatrix = new Matrix();
+    private final Matrix mInverse = new Matrix();
+    private final Rect mTempRect = new Rect();
+    private final Rect mTextBounds = new Rect();
+    private final RectF mTempRectF = new RectF();
+    private final float[] mTouchPoint = new float[2];
+    private final PointF mMapPoint = new PointF();
+    private final PointF mMovePoint = new PointF();
+    private final PointF mPinchCenter = new PointF();
+    private final Paint mPlacePaint = new Paint();
+    private final Paint mCirclePaint = new Paint();
+    private final Paint mScalePaint = new Paint();
+    private final Paint mScaleBarPaint = new Paint();
+    private final List<String> mIndexLabels = new ArrayList<>();
+    private String mScaleBarContent;
+    private double mScaleBarContentValue = -1;
+    private Drawable mNormalIcon;
+    private Drawable mErrorIcon;
+    private Drawable mRobotIcon;
+    private Drawable mRobotBottomIcon;
+    private Drawable mRobotLaserIcon;
+    private MapTilePyramid mTilePyramid;
+    /**
+     * 已被替换、等待下一帧之后回收的瓦片金字塔，只在主线程访问
+     */
+    private final List<MapTilePyramid> mRetiredPyramids = new ArrayList<>();
+    /**
+     * 激光扫描图层，设置了扫描来源后才创建
+     */
+    private LaserScanLayer mLaserLayer;
+    private LaserScanSource mLaserSource;
+    /**
+     * 机器人轨迹，顶点变化时才重新生成线段
+     */
+    private TrajectoryRecorder mTrajectory;
+    private RoverMap mTrajectoryMap;
+    private int mTrajectoryVersion = -1;
+    private float[] mTrajectoryLines = new float[0];
+    private int mTrajectoryLineCount;
+    private final Paint mTrajectoryPaint = new Paint();
+    /**
+     * 导航前预览的路线，地图像素坐标下的线段
+     */
+    private float[] mRouteLines;
+    private final Paint mRoutePaint = new Paint();
     private Matrix matrix;
     private float scaleHistory = 1.0f;
     private float scaleMin = 0.5f;
     private Paint mPaint;
-    private PointF mPointDown;
+    private final PointF mPointDown = new PointF();
     private boolean mIsStraightLine;
     private EditPath mEditPath;
     private Pose2d mOrigin;
@@ -74,10 +153,28 @@ public class MapView extends View {
     private OnCollectListener mOnCollectListener;
     private OnPlaceClickListener mOnPlaceClickListener;
     private OnEditHappenListener mOnEditHappenListener;
+    private OnEditAppliedListener mOnEditAppliedListener;
     private List<Pose2d> mTargets = new ArrayList<>(); // preview when select patrol plan.
 
     private int width = 0;
     private int height = 0;
+    /**
+     * 视口裁剪点位时的屏幕像素余量，大图标高 204px，再留出文字的位置
+     */
+    private static final float PLACE_CULL_MARGIN = 300;
+    /**
+     * 小图标（80x102px）底边中点到上方两角的距离，屏幕像素
+     */
+    private static final float PLACE_ICON_REACH = (float) Math.hypot(80 / 2f, 102);
+    /**
+     * 网格线半边的最大条数
+     */
+    private static final int MAX_GRID_LINES = 1000;
+    private float[] mGridLines = new float[0];
+    private int mGridLineCount;
+    private double mGridSpace;
+    private int mGridWidth;
+    private int mGridHeight;
 
     private boolean estimateMove = false;
     private double resolution;
@@ -95,11 +192,6 @@ public class MapView extends View {
         return mPathList.size() != 0;
     }
 
-    private int screenWidth;
-    private int screenHeight;
-
-    private WindowManager wm;
-
     public boolean pathCanBack() {
         if (hasPath()) {
             return mPathCur != -1;
@@ -121,7 +213,7 @@ public class MapView extends View {
             if (mOnEditHappenListener != null) {
                 mOnEditHappenListener.onEditHappened();
             }
-            invalidate();
+            invalidateStatic();
         }
     }
 
@@ -131,7 +223,7 @@ public class MapView extends View {
             if (mOnEditHappenListener != null) {
                 mOnEditHappenListener.onEditHappened();
             }
-            invalidate();
+            invalidateStatic();
         }
     }
 
@@ -139,7 +231,7 @@ public class MapView extends View {
         //设置颜色即可
         mPathCur = -1;
         mPathList.clear();
-        invalidate();
+        invalidateStatic();
     }
 
     public void savePath() {
@@ -149,7 +241,7 @@ public class MapView extends View {
             mPathList.removeAll(subList);
         }
         for (EditPath editPath : mPathList) {
-            if (editPath.paint.getColor() == Constant.MAPCOLOR.BLOCK) {
+            if (editPath.color == Constant.MAPCOLOR.BLOCK) {
                 hasForbidLine = true;
             }
         }
@@ -159,7 +251,7 @@ public class MapView extends View {
     public void cancelPath() {
         mPathCur = -1;
         mPathList.clear();
-        invalidate();
+        invalidateStatic();
     }
 
     public void setStraightLine(boolean isStraightLine) {
@@ -188,7 +280,28 @@ public class MapView extends View {
     }
 
     public void setBitmap(Bitmap bitmap) {
+        setBitmap(bitmap, null, null);
+    }
+
+    /**
+     * @param palette 位图使用的调色板，为 null 时按机器人配色
+     * @param grid    与位图一致的栅格，大地图构建瓦片时可省去反推
+     */
+    public void setBitmap(final Bitmap bitmap, final MapPalette palette,
+                          final OccupancyGrid grid) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            // 换瓦片必须与 onDraw 在同一线程
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    setBitmap(bitmap, palette, grid);
+                }
+            });
+            return;
+        }
         mBitmap = bitmap;
+        mPalette = palette;
+        rebuildTiles(grid);
         if (mBitmap != null) {
             initOnce = true;
             scaleMin = Math.min(100f / mBitmap.getWidth(), 100f / mBitmap.getHeight());
@@ -196,22 +309,142 @@ public class MapView extends View {
             rotateHistory = 0;
             this.scaleBarRate = 1;
         }
-        invalidate();
+        invalidateStatic();
     }
 
+    /**
+     * 只刷新机器人图标新旧位置所在的区域，可在非主线程调用
+     */
     public void setOrigin(Pose2d origin) {
         mOrigin = origin;
+        Rect dirty = mArrowDirty;
+        dirty.set(mArrowBounds);
+        if (!arrowBounds(origin, mArrowNext)) {
+            postInvalidate();
+            return;
+        }
+        if (dirty.isEmpty()) {
+            dirty.set(mArrowNext);
+        } else {
+            dirty.union(mArrowNext);
+        }
+        postInvalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
+    }
+
+    /**
+     * 与 {@link #setOrigin} 相同，但屏幕上位移和朝向变化都低于阈值时直接忽略，须在主线程调用；
+     * 保存的是 origin 的拷贝，调用方可以复用 origin
+     *
+     * @return 是否刷新了机器人图标
+     */
+    public boolean updateOrigin(Pose2d origin) {
+        Pose2d current = mOrigin;
+        if (origin != null && current != null && mBitmap != null) {
+            float[] points = mOriginPoints;
+            points[0] = (float) current.x;
+            points[1] = (float) current.y;
+            points[2] = (float) origin.x;
+            points[3] = (float) origin.y;
+            matrix.mapPoints(points);
+            float dx = points[2] - points[0];
+            float dy = points[3] - points[1];
+            double turn = Math.abs(Math.IEEEremainder(origin.t - current.t, 2 * Math.PI));
+            if (dx * dx + dy * dy < MIN_ORIGIN_MOVE * MIN_ORIGIN_MOVE && turn < MIN_ORIGIN_TURN) {
+                return false;
+            }
+        }
+        setOrigin(origin == null ? null : mOriginPose.set(origin));
+        return true;
+    }
+
+    /**
+     * 设置激光扫描来源，叠加显示在地图上；source 为 null 时停止并移除图层
+     *
+     * @param map 扫描点换算像素坐标用的地图，须与当前显示的地图一致
+     */
+    public void setLaserScanSource(LaserScanSource source, RoverMap map) {
+        if (mLaserSource != null) {
+            mLaserSource.stop();
+            mLaserSource = null;
+        }
+        if (source == null) {
+            if (mLaserLayer != null) {
+                mLaserLayer.clear();
+            }
+            invalidate();
+            return;
+        }
+        if (mLaserLayer == null) {
+            mLaserLayer = new LaserScanLayer();
+            mLaserLayer.setView(this);
+        }
+        mLaserLayer.setMap(map);
+        mLaserSource = source;
+        source.start(mLaserLayer);
+    }
+
+    /**
+     * 显示最近 {@link TrajectoryRecorder#DISPLAY_WINDOW} 内的轨迹，recorder 为 null 时不显示
+     *
+     * @param map 世界坐标换算像素坐标用的地图
+     */
+    public void setTrajectory(TrajectoryRecorder recorder, RoverMap map) {
+        mTrajectory = recorder;
+        mTrajectoryMap = map;
+        mTrajectoryVersion = -1;
+        mTrajectoryLineCount = 0;
         invalidate();
     }
 
+    /**
+     * 显示规划出的预览路线，lines 为 {@link com.ainirobot.robotos.maputils.PathPlanner.Path#toLines()} 的结果，null 时清除
+     */
+    public void setRoutePreview(float[] lines) {
+        mRouteLines = lines;
+        invalidate();
+    }
+
+    public LaserScanLayer getLaserLayer() {
+        return mLaserLayer;
+    }
+
     public void setResolution(double resolution) {
 //        Log.d(TAG,"setResolution: " + resolution);
         this.resolution = resolution;
+        mStaticDirty = true;
+    }
+
+    /**
+     * 地图、网格、比例尺、点位等静态内容变化时调用，下一帧重绘离屏图层
+     */
+    private void invalidateStatic() {
+        mStaticDirty = true;
+        invalidate();
+    }
+
+    /**
+     * 机器人图标在屏幕上的外接矩形，图标随角度旋转，按对角线估算
+     */
+    private boolean arrowBounds(Pose2d pose, Rect out) {
+        if (pose == null || mBitmap == null || scaleHistory <= 0) {
+            out.setEmpty();
+            return false;
+        }
+        float[] point = mArrowPoint;
+        point[0] = (float) pose.x;
+        point[1] = (float) pose.y;
+        matrix.mapPoints(point);
+        // drawArrow 中各图标的尺寸按 scaleHistory 换算，这里换回屏幕像素
+        double size = Math.max(Math.max(1200 * scaleHistory * resolution, 362), 150);
+        float radius = (float) (size / 2 * matrix.mapRadius(1f) / scaleHistory * 1.5f) + 2;
+        out.set((int) (point[0] - radius), (int) (point[1] - radius),
+                (int) (point[0] + radius), (int) (point[1] + radius));
+        return true;
     }
 
     public void setTargets(List<Pose2d> targets) {
         mTargets = targets;
-        invalidate();
+        invalidateStatic();
     }
 
     public void setMode(MapMode mode) {
@@ -243,10 +476,21 @@ public class MapView extends View {
         void onEditHappened();
     }
 
+    /**
+     * 编辑路径画进位图后回调，区域为地图像素 [left, right) x [top, bottom)
+     */
+    public interface OnEditAppliedListener {
+        void onEditApplied(int left, int top, int right, int bottom);
+    }
+
     public void registOnEditHappendListener(OnEditHappenListener listener) {
         mOnEditHappenListener = listener;
     }
 
+    public void setOnEditAppliedListener(OnEditAppliedListener listener) {
+        mOnEditAppliedListener = listener;
+    }
+
     public void registOnPlaceClickListener(OnPlaceClickListener listener) {
         mOnPlaceClickListener = listener;
     }
@@ -267,7 +511,7 @@ public class MapView extends View {
     public void editBack() {
         if (mPathList.size() > 0) {
             mPathList.remove(mPathList.size() - 1);
-            invalidate();
+            invalidateStatic();
         }
     }
 
@@ -275,41 +519,102 @@ public class MapView extends View {
         mEditWidth = width;
     }
 
+    /**
+     * 把编辑路径画进位图，并通知 {@link OnEditAppliedListener} 被改动的区域
+     */
     public Bitmap getEditedBitmap() {
         if (mBitmap != null) {
             Canvas canvas = new Canvas(mBitmap);
+            RectF bounds = new RectF();
+            Rect edited = new Rect();
+            edited.setEmpty();
             for (EditPath editPath : mPathList) {
                 canvas.drawPath(editPath.path, editPath.paint);
+                editPath.path.computeBounds(bounds, true);
+                // 描边向外扩出半个线宽
+                float half = editPath.paint.getStrokeWidth() / 2 + 1;
+                edited.union((int) Math.floor(bounds.left - half),
+                        (int) Math.floor(bounds.top - half),
+                        (int) Math.ceil(bounds.right + half),
+                        (int) Math.ceil(bounds.bottom + half));
             }
             mPathList.clear();
+            if (!edited.isEmpty() && mOnEditAppliedListener != null) {
+                mOnEditAppliedListener.onEditApplied(Math.max(edited.left, 0),
+                        Math.max(edited.top, 0), Math.min(edited.right, mBitmap.getWidth()),
+                        Math.min(edited.bottom, mBitmap.getHeight()));
+            }
             hasForbidLine = false;
+            rebuildTiles(null);
+            mStaticDirty = true;
+            postInvalidate();
         }
         return mBitmap;
     }
 
+    /**
+     * 大地图重新构建瓦片金字塔，每完成一层刷新一次
+     */
+    private void rebuildTiles(OccupancyGrid grid) {
+        if (mTilePyramid != null) {
+            // 上一帧可能还引用着旧瓦片，等下一帧画完再回收
+            mRetiredPyramids.add(mTilePyramid);
+            mTilePyramid = null;
+        }
+        if (MapTilePyramid.isWorthwhile(mBitmap)) {
+            mTilePyramid = new MapTilePyramid(mBitmap, mPalette, grid);
+            mTilePyramid.build(new MapTilePyramid.OnLevelReadyListener() {
+                @Override
+                public void onLevelReady(int level) {
+                    mStaticDirty = true;
+                    postInvalidate();
+                }
+            });
+        }
+    }
+
     private void init() {
         mPaint = new Paint();
         matrix = new Matrix();
-//        matrix.setTranslate(0, 0);
-
-        wm = (WindowManager) getContext().getSystemService(
-                Context.WINDOW_SERVICE);
 
+        mPlacePaint.setColor(Color.WHITE);
+        mPlacePaint.setTextAlign(Paint.Align.CENTER);
+        mCirclePaint.setAntiAlias(false);
+        mTrajectoryPaint.setColor(Color.YELLOW);
+        mTrajectoryPaint.setAntiAlias(true);
+        mTrajectoryPaint.setStrokeCap(Paint.Cap.ROUND);
+        mRoutePaint.setColor(Color.CYAN);
+        mRoutePaint.setAntiAlias(true);
+        mRoutePaint.setStrokeCap(Paint.Cap.ROUND);
+        mScalePaint.setColor(Color.WHITE);
+        mScalePaint.setStrokeWidth((float) 1.0);
+        mScalePaint.setAlpha(100);
+        mScaleBarPaint.setColor(Color.WHITE);
+        mScaleBarPaint.setStrokeWidth((float) 3.0);
+        mScaleBarPaint.setTextSize(30);
+
+        Context context = getContext();
+        mNormalIcon = ContextCompat.getDrawable(context, R.drawable.normal_bubble_s);
+        mErrorIcon = ContextCompat.getDrawable(context, R.drawable.map_point_error_icon);
+        mRobotIcon = ContextCompat.getDrawable(context, R.drawable.robot);
+        mRobotBottomIcon = ContextCompat.getDrawable(context, R.drawable.robot_bottom);
+        mRobotLaserIcon = ContextCompat.getDrawable(context, R.drawable.robot_laser);
+//        matrix.setTranslate(0, 0);
     }
 
-    private PointF lastPoint = new PointF();
+    private final PointF lastPoint = new PointF();
     private volatile boolean isPinch = false;
     private float lastSpace = 0;
     private float lastRotate = 0;
     private float rotateHistory = 0;
 
-    private PointF invertPoint(Matrix matrix, float x, float y) {
-        float[] src = new float[]{x, y};
-        float[] dst = new float[2];
-        Matrix inv = new Matrix();
-        matrix.invert(inv);
-        inv.mapPoints(dst, src);
-        return new PointF(dst[0], dst[1]);
+    private PointF invertPoint(Matrix matrix, float x, float y, PointF out) {
+        matrix.invert(mInverse);
+        mTouchPoint[0] = x;
+        mTouchPoint[1] = y;
+        mInverse.mapPoints(mTouchPoint);
+        out.set(mTouchPoint[0], mTouchPoint[1]);
+        return out;
     }
 
     private boolean editHappend = false;
@@ -317,7 +622,6 @@ public class MapView extends View {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        Log.d(TAG, "onTouchEvent mode: " + mMode + " mIsStraightLine: " + mIsStraightLine);
 //        if (mEditModuleType == Navigator.MODULE_TYPE.EDIT_MAP_GUIDE
 //                || mEditModuleType == Navigator.MODULE_TYPE.EDIT_MAP_LANGUAGE) {
 //            return true;
@@ -325,7 +629,7 @@ public class MapView extends View {
         if (mMode == MapMode.COLLECT) {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
-                    PointF pointDown = invertPoint(matrix, event.getX(), event.getY());
+                    PointF pointDown = invertPoint(matrix, event.getX(), event.getY(), mMapPoint);
                     mCollector = new Pose2d(pointDown.x, pointDown.y, 0);
                     estimateMove = false;
 
@@ -340,7 +644,7 @@ public class MapView extends View {
                     break;
 
                 case MotionEvent.ACTION_MOVE:
-                    PointF pointMove = invertPoint(matrix, event.getX(), event.getY());
+                    PointF pointMove = invertPoint(matrix, event.getX(), event.getY(), mMapPoint);
                     if (mCollector != null) {
                         estimateMove = true;
                         mCollector.t = 0 - Math.atan2((pointMove.y - mCollector.y),
@@ -356,7 +660,7 @@ public class MapView extends View {
             switch (event.getAction() & MotionEvent.ACTION_MASK) {
                 case MotionEvent.ACTION_DOWN:
                     mEditPath = new EditPath(mEditColor, mEditWidth);
-                    mPointDown = invertPoint(matrix, event.getX(), event.getY());
+                    invertPoint(matrix, event.getX(), event.getY(), mPointDown);
                     mEditPath.path.moveTo(mPointDown.x, mPointDown.y);
 
                     lastPoint.set(event.getX(), event.getY());
@@ -365,6 +669,7 @@ public class MapView extends View {
                     break;
                 case MotionEvent.ACTION_UP:
                     if (editHappend) {
+                        mStaticDirty = true;
                         if (mPathCur == mPathList.size() - 1) {
                             //没有过撤销
                             mPathList.add(mEditPath);
@@ -386,7 +691,7 @@ public class MapView extends View {
 
                 case MotionEvent.ACTION_MOVE:
                     if (!isPinch && !twoPointer) {
-                        PointF pointMove = invertPoint(matrix, event.getX(), event.getY());
+                        PointF pointMove = invertPoint(matrix, event.getX(), event.getY(), mMapPoint);
                         if (mEditPath != null) {
                             if (curLines() && mIsStraightLine) {
                                 mEditPath.path.reset();
@@ -397,11 +702,12 @@ public class MapView extends View {
                         }
                     }
 
-                    PointF point = new PointF(event.getX(), event.getY());
+                    PointF point = mMovePoint;
+                    point.set(event.getX(), event.getY());
                     if (isPinch && mBitmap != null) {
                         float space = pinchSpace(event);
                         float rotate = pinchRotation(event);
-                        PointF center = pinchCenter(event);
+                        PointF center = pinchCenter(event, mPinchCenter);
 
                         float scale = space / lastSpace;
 
@@ -426,7 +732,7 @@ public class MapView extends View {
 
                         float dx = point.x - lastPoint.x;
                         float dy = point.y - lastPoint.y;
-                        lastPoint = point;
+                        lastPoint.set(point);
                         matrix.postTranslate(dx, dy);
                     }
 
@@ -439,7 +745,7 @@ public class MapView extends View {
                     twoPointer = true;
                     lastSpace = pinchSpace(event);
                     lastRotate = pinchRotation(event);
-                    lastPoint = pinchCenter(event);
+                    pinchCenter(event, lastPoint);
                     break;
                 case MotionEvent.ACTION_POINTER_UP:
                     isPinch = false;
@@ -459,23 +765,21 @@ public class MapView extends View {
                     isPinch = true;
                     lastSpace = pinchSpace(event);
                     lastRotate = pinchRotation(event);
-                    lastPoint = pinchCenter(event);
+                    pinchCenter(event, lastPoint);
                     break;
                 case MotionEvent.ACTION_POINTER_UP:
                     isPinch = false;
                     break;
                 case MotionEvent.ACTION_MOVE:
-                    PointF point = new PointF(event.getX(), event.getY());
+                    PointF point = mMovePoint;
+                    point.set(event.getX(), event.getY());
                     if (isPinch && mBitmap != null) {
                         float space = pinchSpace(event);
                         float rotate = pinchRotation(event);
-                        PointF center = pinchCenter(event);
+                        PointF center = pinchCenter(event, mPinchCenter);
 
                         float scale = space / lastSpace;
 
-                        Log.d(TAG, "onTouchEvent scale: " + scale);
-                        Log.d(TAG, "onTouchEvent getCurScaleBarValue: " + this.getCurScaleBarValue());
-
                         if (scale > 1 && (this.getCurScaleBarValue() == BAR_MAX_SCALE_VALUE)) {
                             //当比例尺为5CM时，不再支持放大
                             break;
@@ -497,7 +801,7 @@ public class MapView extends View {
                     }
                     float dx = point.x - lastPoint.x;
                     float dy = point.y - lastPoint.y;
-                    lastPoint = point;
+                    lastPoint.set(point);
                     matrix.postTranslate(dx, dy);
                     invalidate();
                     break;
@@ -510,38 +814,26 @@ public class MapView extends View {
                     lastPoint.set(event.getX(), event.getY());
                     break;
                 case MotionEvent.ACTION_UP:
-                    if (poseBeans != null) {
-                        for (int i = 0; i < poseBeans.size(); i++) {
-                            PoseBean bean = poseBeans.get(i);
-                            Rect rect = getRect(bean.getPose(), false);
-                            Matrix tmpMatrix = new Matrix();
-                            tmpMatrix.postRotate(-rotateHistory, (float) bean.getPose().x, (float) bean.getPose().y);
-                            Matrix myMat = new Matrix();
-                            myMat.setConcat(matrix, tmpMatrix);
-                            RectF rectf = new RectF(rect);
-                            myMat.mapRect(rectf);
-                            if (isInRectf(rectf, event)) {
-                                String placeName = bean.getName();
-                                LogTools.info("placeName"+placeName);
-
-                                if (SpecialPlaceUtil.isNavigatorPoint(Constant.NavigatorPoint.POINT1,
-                                        placeName) || SpecialPlaceUtil
-                                        .isNavigatorPoint(Constant.NavigatorPoint.POINT2,
-                                                placeName)) {
-                                    break;
-                                }
-                                if (RobotApi.getInstance().isChargePileExits() &&
-                                        SpecialPlaceUtil.isLocatePole(placeName)) {
-                                    break;
-                                }
-                                bigIconIndex = i;
-                                if (mOnPlaceClickListener != null) {
-                                    mOnPlaceClickListener.onPlaceClick(bean.getName());
-                                }
-                                invalidate();
-                            }
-
+                    int hit = findPlaceAt(event);
+                    if (hit >= 0) {
+                        String placeName = mPlaces.getName(hit);
+                        LogTools.info("placeName"+placeName);
+
+                        if (SpecialPlaceUtil.isNavigatorPoint(Constant.NavigatorPoint.POINT1,
+                                placeName) || SpecialPlaceUtil
+                                .isNavigatorPoint(Constant.NavigatorPoint.POINT2,
+                                        placeName)) {
+                            break;
+                        }
+                        if (RobotApi.getInstance().isChargePileExits() &&
+                                SpecialPlaceUtil.isLocatePole(placeName)) {
+                            break;
+                        }
+                        bigIconIndex = hit;
+                        if (mOnPlaceClickListener != null) {
+                            mOnPlaceClickListener.onPlaceClick(placeName);
                         }
+                        invalidateStatic();
                     }
                     break;
 
@@ -549,17 +841,18 @@ public class MapView extends View {
                     isPinch = true;
                     lastSpace = pinchSpace(event);
                     lastRotate = pinchRotation(event);
-                    lastPoint = pinchCenter(event);
+                    pinchCenter(event, lastPoint);
                     break;
                 case MotionEvent.ACTION_POINTER_UP:
                     isPinch = false;
                     break;
                 case MotionEvent.ACTION_MOVE:
-                    PointF point = new PointF(event.getX(), event.getY());
+                    PointF point = mMovePoint;
+                    point.set(event.getX(), event.getY());
                     if (isPinch && mBitmap != null) {
                         float space = pinchSpace(event);
                         float rotate = pinchRotation(event);
-                        PointF center = pinchCenter(event);
+                        PointF center = pinchCenter(event, mPinchCenter);
 
                         float scale = space / lastSpace;
 
@@ -584,7 +877,7 @@ public class MapView extends View {
                     }
                     float dx = point.x - lastPoint.x;
                     float dy = point.y - lastPoint.y;
-                    lastPoint = point;
+                    lastPoint.set(point);
                     matrix.postTranslate(dx, dy);
                     invalidate();
                     break;
@@ -600,6 +893,62 @@ public class MapView extends View {
         return (mEditColor == Constant.MAPCOLOR.BLOCK || mEditColor == Constant.MAPCOLOR.OBSTACLE);
     }
 
+    /**
+     * 点击位置命中的点位，多个图标重叠时取图标中心离点击最近的一个，没有命中返回 -1
+     */
+    private int findPlaceAt(MotionEvent event) {
+        PlaceStore places = mPlaces;
+        if (places == null || places.isEmpty()) {
+            return -1;
+        }
+        int[] candidates = placeBuffer(places.size());
+        int count;
+        PlaceIndex index = mPlaceIndex;
+        if (index != null && index.isFor(places)) {
+            // 图标以点位为底边中点随地图旋转，任意角度下都落在半径为锚点到图标角的圆内
+            PointF point = invertPoint(matrix, event.getX(), event.getY(), mMapPoint);
+            float radius = Math.max(PLACE_ICON_REACH / scaleHistory, 6) + 2;
+            count = index.query(point.x - radius, point.y - radius,
+                    point.x + radius, point.y + radius, candidates);
+        } else {
+            count = places.size();
+            for (int i = 0; i < count; i++) {
+                candidates[i] = i;
+            }
+        }
+
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            int i = candidates[k];
+            float x = (float) places.getX(i);
+            float y = (float) places.getY(i);
+            Rect rect = getRect(x, y, false, mTempRect);
+            mTempMatrix.setRotate(-rotateHistory, x, y);
+            mHitMatrix.setConcat(matrix, mTempMatrix);
+            RectF rectf = mTempRectF;
+            rectf.set(rect);
+            mHitMatrix.mapRect(rectf);
+            if (isInRectf(rectf, event)) {
+                float dx = rectf.centerX() - event.getX();
+                float dy = rectf.centerY() - event.getY();
+                float distance = dx * dx + dy * dy;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int[] placeBuffer(int size) {
+        if (mPlaceBuffer.length < size) {
+            mPlaceBuffer = new int[size];
+        }
+        return mPlaceBuffer;
+    }
+
     private boolean isInRectf(RectF rectf, MotionEvent event) {
         float x = event.getX();
         float y = event.getY();
@@ -646,13 +995,20 @@ public class MapView extends View {
     private class EditPath {
         Path path;
         Paint paint;
+        /**
+         * 编辑颜色，按本地配色（{@link Constant.MAPCOLOR}）给出
+         */
+        int color;
 
         EditPath(int color, float width) {
             this.path = new Path();
             this.paint = new Paint();
+            this.color = color;
             this.paint.setAntiAlias(false);
 //            this.paint.setMaskFilter(new BlurMaskFilter(2, BlurMaskFilter.Blur.INNER));
-            this.paint.setColor(color);
+            // 画进位图的颜色须与地图配色一致，写回栅格时才能还原成同一状态
+            MapPalette palette = mPalette != null ? mPalette : MapPalette.ROBOT;
+            this.paint.setColor(MapPalette.LOCAL.convertTo(palette, color));
             this.paint.setStyle(Paint.Style.STROKE);
             this.paint.setStrokeWidth(width);
             Log.d(TAG, "EditPath width: " + width);
@@ -710,39 +1066,145 @@ public class MapView extends View {
     public void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        screenWidth = wm.getDefaultDisplay().getWidth();
-        screenHeight = wm.getDefaultDisplay().getHeight();
-
         if (mBitmap == null) {
             return;
         }
 
-        canvas.save();
-
         initMatrix();
+        boolean changed = mStaticDirty || !mStaticMatrix.equals(matrix);
+        mStaticDirty = false;
+        if (changed) {
+            //拖动缩放过程中每帧都在变，直接绘制，停下来之后再写入离屏图层
+            mStaticMatrix.set(matrix);
+            mStaticLayerValid = false;
+            drawStatic(canvas);
+        } else if (ensureStaticLayer()) {
+            if (!mStaticLayerValid) {
+                mStaticCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                drawStatic(mStaticCanvas);
+                mStaticLayerValid = true;
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        } else {
+            drawStatic(canvas);
+        }
+
+        //编辑中的路径、定位拖拽和机器人位置每帧都会变，不进入离屏图层
+        canvas.save();
         canvas.concat(matrix);
-        canvas.drawBitmap(mBitmap, 0, 0, mPaint);
+        if (mEditPath != null) {
+            canvas.drawPath(mEditPath.path, mEditPath.paint);
+        }
+        drawCollector(canvas);
+        drawTrajectory(canvas);
+        drawRoute(canvas);
+        drawOrigin(canvas);
+        canvas.restore();
+        if (mLaserSource != null) {
+            mLaserLayer.draw(canvas, matrix, getWidth(), getHeight());
+        }
+        arrowBounds(mOrigin, mArrowBounds);
+        if (!mRetiredPyramids.isEmpty()) {
+            final MapTilePyramid[] retired = mRetiredPyramids.toArray(
+                    new MapTilePyramid[mRetiredPyramids.size()]);
+            mRetiredPyramids.clear();
+            // 本帧已不再引用这些瓦片，等本次遍历结束后回收
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    for (MapTilePyramid pyramid : retired) {
+                        pyramid.release();
+                    }
+                }
+            });
+        }
+    }
 
-        if (mPathList.size() != 0) {
-            for (int i = 0; i <= mPathCur; i++) {
-                canvas.drawPath(mPathList.get(i).path, mPathList.get(i).paint);
+    private boolean ensureStaticLayer() {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) {
+            return false;
+        }
+        if (mStaticLayer == null || mStaticLayer.getWidth() != w || mStaticLayer.getHeight() != h) {
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
             }
+            mStaticLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            mStaticCanvas = new Canvas(mStaticLayer);
+            mStaticLayerValid = false;
         }
+        return true;
+    }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        setLaserScanSource(null, null);
+        for (MapTilePyramid pyramid : mRetiredPyramids) {
+            pyramid.release();
+        }
+        mRetiredPyramids.clear();
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticCanvas = null;
+        }
+    }
 
-        if (mEditPath != null) {
-            canvas.drawPath(mEditPath.path, mEditPath.paint);
+    private void drawStatic(Canvas canvas) {
+        canvas.save();
+        canvas.concat(matrix);
+        if (mTilePyramid == null || !mTilePyramid.draw(canvas, matrix, width, height)) {
+            canvas.drawBitmap(mBitmap, 0, 0, mPaint);
         }
 
+        if (mPathList.size() != 0) {
+            for (int i = 0; i <= mPathCur; i++) {
+                canvas.drawPath(mPathList.get(i).path, mPathList.get(i).paint);
+            }
+        }
         canvas.restore();
+
         drawScale(canvas);    //网格线不进行矩阵转换
         drwaScaleBar(canvas); //网格线比例尺不进行矩阵转换
 
+        canvas.save();
         canvas.concat(matrix);
-        drawCollector(canvas);
         drawTargets(canvas);
-        drawPlaceList(poseBeans, canvas);
-        drawOrigin(canvas);
+        drawPlaceList(mPlaces, canvas);
+        canvas.restore();
+    }
+
+    private void drawTrajectory(Canvas canvas) {
+        TrajectoryRecorder recorder = mTrajectory;
+        if (recorder == null) {
+            return;
+        }
+        int version = recorder.getVersion();
+        if (version != mTrajectoryVersion) {
+            mTrajectoryVersion = version;
+            int capacity = recorder.getLinesCapacity();
+            if (mTrajectoryLines.length < capacity) {
+                mTrajectoryLines = new float[capacity + capacity / 2];
+            }
+            mTrajectoryLineCount = recorder.toLines(mTrajectoryMap,
+                    System.currentTimeMillis() - TrajectoryRecorder.DISPLAY_WINDOW,
+                    mTrajectoryLines);
+        }
+        if (mTrajectoryLineCount > 0) {
+            // 地图坐标系下绘制，线宽随缩放反向调整，屏幕上保持 3px
+            mTrajectoryPaint.setStrokeWidth(3 / scaleHistory);
+            canvas.drawLines(mTrajectoryLines, 0, mTrajectoryLineCount, mTrajectoryPaint);
+        }
+    }
+
+    private void drawRoute(Canvas canvas) {
+        float[] lines = mRouteLines;
+        if (lines != null && lines.length > 0) {
+            mRoutePaint.setStrokeWidth(4 / scaleHistory);
+            canvas.drawLines(lines, mRoutePaint);
+        }
     }
 
     private void drawOrigin(Canvas canvas) {
@@ -768,89 +1230,144 @@ public class MapView extends View {
         if (mTargets != null) {
             for (int i = 0; i < mTargets.size(); i++) {
                 Pose2d target = mTargets.get(i);
-                drawCircleText(canvas, Color.RED, (float) target.x, (float) target.y, "" + i);
+                drawCircleText(canvas, Color.RED, (float) target.x, (float) target.y, indexLabel(i));
             }
         }
     }
 
     private int bigIconIndex = -1;//一次只有一个bigIconIndex
-    private List<PoseBean> poseBeans;
+    private PlaceStore mPlaces;
+    private PlaceIndex mPlaceIndex;
+    /**
+     * 离障碍物过近的点位，按 mLowClearanceStore 的下标标记，按错误点位显示
+     */
+    private boolean[] mLowClearance;
+    private PlaceStore mLowClearanceStore;
+    private int[] mPlaceBuffer = new int[0];
+    private final PlaceLabelLayout mLabelLayout = new PlaceLabelLayout();
 
-    //加载所有点位信息
-    public void setPoseBeans(List<PoseBean> poseBeans) {
-        printPlaceBean(poseBeans);
-        this.poseBeans = poseBeans;
-        invalidate();
+    //加载所有点位信息，须在主线程调用
+    public void setPlaces(PlaceStore places) {
+        printPlaces(places);
+        mPlaceIndex = places == null ? null : new PlaceIndex(places);
+        mLabelLayout.invalidate();
+        this.mPlaces = places;
+        invalidateStatic();
     }
 
-    public List<PoseBean> getPoseBeans() {
-        return this.poseBeans;
+    public PlaceStore getPlaces() {
+        return this.mPlaces;
     }
 
-    public boolean haPosBeans() {
-        return poseBeans != null && poseBeans.size() > 0;
+    /**
+     * 标记离障碍物过近的点位，绘制时与状态异常的点位使用相同图标
+     *
+     * @param places  indices 所对应的点位列表，与当前显示的列表不是同一个时忽略
+     * @param indices 过近点位的下标
+     */
+    public void setLowClearancePlaces(PlaceStore places, int[] indices) {
+        boolean[] flags = new boolean[places.size()];
+        for (int index : indices) {
+            flags[index] = true;
+        }
+        mLowClearance = flags;
+        mLowClearanceStore = places;
+        invalidateStatic();
+    }
+
+    private boolean isErrorPlace(PlaceStore places, int index) {
+        return places.getStatus(index) != 0
+                || (mLowClearanceStore == places && mLowClearance[index]);
+    }
+
+    public boolean hasPlaces() {
+        return mPlaces != null && !mPlaces.isEmpty();
     }
 
     public void resetBigIconIndex() {
         bigIconIndex = -1;
-        invalidate();
+        invalidateStatic();
     }
 
-    public void drawPlaceList(List<PoseBean> poseBeans, Canvas canvas) {
-        if (poseBeans != null) {
+    public void drawPlaceList(PlaceStore places, Canvas canvas) {
+        if (places != null) {
             boolean hasBigIcon = false;
-            for (int i = 0; i < poseBeans.size(); i++) {
+            boolean chargePileExits = RobotApi.getInstance().isChargePileExits();
+            mLabelLayout.update(places, scaleHistory, rotateHistory, bigIconIndex,
+                    chargePileExits ? Definition.START_CHARGE_PILE_POSE : null);
+            int[] visible = placeBuffer(places.size());
+            int count = visiblePlaces(places, visible);
+            for (int k = 0; k < count; k++) {
+                int i = visible[k];
                 if (i == bigIconIndex) {
                     hasBigIcon = true;
                     continue;
                 }
-                PoseBean poseBean = poseBeans.get(i);
-                if (RobotApi.getInstance().isChargePileExits() &&
-                        Definition.START_CHARGE_PILE_POSE.equals(poseBean.getName())) {
+                String name = places.getName(i);
+                if (chargePileExits && Definition.START_CHARGE_PILE_POSE.equals(name)) {
                     continue;
                 }
-                Drawable drawable =
-                        ContextCompat.getDrawable(getContext(), poseBean.getPose().status == 0 ?
-                                R.drawable.normal_bubble_s : R.drawable.map_point_error_icon);
-                drawPlace(canvas, poseBean.getPose(), poseBean.getName(), drawable, false);
+                Drawable drawable = isErrorPlace(places, i) ? mErrorIcon : mNormalIcon;
+                drawPlace(canvas, (float) places.getX(i), (float) places.getY(i), name, drawable,
+                        false, mLabelLayout.isVisible(i));
             }
             if (hasBigIcon) {
-                PoseBean poseBean = poseBeans.get(bigIconIndex);
-                Drawable drawable =
-                        ContextCompat.getDrawable(getContext(), poseBean.getPose().status == 0 ?
-                                R.drawable.normal_bubble_s : R.drawable.map_point_error_icon);
-                drawPlace(canvas, poseBeans.get(bigIconIndex).getPose(), poseBeans.get(bigIconIndex).getName(), drawable, true);
+                int i = bigIconIndex;
+                Drawable drawable = isErrorPlace(places, i) ? mErrorIcon : mNormalIcon;
+                drawPlace(canvas, (float) places.getX(i), (float) places.getY(i),
+                        places.getName(i), drawable, true, mLabelLayout.isVisible(i));
             }
         }
     }
 
 
-    private void drawPlace(Canvas canvas, Pose2d pose2d, String name, Drawable icon, boolean bigIcon) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(-rotateHistory, (float) pose2d.x, (float) pose2d.y);
+    /**
+     * 视口内（含图标和文字的余量）的点位下标，按列表顺序写入 out
+     */
+    private int visiblePlaces(PlaceStore places, int[] out) {
+        PlaceIndex index = mPlaceIndex;
+        if (index == null || !index.isFor(places) || !matrix.invert(mInverse)) {
+            int count = places.size();
+            for (int i = 0; i < count; i++) {
+                out[i] = i;
+            }
+            return count;
+        }
+        RectF viewport = mTempRectF;
+        viewport.set(-PLACE_CULL_MARGIN, -PLACE_CULL_MARGIN,
+                getWidth() + PLACE_CULL_MARGIN, getHeight() + PLACE_CULL_MARGIN);
+        mInverse.mapRect(viewport);
+        return index.query(viewport.left, viewport.top, viewport.right, viewport.bottom, out);
+    }
+
+    /**
+     * @param drawLabel 名称是否通过了 {@link PlaceLabelLayout} 的避让
+     */
+    private void drawPlace(Canvas canvas, float x, float y, String name, Drawable icon,
+                           boolean bigIcon, boolean drawLabel) {
+        mTempMatrix.setRotate(-rotateHistory, x, y);
         canvas.save();
-        canvas.concat(matrix);
-        Rect rectIcon = getRect(pose2d, bigIcon);
+        canvas.concat(mTempMatrix);
+        Rect rectIcon = getRect(x, y, bigIcon, mTempRect);
         //绘制icon
         icon.setBounds(rectIcon);
         icon.draw(canvas);
+        if (!drawLabel) {
+            canvas.restore();
+            return;
+        }
 
         //绘制text
         int textSize = (int) Math.ceil(Math.max(32 / scaleHistory, 3));
 //        Log.d(TAG,"drawPlace name: " + name);
 //        Log.d(TAG,"drawPlace textSize: " + textSize);
         int dTop = 8;
-        Paint mPaint = new Paint();
-        mPaint.setTextSize(textSize);
-        mPaint.setColor(Color.WHITE);
-        mPaint.setTextAlign(Paint.Align.CENTER);
-        canvas.drawText(name, (float) pose2d.x, (rectIcon.top - Math.max(dTop / scaleHistory, 1)), mPaint);
+        mPlacePaint.setTextSize(textSize);
+        canvas.drawText(name, x, (rectIcon.top - Math.max(dTop / scaleHistory, 1)), mPlacePaint);
         canvas.restore();
     }
 
-    private Rect getRect(Pose2d pose2d, boolean bigIcon) {
-        float x = (float) pose2d.x;
-        float y = (float) pose2d.y;
+    private Rect getRect(float x, float y, boolean bigIcon, Rect out) {
         float width = bigIcon ? 160 : 80;
         float heigth = bigIcon ? 204 : 102;
         int left = (int) (x - (width / 2) / scaleHistory);
@@ -862,12 +1379,12 @@ public class MapView extends View {
             scaleWidth = right - left;
         }
         int top = (int) (y - heigth * scaleWidth / width);
-        return new Rect(left, top, right, (int) y);
+        out.set(left, top, right, (int) y);
+        return out;
     }
 
     private void drawCircleText(Canvas canvas, int color, float x, float y, String text) {
-        Paint paint = new Paint();
-        paint.setAntiAlias(false);
+        Paint paint = mCirclePaint;
         paint.setColor(color);
         paint.setStyle(Paint.Style.FILL);
         canvas.drawCircle(x, y, 10, paint);
@@ -883,10 +1400,7 @@ public class MapView extends View {
 
         canvas.save();
 
-        Paint paint = new Paint();
-        paint.setColor(Color.WHITE);
-        paint.setStrokeWidth((float) 3.0);
-        paint.setTextSize(30);
+        Paint paint = mScaleBarPaint;
         //paint.setAlpha(100);
 
         this.curBarWidth = SCALE_BAR_STARDAD * scaleBarRate * this.scaleHistory;
@@ -921,12 +1435,12 @@ public class MapView extends View {
 
         String barContent = this.getScaleBarContent();
 
-        Rect bounds = new Rect();
+        Rect bounds = mTextBounds;
         paint.getTextBounds(barContent, 0, barContent.length(), bounds);
         float textWidth = bounds.right - bounds.left;
         content_start_x = content_start_x + (float) (this.curBarWidth / 2) - textWidth / 2;
 
-        canvas.drawText(this.getScaleBarContent(), content_start_x, content_start_y, paint);
+        canvas.drawText(barContent, content_start_x, content_start_y, paint);
         canvas.drawLine(bar_start_x, (float) bar_start_y, bar_stop_x, (float) bar_start_y, paint);
         canvas.drawLine(bar_start_x, (float) bar_start_y, bar_start_x, (float) (bar_start_y - 5), paint);
         canvas.drawLine(bar_stop_x, (float) bar_start_y, bar_stop_x, (float) (bar_start_y - 5), paint);
@@ -1076,6 +1590,10 @@ public class MapView extends View {
         double value = (double) (SCALE_BAR_STARDAD * scaleBarRate * this.resolution * 100);
 
 //        Log.d(TAG,"getScaleBarContent: " + value);
+        //比例尺只在缩放跨档时变化，文本缓存起来
+        if (value == mScaleBarContentValue && mScaleBarContent != null) {
+            return mScaleBarContent;
+        }
 
         if (value < 100) {
             result = Math.round(value) + "CM";
@@ -1083,6 +1601,8 @@ public class MapView extends View {
             result = Math.round(value / 100) + "M";
         }
 
+        mScaleBarContentValue = value;
+        mScaleBarContent = result;
         return result;
     }
 
@@ -1097,54 +1617,55 @@ public class MapView extends View {
         this.curBarWidth = SCALE_BAR_STARDAD * scaleBarRate * this.scaleHistory;
 
         double lineSpace = this.curBarWidth;
-
-//        Log.d(TAG, "drawScale lineSpace: " + lineSpace);
-//        Log.d(TAG, "drawScale screenWidth: " + screenWidth);
-//        Log.d(TAG, "drawScale screenHeight: " + screenHeight);
-
-        canvas.save();
-
-        Paint paint = new Paint();
-        paint.setColor(Color.WHITE);
-        paint.setStrokeWidth((float) 1.0);
-        paint.setAlpha(100);
-
-        //画横线,上半部分
-        double rowLine_startY_upper = (screenHeight / 2) - lineSpace;
-
-        for (int i = 0; i < 1000; i++) {
-            canvas.drawLine(0, (float) rowLine_startY_upper, 1480, (float) rowLine_startY_upper, paint);
-            rowLine_startY_upper -= lineSpace;
-            if (rowLine_startY_upper < 0) break;
+        int viewWidth = getWidth();
+        int viewHeight = getHeight();
+        if (lineSpace <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+            return;
         }
 
-
-        //画横线,下半部分
-        int rowLine_startY_bottom = screenHeight / 2;
-        for (int i = 0; i < 1000; i++) {
-            canvas.drawLine(0, (float) rowLine_startY_bottom, 1480, (float) rowLine_startY_bottom, paint);
-            rowLine_startY_bottom += lineSpace;
-            if (rowLine_startY_bottom > screenHeight) break;
+        //只有间距或视图大小变化时才重新生成线段
+        if (lineSpace != mGridSpace || viewWidth != mGridWidth || viewHeight != mGridHeight) {
+            buildGridLines(lineSpace, viewWidth, viewHeight);
         }
+        canvas.drawLines(mGridLines, 0, mGridLineCount, mScalePaint);
+    }
 
-
-        //画竖线,左半部分
-        double columnLine_startX_left = screenWidth / 2 - lineSpace;
-        for (int i = 0; i < 1000; i++) {
-            canvas.drawLine((float) columnLine_startX_left, 0, (float) columnLine_startX_left, 1920, paint);
-            columnLine_startX_left -= lineSpace;
-            if (columnLine_startX_left < 0) break;
+    /**
+     * 以视图中心为原点，按间距生成横竖网格线，每条线 4 个 float
+     */
+    private void buildGridLines(double lineSpace, int viewWidth, int viewHeight) {
+        mGridSpace = lineSpace;
+        mGridWidth = viewWidth;
+        mGridHeight = viewHeight;
+
+        double centerX = viewWidth / 2.0;
+        double centerY = viewHeight / 2.0;
+        int rows = (int) Math.min(centerY / lineSpace, MAX_GRID_LINES);
+        int columns = (int) Math.min(centerX / lineSpace, MAX_GRID_LINES);
+        int size = ((2 * rows + 1) + (2 * columns + 1)) * 4;
+        if (mGridLines.length < size) {
+            mGridLines = new float[size];
         }
 
-        //画竖线,右半部分
-        double columnLine_startX_right = screenWidth / 2;
-        for (int i = 0; i < 1000; i++) {
-            canvas.drawLine((float) columnLine_startX_right, 0, (float) columnLine_startX_right, 1920, paint);
-            columnLine_startX_right += lineSpace;
-            if (columnLine_startX_right > screenWidth) break;
+        int i = 0;
+        float[] lines = mGridLines;
+        //横线
+        for (int k = -rows; k <= rows; k++) {
+            float y = (float) (centerY + k * lineSpace);
+            lines[i++] = 0;
+            lines[i++] = y;
+            lines[i++] = viewWidth;
+            lines[i++] = y;
         }
-
-        canvas.restore();
+        //竖线
+        for (int k = -columns; k <= columns; k++) {
+            float x = (float) (centerX + k * lineSpace);
+            lines[i++] = x;
+            lines[i++] = 0;
+            lines[i++] = x;
+            lines[i++] = viewHeight;
+        }
+        mGridLineCount = i;
     }
 
     ;
@@ -1162,15 +1683,9 @@ public class MapView extends View {
     private void drawArrow(Canvas canvas, float x, float y, float len, float angle, int color) {
         canvas.save();
         angle = 0 - angle;
-        Paint paint = new Paint();
-        paint.setAntiAlias(false);
-        paint.setColor(color);
-        paint.setStyle(Paint.Style.FILL);
-        paint.setStrokeWidth(8);
 
-        Matrix tempMat = new Matrix();
-        tempMat.postRotate((float) (Math.toDegrees(angle) + 90), x, y);
-        canvas.concat(tempMat);
+        mTempMatrix.setRotate((float) (Math.toDegrees(angle) + 90), x, y);
+        canvas.concat(mTempMatrix);
 
         //绘制底盘icon
         double bwidth = 200 * scaleHistory * this.resolution;
@@ -1178,9 +1693,9 @@ public class MapView extends View {
 
         float b_ex = x;
         float b_ey = (float) (y - bheight / scaleHistory);
-        Drawable robotBottomIcon = ContextCompat.getDrawable(getContext(), R.drawable.robot_bottom);
-        robotBottomIcon.setBounds(new Rect((int) (x - (bwidth / (float) 2) / scaleHistory), (int) (y - (bheight / (float) 2) / scaleHistory),
-                (int) (x + (bwidth / (float) 2) / scaleHistory), (int) (y + (bheight / (float) 2) / scaleHistory)));
+        Drawable robotBottomIcon = mRobotBottomIcon;
+        robotBottomIcon.setBounds((int) (x - (bwidth / (float) 2) / scaleHistory), (int) (y - (bheight / (float) 2) / scaleHistory),
+                (int) (x + (bwidth / (float) 2) / scaleHistory), (int) (y + (bheight / (float) 2) / scaleHistory));
         robotBottomIcon.draw(canvas);
 
         //绘制激光扫描区icon
@@ -1206,9 +1721,9 @@ public class MapView extends View {
         float laser_deltaY = y + 120 / scaleHistory;
         float laser_ex = x;
         float laser_ey = (float) (laser_deltaY - laser_height / scaleHistory);
-        Drawable robotLaserIcon = ContextCompat.getDrawable(getContext(), R.drawable.robot_laser);
-        robotLaserIcon.setBounds(new Rect((int) (x - (laser_width / (float) 2) / scaleHistory), (int) (y - (laser_height / (float) 2) / scaleHistory),
-                (int) (x + (laser_width / (float) 2) / scaleHistory), (int) (y + (laser_height / (float) 2) / scaleHistory)));
+        Drawable robotLaserIcon = mRobotLaserIcon;
+        robotLaserIcon.setBounds((int) (x - (laser_width / (float) 2) / scaleHistory), (int) (y - (laser_height / (float) 2) / scaleHistory),
+                (int) (x + (laser_width / (float) 2) / scaleHistory), (int) (y + (laser_height / (float) 2) / scaleHistory));
         robotLaserIcon.draw(canvas);
 
         //绘制机器人icon
@@ -1236,9 +1751,9 @@ public class MapView extends View {
 //        Log.d(TAG,"robot position x: " + x);
 //        Log.d(TAG,"robot position y: " + y);
 
-        Drawable robotIcon = ContextCompat.getDrawable(getContext(), R.drawable.robot);
-        robotIcon.setBounds(new Rect((int) (x - robot_deltaX), (int) (y - robot_deltaY),
-                (int) (x + robot_deltaX), (int) (y + robot_deltaY)));
+        Drawable robotIcon = mRobotIcon;
+        robotIcon.setBounds((int) (x - robot_deltaX), (int) (y - robot_deltaY),
+                (int) (x + robot_deltaX), (int) (y + robot_deltaY));
         robotIcon.draw(canvas);
 
         canvas.restore();
@@ -1267,6 +1782,16 @@ public class MapView extends View {
     }
 
 
+    /**
+     * 目标点序号文本，缓存起来避免每帧拼接字符串
+     */
+    private String indexLabel(int index) {
+        while (mIndexLabels.size() <= index) {
+            mIndexLabels.add(String.valueOf(mIndexLabels.size()));
+        }
+        return mIndexLabels.get(index);
+    }
+
     private float pinchSpace(MotionEvent event) {
         float x = event.getX(0);
         float y = event.getY(0);
@@ -1279,7 +1804,7 @@ public class MapView extends View {
         return (float) Math.sqrt(x * x + y * y);
     }
 
-    private PointF pinchCenter(MotionEvent event) {
+    private PointF pinchCenter(MotionEvent event, PointF out) {
         float x = event.getX(0);
         float y = event.getY(0);
         try {
@@ -1288,7 +1813,8 @@ public class MapView extends View {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return new PointF(x / 2, y / 2);
+        out.set(x / 2, y / 2);
+        return out;
     }
 
     private float pinchRotation(MotionEvent event) {
@@ -1304,10 +1830,14 @@ public class MapView extends View {
         return (float) Math.toDegrees(radians);
     }
 
-    private void printPlaceBean(List<PoseBean> poseBeans) {
-        Log.d(TAG, "printPlaceBean: size=" + (poseBeans == null ? 0 : poseBeans.size()));
-        for (PoseBean bean : poseBeans) {
-            Log.d(TAG, "printPlaceBean: placeList=" + bean.toString());
+    private void printPlaces(PlaceStore places) {
+        Log.d(TAG, "printPlaces: size=" + (places == null ? 0 : places.size()));
+        if (places == null) {
+            return;
+        }
+        for (int i = 0; i < places.size(); i++) {
+            Log.d(TAG, "printPlaces: name = " + places.getName(i) + ", x = " + places.getX(i)
+                    + ", y = " + places.getY(i) + ", status = " + places.getStatus(i));
         }
     }
 }
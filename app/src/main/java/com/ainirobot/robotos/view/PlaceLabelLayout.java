@@ -0,0 +1,152 @@
+package com.ainirobot.robotos.view;
+
+import android.graphics.Paint;
+import android.text.TextUtils;
+
+import com.ainirobot.robotos.maputils.PlaceStore;
+
+import java.util.HashMap;
+
+/**
+ * 点位名称的布局缓存，贪心去掉互相重叠的文字，缩放跨档时才重新布局
+ * Greedy label placement for place names. Labels keep a constant on-screen
+ * size, so collisions depend only on zoom and rotation, not on panning. The
+ * layout is computed in screen space at the lower edge of a zoom bucket
+ * (2^(1/4) wide) and a 10 degree rotation bucket, and is reused until the
+ * view leaves that bucket. The selected place wins first, then list order.
+ */
+public class PlaceLabelLayout {
+
+    /**
+     * 与 drawPlace 中的文字、图标屏幕尺寸一致
+     */
+    private static final float TEXT_SIZE = 32;
+    private static final float ICON_HEIGHT = 102;
+    private static final float BIG_ICON_HEIGHT = 204;
+    private static final float TEXT_GAP = 8;
+    private static final float PADDING = 4;
+    private static final int BUCKETS_PER_OCTAVE = 4;
+    private static final float ROTATION_STEP = 10;
+
+    private final Paint mMeasurePaint = new Paint();
+    /**
+     * 名称在 TEXT_SIZE 下的宽度，其它字号按比例换算
+     */
+    private final HashMap<String, Float> mWidthCache = new HashMap<>();
+
+    private PlaceStore mPlaces;
+    private int mScaleBucket;
+    private int mRotationBucket;
+    private int mSelected;
+    private String mExcluded;
+    private boolean[] mVisible = new boolean[0];
+    private float[] mPlaced = new float[0];
+
+    public PlaceLabelLayout() {
+        mMeasurePaint.setTextSize(TEXT_SIZE);
+    }
+
+    /**
+     * @param scale    当前矩阵的缩放倍数
+     * @param rotation 当前矩阵的旋转角度
+     * @param selected 选中的点位下标，没有时为 -1
+     * @param excluded 不绘制的点位名称，不参与避让，可为 null
+     */
+    public void update(PlaceStore places, float scale, float rotation, int selected,
+                       String excluded) {
+        if (places == null || scale <= 0) {
+            return;
+        }
+        int scaleBucket = (int) Math.floor(Math.log(scale) / Math.log(2) * BUCKETS_PER_OCTAVE);
+        float normalized = ((rotation % 360) + 360) % 360;
+        int rotationBucket = Math.round(normalized / ROTATION_STEP) % Math.round(360 / ROTATION_STEP);
+        if (places == mPlaces && scaleBucket == mScaleBucket
+                && rotationBucket == mRotationBucket && selected == mSelected
+                && TextUtils.equals(excluded, mExcluded)) {
+            return;
+        }
+        mPlaces = places;
+        mScaleBucket = scaleBucket;
+        mRotationBucket = rotationBucket;
+        mSelected = selected;
+        mExcluded = excluded;
+        // 取档位下限，点位间距最小，档内放大时不会再重叠
+        layout(places, (float) Math.pow(2, scaleBucket / (double) BUCKETS_PER_OCTAVE),
+                rotationBucket * ROTATION_STEP, selected, excluded);
+    }
+
+    public boolean isVisible(int index) {
+        return index >= 0 && index < mVisible.length && mVisible[index];
+    }
+
+    /**
+     * 点位内容变化（名称、坐标）但列表对象未变时调用
+     */
+    public void invalidate() {
+        mPlaces = null;
+    }
+
+    private void layout(PlaceStore places, float scale, float rotation, int selected,
+                        String excluded) {
+        int count = places.size();
+        if (mVisible.length < count) {
+            mVisible = new boolean[count];
+            mPlaced = new float[count * 4];
+        }
+        double radians = Math.toRadians(rotation);
+        float cos = (float) (Math.cos(radians) * scale);
+        float sin = (float) (Math.sin(radians) * scale);
+        int placed = 0;
+        for (int k = -1; k < count; k++) {
+            // 先放选中的点位，其余按列表顺序
+            int i = k < 0 ? selected : k;
+            if (i < 0 || i >= count || (k >= 0 && i == selected)) {
+                continue;
+            }
+            String name = places.getName(i);
+            mVisible[i] = false;
+            if (name == null || name.equals(excluded)) {
+                continue;
+            }
+            double px = places.getX(i);
+            double py = places.getY(i);
+            float x = (float) (px * cos - py * sin);
+            float y = (float) (px * sin + py * cos);
+            float halfWidth = textWidth(name) / 2 + PADDING;
+            float baseline = y - (i == selected ? BIG_ICON_HEIGHT : ICON_HEIGHT) - TEXT_GAP;
+            float left = x - halfWidth;
+            float right = x + halfWidth;
+            float top = baseline - TEXT_SIZE - PADDING;
+            float bottom = baseline + TEXT_SIZE / 4 + PADDING;
+            if (!overlaps(placed, left, top, right, bottom)) {
+                int j = placed * 4;
+                mPlaced[j] = left;
+                mPlaced[j + 1] = top;
+                mPlaced[j + 2] = right;
+                mPlaced[j + 3] = bottom;
+                placed++;
+                mVisible[i] = true;
+            }
+        }
+    }
+
+    private boolean overlaps(int placed, float left, float top, float right, float bottom) {
+        float[] rects = mPlaced;
+        for (int j = 0; j < placed * 4; j += 4) {
+            if (left < rects[j + 2] && right > rects[j]
+                    && top < rects[j + 3] && bottom > rects[j + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float textWidth(String name) {
+        Float width = mWidthCache.get(name);
+        if (width == null) {
+            width = mMeasurePaint.measureText(name);
+            mWidthCache.put(name, width);
+        }
+        return width;
+    }
+}
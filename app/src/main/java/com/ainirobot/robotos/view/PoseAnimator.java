@@ -0,0 +1,182 @@
+package com.ainirobot.robotos.view;
+
+import android.os.SystemClock;
+import android.view.View;
+
+import com.ainirobot.robotos.maputils.Pose2d;
+import com.ainirobot.robotos.maputils.PosePredictor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按显示帧驱动机器人位姿，输入帧率较低时也能平滑移动
+ * Drives the robot pose at display rate from a slower pose stream. Samples
+ * from any thread go into a {@link PosePredictor}; while the predicted pose
+ * is still changing, a frame callback posted with
+ * {@link View#postOnAnimation} evaluates it for the current time and hands it
+ * to the target on the UI thread. Once the prediction settles the callbacks
+ * stop until the next sample arrives. An optional minimum interval, measured
+ * between sample timestamps, thins the stream before it reaches the predictor;
+ * rejected samples and samples superseded before a frame ran are counted as
+ * dropped.
+ */
+public class PoseAnimator {
+
+    public interface Target {
+        /**
+         * 在 UI 线程回调，pose 回调后会被复用，不能保留引用
+         *
+         * @return 变化太小没有重绘时返回 false
+         */
+        boolean onPoseFrame(Pose2d pose);
+    }
+
+    private final View mView;
+    private final Target mTarget;
+    private final PosePredictor mPredictor;
+    private final Pose2d mFramePose = new Pose2d(0, 0, 0);
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    /**
+     * 上一帧之后进入预测器的样本数，大于 1 时多出的样本没有单独显示过
+     */
+    private final AtomicInteger mPending = new AtomicInteger();
+    private volatile long mMinInterval;
+    private long mLastSampleTime = Long.MIN_VALUE;
+
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mFrames = new AtomicLong();
+    private final AtomicLong mDrawn = new AtomicLong();
+
+    private final Runnable mFrame = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            int pending = mPending.getAndSet(0);
+            if (pending > 1) {
+                mDropped.addAndGet(pending - 1);
+            }
+            if (!mPredictor.predict(now, mFramePose)) {
+                mScheduled.set(false);
+                return;
+            }
+            mFrames.incrementAndGet();
+            if (mTarget.onPoseFrame(mFramePose)) {
+                mDrawn.incrementAndGet();
+            }
+            if (mPredictor.isAnimating(now)) {
+                mView.postOnAnimation(this);
+                return;
+            }
+            mScheduled.set(false);
+            // 与 submit 竞争：停下之前刚到的新帧需要重新调度
+            if (mPredictor.isAnimating(now) && mScheduled.compareAndSet(false, true)) {
+                mView.postOnAnimation(this);
+            }
+        }
+    };
+
+    public PoseAnimator(View view, Target target) {
+        this(view, target, new PosePredictor());
+    }
+
+    public PoseAnimator(View view, Target target, PosePredictor predictor) {
+        mView = view;
+        mTarget = target;
+        mPredictor = predictor;
+    }
+
+    /**
+     * 两个样本时间戳的最小间隔，更密的样本直接丢弃，0 表示不限制
+     */
+    public void setMinInterval(long minInterval) {
+        mMinInterval = Math.max(minInterval, 0);
+    }
+
+    /**
+     * 以当前 uptime 作为样本时间提交
+     */
+    public boolean submit(Pose2d pose) {
+        return submit(SystemClock.uptimeMillis(), pose);
+    }
+
+    /**
+     * 任意线程调用，pose 只读取不保留，调用方可以复用
+     *
+     * @param time 样本时间，{@link SystemClock#uptimeMillis()} 时钟
+     * @return 与上一个样本的间隔小于最小间隔被丢弃时返回 false
+     */
+    public boolean submit(long time, Pose2d pose) {
+        if (pose == null) {
+            return false;
+        }
+        mReceived.incrementAndGet();
+        synchronized (this) {
+            long interval = mMinInterval;
+            // 时间倒退时不丢弃，交给预测器清空历史
+            if (interval > 0 && mLastSampleTime != Long.MIN_VALUE
+                    && time >= mLastSampleTime && time - mLastSampleTime < interval) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+            mLastSampleTime = time;
+        }
+        mPredictor.add(time, pose);
+        mPending.incrementAndGet();
+        if (mScheduled.compareAndSet(false, true)) {
+            mView.postOnAnimation(mFrame);
+        }
+        return true;
+    }
+
+    /**
+     * 清空历史，例如定位丢失或地图切换后坐标系变化时，计数保留
+     */
+    public void clear() {
+        synchronized (this) {
+            mLastSampleTime = Long.MIN_VALUE;
+        }
+        mPredictor.clear();
+    }
+
+    /**
+     * 收到的位姿数
+     */
+    public long getReceived() {
+        return mReceived.get();
+    }
+
+    /**
+     * 丢弃的位姿数：被最小间隔拒绝的，以及在下一帧之前就被更新样本覆盖的
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * 计算过位姿的显示帧数
+     */
+    public long getFrames() {
+        return mFrames.get();
+    }
+
+    /**
+     * 触发重绘的帧数
+     */
+    public long getDrawn() {
+        return mDrawn.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PoseAnimator{" +
+                "received=" + mReceived.get() +
+                ", dropped=" + mDropped.get() +
+                ", frames=" + mFrames.get() +
+                ", drawn=" + mDrawn.get() +
+                ", delay=" + mPredictor.getDelay() +
+                '}';
+    }
+}
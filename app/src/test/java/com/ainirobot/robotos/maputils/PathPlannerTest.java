@@ -0,0 +1,292 @@
+package com.ainirobot.robotos.maputils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 跳点搜索与普通 A* 的对照：随机地图上两者可达性和路线长度必须一致，跳点路线须合法
+ */
+public class PathPlannerTest {
+
+    private static final double RES = 0.05;
+
+    @Test
+    public void straightCorridor() {
+        OccupancyGrid grid = newGrid(20, 5, OccupancyGrid.PASS);
+        PathPlanner planner = new PathPlanner(grid);
+        PathPlanner.Path path = planner.plan(1, 2, 18, 2, RES);
+        assertNotNull(path);
+        assertEquals(2, path.getPointCount());
+        assertEquals(17 * RES, path.length, 1e-6);
+        assertEquals(path.length / 0.5, path.getEta(0.5), 1e-9);
+    }
+
+    @Test
+    public void blockedOrOutsideEndpointsReturnNull() {
+        OccupancyGrid grid = newGrid(10, 10, OccupancyGrid.PASS);
+        grid.set(5, 5, OccupancyGrid.OBSTACLE);
+        PathPlanner planner = new PathPlanner(grid);
+        assertNull(planner.plan(5, 5, 1, 1, RES));
+        assertNull(planner.plan(1, 1, 5, 5, RES));
+        assertNull(planner.plan(-1, 0, 1, 1, RES));
+        assertNull(planner.plan(1, 1, 10, 1, RES));
+    }
+
+    @Test
+    public void nearestWalkableSnapsWithinRadius() {
+        OccupancyGrid grid = newGrid(20, 20, OccupancyGrid.UNDETECT);
+        grid.set(13, 10, OccupancyGrid.PASS);
+        grid.set(10, 16, OccupancyGrid.PASS);
+        PathPlanner planner = new PathPlanner(grid);
+        int[] cell = new int[2];
+        assertTrue(planner.nearestWalkable(10, 10, 5, cell));
+        assertEquals(13, cell[0]);
+        assertEquals(10, cell[1]);
+        assertFalse(planner.nearestWalkable(10, 10, 2, cell));
+        assertTrue(planner.nearestWalkable(13, 10, 0, cell));
+    }
+
+    @Test
+    public void diagonalsDoNotCutCorners() {
+        // 两个障碍对角相接，不能从缝隙斜穿
+        OccupancyGrid grid = newGrid(3, 3, OccupancyGrid.PASS);
+        grid.set(1, 0, OccupancyGrid.OBSTACLE);
+        grid.set(0, 1, OccupancyGrid.OBSTACLE);
+        grid.set(2, 1, OccupancyGrid.OBSTACLE);
+        grid.set(1, 2, OccupancyGrid.OBSTACLE);
+        PathPlanner planner = new PathPlanner(grid);
+        assertNull(planner.plan(0, 0, 1, 1, RES));
+        planner.setJumpPointSearch(false);
+        assertNull(planner.plan(0, 0, 1, 1, RES));
+    }
+
+    @Test
+    public void updateReflectsEditedCells() {
+        OccupancyGrid grid = newGrid(30, 30, OccupancyGrid.PASS);
+        PathPlanner planner = new PathPlanner(grid);
+        assertEquals(25 * RES, planner.plan(2, 15, 27, 15, RES).length, 1e-6);
+        // 竖墙留一个口
+        for (int y = 0; y < 30; y++) {
+            if (y != 3) {
+                grid.set(15, y, OccupancyGrid.BLOCK);
+            }
+        }
+        planner.update(15, 0, 16, 30);
+        PathPlanner.Path path = planner.plan(2, 15, 27, 15, RES);
+        assertNotNull(path);
+        assertTrue(path.length > 25 * RES);
+        assertValidPath(planner, path, 2, 15, 27, 15);
+    }
+
+    @Test
+    public void copiesKeepTheirSnapshotAcrossUpdates() {
+        OccupancyGrid grid = newGrid(30, 30, OccupancyGrid.PASS);
+        PathPlanner source = new PathPlanner(grid);
+        PathPlanner before = new PathPlanner(source);
+        for (int y = 0; y < 30; y++) {
+            grid.set(15, y, OccupancyGrid.BLOCK);
+        }
+        source.update(15, 0, 16, 30);
+        PathPlanner after = new PathPlanner(source);
+        assertNull(source.plan(2, 15, 27, 15, RES));
+        assertNull(after.plan(2, 15, 27, 15, RES));
+        assertEquals(25 * RES, before.plan(2, 15, 27, 15, RES).length, 1e-6);
+    }
+
+    /**
+     * 不同障碍密度和形状的随机地图，每张地图多组随机起终点
+     */
+    @Test
+    public void jumpPointSearchMatchesAStar() {
+        Random random = new Random(16601);
+        int queries = 0;
+        int reachable = 0;
+        long jpsExpanded = 0;
+        long astarExpanded = 0;
+        for (int map = 0; map < 200; map++) {
+            int width = 16 + random.nextInt(100);
+            int height = 16 + random.nextInt(100);
+            OccupancyGrid grid = randomGrid(random, width, height);
+            PathPlanner jps = new PathPlanner(grid);
+            PathPlanner astar = new PathPlanner(grid);
+            astar.setJumpPointSearch(false);
+            for (int q = 0; q < 85; q++) {
+                int sx = random.nextInt(width);
+                int sy = random.nextInt(height);
+                int gx = random.nextInt(width);
+                int gy = random.nextInt(height);
+                PathPlanner.Path expected = astar.plan(sx, sy, gx, gy, 1);
+                PathPlanner.Path actual = jps.plan(sx, sy, gx, gy, 1);
+                String query = "map " + map + " " + width + "x" + height
+                        + " (" + sx + "," + sy + ")->(" + gx + "," + gy + ")";
+                queries++;
+                if (expected == null) {
+                    assertNull(query, actual);
+                    continue;
+                }
+                reachable++;
+                assertNotNull(query, actual);
+                assertEquals(query, expected.length, actual.length, 1e-3);
+                assertValidPath(jps, actual, sx, sy, gx, gy);
+                jpsExpanded += actual.expanded;
+                astarExpanded += expected.expanded;
+            }
+        }
+        assertTrue(reachable > queries / 4);
+        // 单次查询不保证，整体上跳点搜索展开的节点不多于普通 A*
+        assertTrue("expanded jps=" + jpsExpanded + " astar=" + astarExpanded,
+                jpsExpanded <= astarExpanded);
+    }
+
+    /**
+     * 一次多终点搜索与逐个 A* 的距离一致，包围盒含起终点；终点可重复、可不可通行
+     */
+    @Test
+    public void distancesMatchPointQueries() {
+        Random random = new Random(2503);
+        int[] targetX = new int[12];
+        int[] targetY = new int[12];
+        float[] distance = new float[12];
+        int[] bounds = new int[12 * 4];
+        int reachable = 0;
+        for (int map = 0; map < 150; map++) {
+            int width = 16 + random.nextInt(100);
+            int height = 16 + random.nextInt(100);
+            OccupancyGrid grid = randomGrid(random, width, height);
+            PathPlanner planner = new PathPlanner(grid);
+            PathPlanner astar = new PathPlanner(grid);
+            astar.setJumpPointSearch(false);
+            for (int q = 0; q < 10; q++) {
+                int sx = random.nextInt(width);
+                int sy = random.nextInt(height);
+                int count = 1 + random.nextInt(targetX.length);
+                for (int k = 0; k < count; k++) {
+                    if (k > 0 && random.nextInt(8) == 0) {
+                        targetX[k] = targetX[k - 1];
+                        targetY[k] = targetY[k - 1];
+                    } else {
+                        targetX[k] = random.nextInt(width);
+                        targetY[k] = random.nextInt(height);
+                    }
+                }
+                int found = planner.distances(sx, sy, targetX, targetY, count, RES, distance,
+                        bounds);
+                int expectedFound = 0;
+                for (int k = 0; k < count; k++) {
+                    String query = "map " + map + " (" + sx + "," + sy + ")->(" + targetX[k]
+                            + "," + targetY[k] + ")";
+                    PathPlanner.Path expected = astar.plan(sx, sy, targetX[k], targetY[k], RES);
+                    if (expected == null) {
+                        assertEquals(query, Float.POSITIVE_INFINITY, distance[k], 0);
+                        assertTrue(query, bounds[k * 4] > bounds[k * 4 + 2]);
+                        continue;
+                    }
+                    expectedFound++;
+                    assertEquals(query, expected.length, distance[k], 1e-3);
+                    assertTrue(query, bounds[k * 4] <= Math.min(sx, targetX[k])
+                            && bounds[k * 4 + 2] >= Math.max(sx, targetX[k])
+                            && bounds[k * 4 + 1] <= Math.min(sy, targetY[k])
+                            && bounds[k * 4 + 3] >= Math.max(sy, targetY[k]));
+                }
+                assertEquals(expectedFound, found);
+                reachable += found;
+            }
+        }
+        assertTrue(reachable > 1000);
+    }
+
+    @Test
+    public void distancesReportNodeLimit() {
+        PathPlanner planner = new PathPlanner(newGrid(64, 64, OccupancyGrid.PASS));
+        planner.setMaxNodes(50);
+        float[] distance = new float[2];
+        int found = planner.distances(0, 0, new int[]{1, 63}, new int[]{0, 63}, 2, RES,
+                distance, null);
+        assertEquals(-1, found);
+        assertTrue(planner.isNodeLimitReached());
+        assertEquals(RES, distance[0], 1e-6);
+        assertEquals(Float.POSITIVE_INFINITY, distance[1], 0);
+    }
+
+    /**
+     * 折线首尾为起终点，每段沿 8 个方向之一，途经格子都可通行，斜走时两侧直邻也可通行
+     */
+    private static void assertValidPath(PathPlanner planner, PathPlanner.Path path,
+                                        int sx, int sy, int gx, int gy) {
+        float[] points = path.points;
+        int n = path.getPointCount();
+        assertEquals(sx + 0.5f, points[0], 0);
+        assertEquals(sy + 0.5f, points[1], 0);
+        assertEquals(gx + 0.5f, points[n * 2 - 2], 0);
+        assertEquals(gy + 0.5f, points[n * 2 - 1], 0);
+        for (int i = 0; i + 1 < n; i++) {
+            int x = (int) points[i * 2];
+            int y = (int) points[i * 2 + 1];
+            int ex = (int) points[i * 2 + 2];
+            int ey = (int) points[i * 2 + 3];
+            int dx = Integer.signum(ex - x);
+            int dy = Integer.signum(ey - y);
+            if (ex - x != 0 && ey - y != 0 && Math.abs(ex - x) != Math.abs(ey - y)) {
+                fail("segment is not straight: " + x + "," + y + " -> " + ex + "," + ey);
+            }
+            while (x != ex || y != ey) {
+                if (dx != 0 && dy != 0) {
+                    assertTrue("corner cut at " + x + "," + y,
+                            planner.isWalkable(x + dx, y) && planner.isWalkable(x, y + dy));
+                }
+                x += dx;
+                y += dy;
+                assertTrue("blocked cell on path " + x + "," + y, planner.isWalkable(x, y));
+            }
+        }
+    }
+
+    private static OccupancyGrid newGrid(int width, int height, int state) {
+        OccupancyGrid grid = new OccupancyGrid(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                grid.set(x, y, state);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * 随机散点加随机矩形墙，模拟房间与走廊
+     */
+    private static OccupancyGrid randomGrid(Random random, int width, int height) {
+        OccupancyGrid grid = newGrid(width, height, OccupancyGrid.PASS);
+        float density = random.nextFloat() * 0.35f;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextFloat() < density) {
+                    grid.set(x, y, random.nextBoolean() ? OccupancyGrid.OBSTACLE
+                            : OccupancyGrid.UNDETECT);
+                }
+            }
+        }
+        int walls = random.nextInt(12);
+        for (int i = 0; i < walls; i++) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            boolean horizontal = random.nextBoolean();
+            int length = 4 + random.nextInt(Math.max(width, height) / 2);
+            for (int k = 0; k < length; k++) {
+                int x = horizontal ? x0 + k : x0;
+                int y = horizontal ? y0 : y0 + k;
+                if (grid.contains(x, y)) {
+                    grid.set(x, y, OccupancyGrid.BLOCK);
+                }
+            }
+        }
+        return grid;
+    }
+}
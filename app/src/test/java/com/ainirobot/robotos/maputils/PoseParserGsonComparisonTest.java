@@ -0,0 +1,85 @@
+package com.ainirobot.robotos.maputils;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用接近真实底盘的位姿消息对比 PoseParser 与 Gson 的结果
+ * Replays a fixed set of status-report shaped messages through both parsers
+ * and checks every field agrees, both on a freshly cleared pose and when one
+ * pose object is reused across all messages as the pose listener does.
+ */
+public class PoseParserGsonComparisonTest {
+
+    private static final int MESSAGES = 1000;
+
+    @Test
+    public void agreesWithGson() {
+        String[] messages = buildMessages(new Random(42));
+        Gson gson = new Gson();
+        PoseParser parser = new PoseParser();
+        Pose2d pose = new Pose2d(0, 0, 0);
+
+        for (String message : messages) {
+            Pose2d expected = gson.fromJson(message, Pose2d.class);
+            // Gson 每次新建对象，null 字段为 0；PoseParser 保留旧值，所以先清零
+            pose.set(new Pose2d(0, 0, 0, 0));
+            assertTrue(message, parser.parse(message, pose));
+            assertEquals(message, Double.doubleToLongBits(expected.x),
+                    Double.doubleToLongBits(pose.x));
+            assertEquals(message, Double.doubleToLongBits(expected.y),
+                    Double.doubleToLongBits(pose.y));
+            assertEquals(message, Double.doubleToLongBits(expected.t),
+                    Double.doubleToLongBits(pose.t));
+            assertEquals(message, expected.status, pose.status);
+        }
+
+        // 复用同一个位姿对象：只有 theta 为 null 时沿用上一条的值
+        Pose2d reused = new Pose2d(0, 0, 0);
+        double lastTheta = 0;
+        for (String message : messages) {
+            Pose2d expected = gson.fromJson(message, Pose2d.class);
+            assertTrue(message, parser.parse(message, reused));
+            double theta = message.contains("\"theta\":null") ? lastTheta : expected.t;
+            assertEquals(message, Double.doubleToLongBits(expected.x),
+                    Double.doubleToLongBits(reused.x));
+            assertEquals(message, Double.doubleToLongBits(expected.y),
+                    Double.doubleToLongBits(reused.y));
+            assertEquals(message, Double.doubleToLongBits(theta),
+                    Double.doubleToLongBits(reused.t));
+            assertEquals(message, expected.status, reused.status);
+            lastTheta = reused.t;
+        }
+    }
+
+    /**
+     * 位姿字段夹杂未知字段、嵌套对象和 null，数字用底盘常见的最短表示
+     */
+    private static String[] buildMessages(Random random) {
+        String[] messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder builder = new StringBuilder("{");
+            builder.append("\"px\":").append((random.nextDouble() - 0.5) * 100);
+            builder.append(",\"py\":").append((random.nextDouble() - 0.5) * 100);
+            if (random.nextInt(10) == 0) {
+                builder.append(",\"theta\":null");
+            } else {
+                builder.append(",\"theta\":").append((random.nextDouble() - 0.5) * 2 * Math.PI);
+            }
+            if (random.nextBoolean()) {
+                builder.append(",\"name\":\"pose-").append(i).append('"');
+                builder.append(",\"extra\":{\"speed\":").append(random.nextDouble())
+                        .append(",\"tags\":[1,2,{\"px\":0}]}");
+            }
+            builder.append(",\"status\":").append(random.nextInt(3)).append('}');
+            messages[i] = builder.toString();
+        }
+        return messages;
+    }
+}
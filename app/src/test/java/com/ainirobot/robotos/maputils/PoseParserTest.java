@@ -0,0 +1,166 @@
+package com.ainirobot.robotos.maputils;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PoseParser 与 Gson 行为一致性测试
+ */
+public class PoseParserTest {
+
+    private final PoseParser mParser = new PoseParser();
+
+    @Test
+    public void parsesAllMembers() {
+        Pose2d pose = new Pose2d(0, 0, 0);
+        assertTrue(mParser.parse("{\"px\":1.5,\"py\":-2.25,\"theta\":0.125,\"status\":2}", pose));
+        assertEquals(1.5, pose.x, 0);
+        assertEquals(-2.25, pose.y, 0);
+        assertEquals(0.125, pose.t, 0);
+        assertEquals(2, pose.status);
+    }
+
+    @Test
+    public void nullAndMissingMembersKeepOldValues() {
+        Pose2d pose = new Pose2d(7, 8, 9, 3);
+        assertTrue(mParser.parse("{\"px\":null, \"py\" : 1 ,\"theta\":null}", pose));
+        assertEquals(7, pose.x, 0);
+        assertEquals(1, pose.y, 0);
+        assertEquals(9, pose.t, 0);
+        assertEquals(3, pose.status);
+
+        assertTrue(mParser.parse("{}", pose));
+        assertEquals(7, pose.x, 0);
+    }
+
+    @Test
+    public void parsesExponentsAndNaN() {
+        Pose2d pose = new Pose2d(0, 0, 0);
+        assertTrue(mParser.parse("{\"px\":1e3,\"py\":-2.5E-2,\"theta\":6.02e+23}", pose));
+        assertEquals(1000, pose.x, 0);
+        assertEquals(-0.025, pose.y, 0);
+        assertEquals(6.02e23, pose.t, 0);
+
+        assertTrue(mParser.parse("{\"px\":NaN,\"py\":-Infinity,\"theta\":1e400}", pose));
+        assertTrue(Double.isNaN(pose.x));
+        assertEquals(Double.NEGATIVE_INFINITY, pose.y, 0);
+        assertEquals(Double.POSITIVE_INFINITY, pose.t, 0);
+
+        assertTrue(mParser.parse("{\"px\":1e-400,\"py\":-0}", pose));
+        assertEquals(0, pose.x, 0);
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(pose.y));
+    }
+
+    @Test
+    public void skipsUnknownAndNestedMembers() {
+        Pose2d pose = new Pose2d(0, 0, 0);
+        String json = "{\"name\":\"a \\\"quoted\\\" }\",\"px\":1,"
+                + "\"extra\":{\"px\":99,\"list\":[1,{\"py\":98},\"]\"]},"
+                + "\"flag\":true,\"none\":null,\"py\":2,\"arr\":[[]],\"theta\":3}";
+        assertTrue(mParser.parse(json, pose));
+        assertEquals(1, pose.x, 0);
+        assertEquals(2, pose.y, 0);
+        assertEquals(3, pose.t, 0);
+    }
+
+    @Test
+    public void malformedInputReturnsFalseAndKeepsPose() {
+        String[] inputs = {
+                null,
+                "",
+                "[]",
+                "{",
+                "{\"px\":1",
+                "{\"px\":1,",
+                "{\"px\":}",
+                "{\"px\":1e}",
+                "{\"px\":abc}",
+                "{\"px\" 1}",
+                "{\"px:1}",
+                "{\"extra\":{\"a\":1}",
+                "{\"extra\":\"unterminated}",
+                "{\"px\":1 \"py\":2}",
+        };
+        for (String input : inputs) {
+            Pose2d pose = new Pose2d(4, 5, 6, 1);
+            assertFalse(String.valueOf(input), mParser.parse(input, pose));
+            assertEquals(4, pose.x, 0);
+            assertEquals(5, pose.y, 0);
+            assertEquals(6, pose.t, 0);
+            assertEquals(1, pose.status);
+        }
+    }
+
+    @Test
+    public void writesIntoArrayWithStride() {
+        double[] out = new double[PoseParser.STRIDE * 2];
+        assertTrue(mParser.parse("{\"px\":1,\"py\":2,\"theta\":3,\"status\":4}", out,
+                PoseParser.STRIDE));
+        assertEquals(0, out[0], 0);
+        assertEquals(1, out[4], 0);
+        assertEquals(4, out[7], 0);
+    }
+
+    /**
+     * 随机 double 的各种写法（最短表示、定点、科学计数、超长尾数），逐位与 Gson 比较
+     */
+    @Test
+    public void matchesGsonOnRandomDoubles() {
+        Gson gson = new Gson();
+        Random random = new Random(20261018);
+        Pose2d pose = new Pose2d(0, 0, 0);
+        for (int i = 0; i < 20000; i++) {
+            String px = randomNumber(random);
+            String py = randomNumber(random);
+            String theta = randomNumber(random);
+            String json = "{\"px\":" + px + ",\"py\":" + py + ",\"theta\":" + theta
+                    + ",\"status\":" + random.nextInt(4) + "}";
+            Pose2d expected = gson.fromJson(json, Pose2d.class);
+            assertTrue(json, mParser.parse(json, pose));
+            assertSameBits(json, expected.x, pose.x);
+            assertSameBits(json, expected.y, pose.y);
+            assertSameBits(json, expected.t, pose.t);
+            assertEquals(json, expected.status, pose.status);
+        }
+    }
+
+    private static void assertSameBits(String message, double expected, double actual) {
+        assertEquals(message, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+
+    static String randomNumber(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                // 最短表示，通常是 16~17 位有效数字
+                return Double.toString((random.nextDouble() - 0.5) * 200);
+            case 1:
+                return String.format(java.util.Locale.US, "%.4f",
+                        (random.nextDouble() - 0.5) * 200);
+            case 2:
+                return Double.toString(Double.longBitsToDouble(random.nextLong()))
+                        .replace("Infinity", "1e308").replace("NaN", "0");
+            case 3:
+                // 超过 long 精度的长尾数
+                StringBuilder digits = new StringBuilder();
+                digits.append(random.nextInt(9) + 1);
+                int length = 15 + random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    digits.append(random.nextInt(10));
+                }
+                digits.insert(1 + random.nextInt(length), '.');
+                return (random.nextBoolean() ? "-" : "") + digits;
+            case 4:
+                return String.format(java.util.Locale.US, "%de%d", random.nextInt(100000),
+                        random.nextInt(60) - 30);
+            default:
+                return Integer.toString(random.nextInt(2000) - 1000);
+        }
+    }
+}
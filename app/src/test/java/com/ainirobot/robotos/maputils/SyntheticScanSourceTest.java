@@ -0,0 +1,75 @@
+package com.ainirobot.robotos.maputils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 模拟激光的射线求交：量程内遇到障碍返回距离，出界或超出量程返回 0
+ */
+public class SyntheticScanSourceTest {
+
+    private static final int SIZE = 200;
+    private static final double RES = 0.05;
+
+    private RoverMap mMap;
+    /**
+     * 位于像素 (100.5, 100.5) 中心、朝向 +x 的机器人
+     */
+    private final Pose2d mPose = new Pose2d(100.5 * RES, (SIZE - 100.5) * RES, 0);
+
+    @Before
+    public void setUp() {
+        OccupancyGrid grid = new OccupancyGrid(SIZE, SIZE);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                grid.set(x, y, OccupancyGrid.PASS);
+            }
+        }
+        for (int i = 0; i < SIZE; i++) {
+            // 右侧一列障碍物，下方一行禁行线
+            grid.set(150, i, OccupancyGrid.OBSTACLE);
+            grid.set(i, 180, OccupancyGrid.BLOCK);
+        }
+        mMap = new RoverMap();
+        mMap.grid = grid;
+        mMap.width = SIZE;
+        mMap.height = SIZE;
+        mMap.res = RES;
+    }
+
+    @Test
+    public void rangesStopAtFirstBlockedCell() {
+        // 4 条射线依次朝向 -x、-y（像素向下）、+x、+y
+        SyntheticScanSource source = new SyntheticScanSource(mMap, 4, 10f, 100);
+        float[] ranges = new float[4];
+        source.scan(mPose, ranges);
+        assertEquals(0, ranges[0], 0);
+        assertEquals(80 * RES, ranges[1], 1e-6);
+        assertEquals(50 * RES, ranges[2], 1e-6);
+        assertEquals(0, ranges[3], 0);
+    }
+
+    @Test
+    public void obstaclesBeyondRangeAreNotReported() {
+        SyntheticScanSource source = new SyntheticScanSource(mMap, 4, 3f, 100);
+        float[] ranges = new float[4];
+        source.scan(mPose, ranges);
+        assertEquals(0, ranges[1], 0);
+        assertEquals(50 * RES, ranges[2], 1e-6);
+    }
+
+    @Test
+    public void beamsFollowHeading() {
+        // 朝向 +y（像素向上）时，射线依次朝向 -y、+x、+y、-x
+        Pose2d pose = new Pose2d(mPose.x, mPose.y, Math.PI / 2);
+        SyntheticScanSource source = new SyntheticScanSource(mMap, 4, 10f, 100);
+        float[] ranges = new float[4];
+        source.scan(pose, ranges);
+        assertEquals(80 * RES, ranges[0], 1e-6);
+        assertEquals(50 * RES, ranges[1], 1e-6);
+        assertEquals(0, ranges[2], 0);
+        assertEquals(0, ranges[3], 0);
+    }
+}